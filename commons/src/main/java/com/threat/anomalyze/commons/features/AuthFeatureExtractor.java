@@ -1,83 +1,107 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.AuthRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.DistinctCounter;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.FrequencyTable;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class AuthFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class AuthFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<AuthFeatureExtractor.AuthAccumulator> {
 
     public AuthFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> authEntries = logEntriesByType.get("auth");
-        if (authEntries == null || authEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(AuthRecord.LOG_TYPE, Set.of("result", "username", "source_ip"));
+    }
+
+    @Override
+    public AuthAccumulator newAccumulator(String ip) {
+        return new AuthAccumulator(distinctPrecision);
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, AuthRecord.LOG_TYPE)) {
             log.debug("No auth entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // Failed login ratio
-        long failedCount = authEntries.stream()
-                .filter(e -> "fail".equals(e.path("result").asText("")))
-                .count();
-        double failedRatio = authEntries.isEmpty() ? 0 : (double) failedCount / authEntries.size();
+    /**
+     * Authentication features of one window, counted attempt by attempt.
+     */
+    public static final class AuthAccumulator implements FeatureAccumulator<AuthAccumulator> {
+        private static final long serialVersionUID = 1L;
 
-        // Success login ratio (new)
-        long successCount = authEntries.stream()
-                .filter(e -> "success".equals(e.path("result").asText("")))
-                .count();
-        double successRatio = authEntries.isEmpty() ? 0 : (double) successCount / authEntries.size();
+        private long attemptCount;
+        private long failedCount;
+        private long successCount;
+        private final FrequencyTable usernameFreq = new FrequencyTable();
+        private final DistinctCounter uniqueSourceIps;
+        private final StreamingMoments failedTsStats = new StreamingMoments();
 
-        // Unique username entropy
-        Frequency usernameFreq = new Frequency();
-        authEntries.forEach(e -> {
-            String username = e.path("username").asText("");
-            if (!username.isEmpty()) usernameFreq.addValue(username);
-        });
-        double usernameEntropy = EntropyUtils.calculateEntropy(usernameFreq);
+        AuthAccumulator(int distinctPrecision) {
+            this.uniqueSourceIps = new DistinctCounter(distinctPrecision);
+        }
 
-        // Login attempt rate
-        double windowDurationSeconds = (double) FeatureConfig.WINDOW_SIZE_MS / 1000.0;
-        double attemptRate = authEntries.size() / windowDurationSeconds;
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof AuthRecord entry)) {
+                return;
+            }
+            attemptCount++;
+            if ("fail".equals(entry.result())) {
+                failedCount++;
+                // Temporal clustering of failures
+                double ts = entry.ts();
+                if (ts >= 0) failedTsStats.add(ts);
+            } else if ("success".equals(entry.result())) {
+                successCount++;
+            }
+            String username = entry.username();
+            if (!username.isEmpty()) usernameFreq.add(username);
+            String sourceIp = entry.sourceIp();
+            if (!sourceIp.isEmpty()) uniqueSourceIps.add(sourceIp);
+        }
 
-        // Unique source IP count
-        Set<String> uniqueSourceIps = authEntries.stream()
-                .map(e -> e.path("source_ip").asText(""))
-                .filter(ipVal -> !ipVal.isEmpty())
-                .collect(Collectors.toSet());
-        long uniqueSourceIpCount = uniqueSourceIps.size();
+        @Override
+        public void merge(AuthAccumulator other) {
+            attemptCount += other.attemptCount;
+            failedCount += other.failedCount;
+            successCount += other.successCount;
+            usernameFreq.merge(other.usernameFreq);
+            uniqueSourceIps.merge(other.uniqueSourceIps);
+            failedTsStats.merge(other.failedTsStats);
+        }
 
-        // Temporal clustering of failures
-        DescriptiveStatistics failedTsStats = new DescriptiveStatistics();
-        for (JsonNode entry : authEntries) {
-            if ("fail".equals(entry.path("result").asText(""))) {
-                double ts = entry.path("ts").asDouble(-1.0);
-                if (ts >= 0) failedTsStats.addValue(ts);
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (attemptCount == 0) {
+                return Map.of();
             }
-        }
-        double failedTsVariance = failedTsStats.getN() > 0 ? failedTsStats.getVariance() : 0.0;
+            double failedTsVariance = failedTsStats.variance();
 
-        // Submit features (corrected label)
-        Map<String, Double> features = Map.of(
-                FeatureConfig.FAILED_LOGIN_RATIO, failedRatio,
-                FeatureConfig.SUCCESS_LOGIN_RATIO, successRatio,
-                FeatureConfig.USERNAME_ENTROPY, usernameEntropy,
-                FeatureConfig.ATTEMPT_RATE, attemptRate,
-                FeatureConfig.UNIQUE_SOURCE_IP_COUNT, (double) uniqueSourceIpCount,
-                FeatureConfig.FAILED_TS_VARIANCE, failedTsVariance
-        );
-        submitFeatures(ip, windowStart, features);
+            return Map.of(
+                    FeatureConfig.FAILED_LOGIN_RATIO, (double) failedCount / attemptCount,
+                    FeatureConfig.SUCCESS_LOGIN_RATIO, (double) successCount / attemptCount,
+                    FeatureConfig.USERNAME_ENTROPY, EntropyUtils.calculateEntropy(usernameFreq),
+                    FeatureConfig.ATTEMPT_RATE, attemptCount / windowDurationSeconds,
+                    FeatureConfig.UNIQUE_SOURCE_IP_COUNT, (double) uniqueSourceIps.count(),
+                    FeatureConfig.FAILED_TS_VARIANCE, failedTsVariance
+            );
+        }
     }
-}
\ No newline at end of file
+}
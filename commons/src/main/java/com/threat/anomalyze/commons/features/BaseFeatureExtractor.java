@@ -1,22 +1,36 @@
 package com.threat.anomalyze.commons.features;
 
-import org.springframework.stereotype.Service;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.EntropySketch;
+import org.springframework.beans.factory.annotation.Value;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Base class for feature extractors, providing common functionality to submit features to a FeatureAggregator
- * with time window alignment.
+ * for windows whose starts the window processor has already aligned.
  */
 public abstract class BaseFeatureExtractor {
     protected final FeatureAggregator aggregator;
+    // Window length for rate features when the aggregator was not told the length of the current window
     protected final long windowSizeMs;
+    // HyperLogLog precision of distinct-count features, 0 to count them exactly
+    protected int distinctPrecision;
+    // Entropy features estimated in bounded memory, and the projections of their sketches
+    private Set<String> sketchedEntropyFeatures = Set.of();
+    private int entropyProjections = 256;
 
     /**
-     * Constructs a BaseFeatureExtractor with the specified aggregator and window size.
+     * Constructs a BaseFeatureExtractor with the specified aggregator and fallback window size.
      *
      * @param aggregator   the FeatureAggregator to submit features to
-     * @param windowSizeMs the size of the time window in milliseconds
+     * @param windowSizeMs the window length in milliseconds assumed by rate features when the aggregator
+     *                     does not report the length of the window being extracted
      */
     protected BaseFeatureExtractor(FeatureAggregator aggregator, long windowSizeMs) {
         this.aggregator = aggregator;
@@ -24,10 +38,170 @@ public abstract class BaseFeatureExtractor {
     }
 
     /**
-     * Submits features for a specific IP and timestamp to the aggregator, aligned to the appropriate time window.
+     * Selects how distinct-count features such as the unique source IPs are counted: exactly, with
+     * memory growing with the distinct values, or in a HyperLogLog sketch of {@code 2^precision} bytes
+     * per feature and window, with a relative standard error of about {@code 1.04 / sqrt(2^precision)}.
+     *
+     * @param precision 0 to count exactly, or the sketch precision from 4 to 16
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    @Value("${zeek.features.distinct.precision:0}")
+    public void setDistinctPrecision(int precision) {
+        if (precision != 0 && (precision < 4 || precision > 16)) {
+            throw new IllegalArgumentException("Distinct-count precision must be 0 or between 4 and 16: " + precision);
+        }
+        this.distinctPrecision = precision;
+    }
+
+    /**
+     * Selects the entropy features, out of {@link FeatureConfig#SKETCHABLE_ENTROPY_FEATURES}, that are
+     * estimated by an {@link EntropySketch} instead of counted exactly, so their memory stays bounded
+     * when a window sees a sweep of distinct values.
+     *
+     * @throws IllegalArgumentException if a feature cannot be estimated
+     */
+    @Value("${zeek.features.entropy.sketched:}")
+    public void setSketchedEntropyFeatures(String[] features) {
+        Set<String> sketched = new HashSet<>();
+        for (String feature : features) {
+            if (feature.isBlank()) {
+                continue;
+            }
+            if (!FeatureConfig.SKETCHABLE_ENTROPY_FEATURES.contains(feature.trim())) {
+                throw new IllegalArgumentException("Entropy of " + feature + " cannot be estimated; supported: " +
+                        FeatureConfig.SKETCHABLE_ENTROPY_FEATURES);
+            }
+            sketched.add(feature.trim());
+        }
+        this.sketchedEntropyFeatures = Set.copyOf(sketched);
+    }
+
+    /**
+     * Sets the projections of the entropy sketches, which trade memory for accuracy: a sketch takes about
+     * {@code 40 * projections} bytes and errs by about {@code 2.5 / sqrt(projections)} bits.
+     */
+    @Value("${zeek.features.entropy.projections:256}")
+    public void setEntropyProjections(int projections) {
+        if (projections <= 0) {
+            throw new IllegalArgumentException("Entropy projections must be positive: " + projections);
+        }
+        this.entropyProjections = projections;
+    }
+
+    /**
+     * @return an empty entropy counter for a feature: exact, or a sketch if the feature is estimated
+     */
+    protected EntropySketch newEntropyCounter(String feature) {
+        return new EntropySketch(sketchedEntropyFeatures.contains(feature) ? entropyProjections : 0);
+    }
+
+    /**
+     * Returns the typed entries of one log type in a window.
+     *
+     * @param logEntriesByType the window's entries grouped by log type
+     * @param logType          the log type to look up (e.g. "conn")
+     * @param <T>              the record type stored for that log type
+     * @return the entries, or an empty list if the window has none of that type
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T extends ZeekRecord> List<T> entriesOf(Map<String, List<ZeekRecord>> logEntriesByType,
+                                                             String logType) {
+        List<ZeekRecord> entries = logEntriesByType.get(logType);
+        return entries == null ? Collections.emptyList() : (List<T>) (List<?>) entries;
+    }
+
+    /**
+     * Computes a window's features by feeding its entries of the given log types to an accumulator, and
+     * submits them unless the window had no entry the accumulator counts.
+     *
+     * @param accumulator      an empty accumulator for the window
+     * @param ip               the IP the window belongs to
+     * @param windowStart      start of the window in epoch milliseconds
+     * @param logEntriesByType the window's entries grouped by log type
+     * @param joinIndex        links the window's records to their conn record by UID
+     * @param logTypes         the log types the accumulator reads
+     * @return whether features were submitted
+     */
+    protected boolean extractWith(FeatureAccumulator<?> accumulator, String ip, long windowStart,
+                                  Map<String, List<ZeekRecord>> logEntriesByType, UidJoinIndex joinIndex,
+                                  String... logTypes) {
+        for (String logType : logTypes) {
+            for (ZeekRecord entry : entriesOf(logEntriesByType, logType)) {
+                accumulator.add(entry);
+            }
+        }
+        Map<String, Double> features = accumulator.features(windowDurationSeconds(), joinIndex);
+        if (features.isEmpty()) {
+            return false;
+        }
+        submitFeatures(ip, windowStart, features);
+        return true;
+    }
+
+    /**
+     * Counts a dictionary code in an array indexed by code, growing the array if the code is newer than
+     * it, since dictionaries keep growing while accumulators are open.
+     *
+     * @return the array holding the count, which replaces the one passed in
+     */
+    protected static int[] countCode(int[] counts, int code) {
+        if (code >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+        }
+        counts[code]++;
+        return counts;
+    }
+
+    /**
+     * @return the count of a dictionary code, 0 if the array has not grown to it
+     */
+    protected static long countOf(int[] counts, int code) {
+        return code < counts.length ? counts[code] : 0;
+    }
+
+    /**
+     * @return the summed counts of the given dictionary codes
+     */
+    protected static long countOf(int[] counts, Set<Integer> codes) {
+        long count = 0;
+        for (int code : codes) {
+            count += countOf(counts, code);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the code counts of another accumulator.
+     *
+     * @return the array holding the sums, which replaces the first one passed in
+     */
+    protected static int[] mergeCounts(int[] counts, int[] other) {
+        if (other.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.length);
+        }
+        for (int code = 0; code < other.length; code++) {
+            counts[code] += other[code];
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the length of the window being extracted, for rate features: the one the aggregator was
+     * told about, or this extractor's window size.
+     *
+     * @return the window length in seconds
+     */
+    protected double windowDurationSeconds() {
+        long currentWindowSizeMs = aggregator.currentWindowSizeMs();
+        return (currentWindowSizeMs > 0 ? currentWindowSizeMs : windowSizeMs) / 1000.0;
+    }
+
+    /**
+     * Submits features for a specific IP and window to the aggregator. The window processor aligns window
+     * starts, to the slide rather than the window size when windows hop, so the start is kept as it is.
      *
      * @param ip        the source IP address
-     * @param timestamp the timestamp in milliseconds
+     * @param timestamp the window start in milliseconds
      * @param features  a map of feature names to their double values
      * @throws IllegalArgumentException if timestamp is negative or features map is null or empty
      */
@@ -38,7 +212,6 @@ public abstract class BaseFeatureExtractor {
         if (features == null || features.isEmpty()) {
             throw new IllegalArgumentException("Features map cannot be null or empty");
         }
-        long windowStart = timestamp - (timestamp % windowSizeMs);
-        aggregator.addFeatures(ip, windowStart, features);
+        aggregator.addFeatures(ip, timestamp, features);
     }
 }
\ No newline at end of file
@@ -1,139 +1,159 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.ConnRecord;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.EntropySketch;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.FrequencyTable;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class ConnFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class ConnFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<ConnFeatureExtractor.ConnAccumulator> {
+
+    // Dictionary codes of the protocols and connection states the features compare against
+    private static final int TCP = FieldDictionaries.PROTO.encode("tcp");
+    private static final int UDP = FieldDictionaries.PROTO.encode("udp");
+    private static final int ICMP = FieldDictionaries.PROTO.encode("icmp");
+    private static final int S0 = FieldDictionaries.CONN_STATE.encode("S0");
+    private static final int S1 = FieldDictionaries.CONN_STATE.encode("S1");
+    private static final int REJ = FieldDictionaries.CONN_STATE.encode("REJ");
+    private static final int SF = FieldDictionaries.CONN_STATE.encode("SF");
 
     public ConnFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> connEntries = logEntriesByType.get("conn");
-        if (connEntries == null || connEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(ConnRecord.LOG_TYPE, Set.of("proto", "conn_state", "duration", "orig_bytes", "resp_bytes"));
+    }
+
+    @Override
+    public ConnAccumulator newAccumulator(String ip) {
+        return new ConnAccumulator(newEntropyCounter(FeatureConfig.DESTINATION_IP_ENTROPY),
+                newEntropyCounter(FeatureConfig.SOURCE_IP_ENTROPY));
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, ConnRecord.LOG_TYPE)) {
             log.debug("No conn entries for IP: {} in window: {}", ip, windowStart);
-            return;
+        }
+    }
+
+    /**
+     * Conn features of one window, counted in a single pass over its connections. Protocols and states
+     * are tallied by dictionary code, and the ratios are derived from the tallies once the window closes.
+     */
+    public static final class ConnAccumulator implements FeatureAccumulator<ConnAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private int connFreq;
+        private double totalDuration;
+        private int durationCount;
+        // Also counts the unique ports
+        private final FrequencyTable portFreq = new FrequencyTable();
+        private int[] protoCounts = new int[FieldDictionaries.PROTO.size()];
+        private int[] stateCounts = new int[FieldDictionaries.CONN_STATE.size()];
+        private double totalBytesInOutRatio;
+        private int bytesRatioCount;
+        private final EntropySketch destIpFreq;
+        private final EntropySketch srcIpFreq;
+        private final StreamingMoments tsStats = new StreamingMoments();
+
+        ConnAccumulator(EntropySketch destIpFreq, EntropySketch srcIpFreq) {
+            this.destIpFreq = destIpFreq;
+            this.srcIpFreq = srcIpFreq;
         }
 
-        // Connection frequency
-        int connFreq = connEntries.size();
-
-        // Unique destination ports
-        Set<String> uniquePorts = connEntries.stream()
-                .map(e -> e.get("id.resp_p").asText())
-                .collect(Collectors.toSet());
-
-        // Average connection duration
-        double totalDuration = 0.0;
-        int durationCount = 0;
-        for (JsonNode entry : connEntries) {
-            JsonNode durationNode = entry.path("duration");
-            if (!durationNode.isMissingNode()) {
-                totalDuration += durationNode.asDouble();
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof ConnRecord entry)) {
+                return;
+            }
+            connFreq++;
+            if (!Double.isNaN(entry.duration())) {
+                totalDuration += entry.duration();
                 durationCount++;
             }
-        }
-        double connDurationAvg = durationCount > 0 ? totalDuration / durationCount : 0.0;
-
-        // Port entropy
-        Frequency portFreq = new Frequency();
-        connEntries.forEach(e -> portFreq.addValue(e.get("id.resp_p").asText()));
-        double portEntropy = EntropyUtils.calculateEntropy(portFreq);
-
-        // Connection state entropy
-        Frequency stateFreq = new Frequency();
-        connEntries.forEach(e -> stateFreq.addValue(e.get("conn_state").asText()));
-        double connectionStateEntropy = EntropyUtils.calculateEntropy(stateFreq);
-
-        // Bytes in/out ratio (capped)
-        double totalBytesInOutRatio = 0.0;
-        int bytesRatioCount = 0;
-        for (JsonNode entry : connEntries) {
-            JsonNode origBytesNode = entry.path("orig_bytes");
-            JsonNode respBytesNode = entry.path("resp_bytes");
-            if (!origBytesNode.isMissingNode() && !respBytesNode.isMissingNode()) {
-                double origBytes = origBytesNode.asDouble();
-                double respBytes = respBytesNode.asDouble();
-                double ratio = origBytes / (respBytes + 1);
+            portFreq.add(entry.respP());
+            protoCounts = countCode(protoCounts, entry.protoCode());
+            stateCounts = countCode(stateCounts, entry.connStateCode());
+            if (entry.origBytes() >= 0 && entry.respBytes() >= 0) {
+                double ratio = (double) entry.origBytes() / (entry.respBytes() + 1);
                 totalBytesInOutRatio += Math.min(ratio, 100.0); // Cap at 100
                 bytesRatioCount++;
             }
+            destIpFreq.add(entry.respH());
+            srcIpFreq.add(entry.origH());
+            if (entry.ts() >= 0) {
+                tsStats.add(entry.ts());
+            }
+        }
+
+        @Override
+        public void merge(ConnAccumulator other) {
+            connFreq += other.connFreq;
+            totalDuration += other.totalDuration;
+            durationCount += other.durationCount;
+            portFreq.merge(other.portFreq);
+            protoCounts = mergeCounts(protoCounts, other.protoCounts);
+            stateCounts = mergeCounts(stateCounts, other.stateCounts);
+            totalBytesInOutRatio += other.totalBytesInOutRatio;
+            bytesRatioCount += other.bytesRatioCount;
+            destIpFreq.merge(other.destIpFreq);
+            srcIpFreq.merge(other.srcIpFreq);
+            tsStats.merge(other.tsStats);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (connFreq == 0) {
+                return Map.of();
+            }
+            double connDurationAvg = durationCount > 0 ? totalDuration / durationCount : 0.0;
+            double bytesInOutRatio = bytesRatioCount > 0 ? totalBytesInOutRatio / bytesRatioCount : 0.0;
+
+            // Protocol ratios
+            long udpCount = countOf(protoCounts, UDP);
+            long tcpCount = countOf(protoCounts, TCP);
+            long icmpCount = countOf(protoCounts, ICMP);
+            double totalProtos = (double) (tcpCount + udpCount + icmpCount + 1); // Avoid division by zero
+            double udpRatio = udpCount / totalProtos;
+            double tcpRatio = tcpCount / totalProtos;
+            double icmpRatio = icmpCount / totalProtos;
+
+            double connectionRate = connFreq / windowDurationSeconds;
+            long incompleteCount = countOf(stateCounts, S0) + countOf(stateCounts, S1) + countOf(stateCounts, REJ);
+            double incompleteRatio = (double) incompleteCount / (countOf(stateCounts, SF) + 1);
+            double tsVariance = tsStats.variance();
+
+            return Map.ofEntries(
+                    Map.entry(FeatureConfig.CONNECTION_FREQUENCY, (double) connFreq),
+                    Map.entry(FeatureConfig.UNIQUE_PORTS, (double) portFreq.distinct()),
+                    Map.entry(FeatureConfig.CONNECTION_DURATION_AVG, connDurationAvg),
+                    Map.entry(FeatureConfig.PORT_ENTROPY, EntropyUtils.calculateEntropy(portFreq)),
+                    Map.entry(FeatureConfig.CONNECTION_STATE_ENTROPY, EntropyUtils.calculateEntropy(stateCounts)),
+                    Map.entry(FeatureConfig.BYTES_IN_OUT_RATIO, bytesInOutRatio),
+                    Map.entry(FeatureConfig.DESTINATION_IP_ENTROPY, EntropyUtils.calculateEntropy(destIpFreq)),
+                    Map.entry(FeatureConfig.SOURCE_IP_ENTROPY, EntropyUtils.calculateEntropy(srcIpFreq)),
+                    Map.entry(FeatureConfig.UDP_RATIO, udpRatio),
+                    Map.entry(FeatureConfig.TCP_RATIO, tcpRatio),
+                    Map.entry(FeatureConfig.ICMP_RATIO, icmpRatio),
+                    Map.entry(FeatureConfig.CONNECTION_RATE, connectionRate),
+                    Map.entry(FeatureConfig.INCOMPLETE_CONNECTION_RATIO, incompleteRatio),
+                    Map.entry(FeatureConfig.CONNECTION_TIMESTAMP_VARIANCE, tsVariance)
+            );
         }
-        double bytesInOutRatio = bytesRatioCount > 0 ? totalBytesInOutRatio / bytesRatioCount : 0.0;
-
-        // Destination IP entropy
-        Frequency destIpFreq = new Frequency();
-        connEntries.forEach(e -> destIpFreq.addValue(e.get("id.resp_h").asText()));
-        double destinationIpEntropy = EntropyUtils.calculateEntropy(destIpFreq);
-
-        // Source IP entropy
-        Frequency srcIpFreq = new Frequency();
-        connEntries.forEach(e -> srcIpFreq.addValue(e.get("id.orig_h").asText()));
-        double sourceIpEntropy = EntropyUtils.calculateEntropy(srcIpFreq);
-
-        // Protocol ratios
-        Map<String, Long> protoCounts = connEntries.stream()
-                .collect(Collectors.groupingBy(e -> e.get("proto").asText(), Collectors.counting()));
-        long udpCount = protoCounts.getOrDefault("udp", 0L);
-        long tcpCount = protoCounts.getOrDefault("tcp", 0L);
-        long icmpCount = protoCounts.getOrDefault("icmp", 0L);
-        double totalProtos = (double) (tcpCount + udpCount + icmpCount + 1); // Avoid division by zero
-        double udpRatio = udpCount / totalProtos;
-        double tcpRatio = tcpCount / totalProtos;
-        double icmpRatio = icmpCount / totalProtos;
-
-        // Connection rate
-        double windowDurationSeconds = (double) FeatureConfig.WINDOW_SIZE_MS / 1000.0;
-        double connectionRate = connFreq / windowDurationSeconds;
-
-        // Incomplete connection ratio
-        long incompleteCount = connEntries.stream()
-                .filter(e -> Set.of("S0", "S1", "REJ").contains(e.get("conn_state").asText()))
-                .count();
-        long completeCount = connEntries.stream()
-                .filter(e -> "SF".equals(e.get("conn_state").asText()))
-                .count();
-        double incompleteRatio = (double) incompleteCount / (completeCount + 1);
-
-        // Timestamp variance
-        DescriptiveStatistics tsStats = new DescriptiveStatistics();
-        connEntries.forEach(e -> {
-            double ts = e.path("ts").asDouble(-1.0);
-            if (ts >= 0) tsStats.addValue(ts);
-        });
-        double tsVariance = tsStats.getN() > 0 ? tsStats.getVariance() : 0.0;
-
-        // Submit features
-        Map<String, Double> features = Map.ofEntries(
-                Map.entry(FeatureConfig.CONNECTION_FREQUENCY, (double) connFreq),
-                Map.entry(FeatureConfig.UNIQUE_PORTS, (double) uniquePorts.size()),
-                Map.entry(FeatureConfig.CONNECTION_DURATION_AVG, connDurationAvg),
-                Map.entry(FeatureConfig.PORT_ENTROPY, portEntropy),
-                Map.entry(FeatureConfig.CONNECTION_STATE_ENTROPY, connectionStateEntropy),
-                Map.entry(FeatureConfig.BYTES_IN_OUT_RATIO, bytesInOutRatio),
-                Map.entry(FeatureConfig.DESTINATION_IP_ENTROPY, destinationIpEntropy),
-                Map.entry(FeatureConfig.SOURCE_IP_ENTROPY, sourceIpEntropy),
-                Map.entry(FeatureConfig.UDP_RATIO, udpRatio),
-                Map.entry(FeatureConfig.TCP_RATIO, tcpRatio),
-                Map.entry(FeatureConfig.ICMP_RATIO, icmpRatio),
-                Map.entry(FeatureConfig.CONNECTION_RATE, connectionRate),
-                Map.entry(FeatureConfig.INCOMPLETE_CONNECTION_RATIO, incompleteRatio),
-                Map.entry(FeatureConfig.CONNECTION_TIMESTAMP_VARIANCE, tsVariance)
-        );
-
-        submitFeatures(ip, windowStart, features);
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,17 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.DnsRecord;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
 import com.threat.anomalyze.commons.services.WhoisService;
+import com.threat.anomalyze.commons.util.DistinctCounter;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.FrequencyTable;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -14,121 +19,113 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class DnsFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class DnsFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<DnsFeatureExtractor.DnsAccumulator> {
+
+    private static final int NXDOMAIN = FieldDictionaries.RCODE_NAME.encode("NXDOMAIN");
+
+    // Responses of a window part whose query may sit in an earlier part; only the first ones are kept,
+    // since a response to an earlier part's query arrives soon after the part starts
+    private static final int MAX_EARLY_RESPONSES = 1024;
 
     public DnsFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> dnsEntries = logEntriesByType.get("dns");
-        if (dnsEntries == null || dnsEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(DnsRecord.LOG_TYPE, Set.of("trans_id", "query", "qtype_name", "rcode_name", "answers"));
+    }
+
+    @Override
+    public DnsAccumulator newAccumulator(String ip) {
+        return new DnsAccumulator(distinctPrecision);
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, DnsRecord.LOG_TYPE)) {
             log.debug("No dns entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // Feature: DNS query frequency
-        int queryFreq = dnsEntries.size();
-
-        // Feature: Unique queried domains
-        Set<String> uniqueDomains = dnsEntries.stream()
-                .map(e -> e.path("query").asText(""))
-                .filter(query -> !query.isEmpty())
-                .collect(Collectors.toSet());
-
-        // Feature: Query type entropy
-        Frequency qtypeFreq = new Frequency();
-        dnsEntries.forEach(e -> {
-            String qtype = e.path("qtype_name").asText("");
-            if (!qtype.isEmpty()) {
-                qtypeFreq.addValue(qtype);
+    /**
+     * DNS features of one window, counted in a single pass over its queries. Queries are counted per
+     * registered domain, so their WHOIS ages are only looked up once the window closes and the subdomains
+     * of one domain, such as those of a tunnel, share an entry.
+     */
+    public static final class DnsAccumulator implements FeatureAccumulator<DnsAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private int queryFreq;
+        private final DistinctCounter uniqueDomains;
+        private final Map<String, Integer> registeredDomainCounts = new HashMap<>();
+        private int[] qtypeCounts = new int[FieldDictionaries.QTYPE_NAME.size()];
+        private long nxdomainCount;
+        private final FrequencyTable queryLengthFreq = new FrequencyTable();
+        private double totalSubdomainLevels;
+        private int validDomainCount;
+
+        // Query-response matching by uid and transaction id; matched queries are forgotten
+        private final Map<String, Double> queryTimestamps = new HashMap<>();
+        private final List<EarlyResponse> earlyResponses = new ArrayList<>();
+        private double totalResponseTime;
+        private int responseTimeCount;
+
+        DnsAccumulator(int distinctPrecision) {
+            this.uniqueDomains = new DistinctCounter(distinctPrecision);
+        }
+
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof DnsRecord entry)) {
+                return;
+            }
+            queryFreq++;
+            int qtype = entry.qtypeNameCode();
+            if (qtype != FieldDictionary.EMPTY) {
+                qtypeCounts = countCode(qtypeCounts, qtype);
             } else {
-                log.warn("Missing 'qtype_name' for IP: {} in window: {}", ip, windowStart);
+                log.warn("Missing 'qtype_name' in DNS entry for timestamp: {}", entry.ts());
             }
-        });
-        double qtypeEntropy = EntropyUtils.calculateEntropy(qtypeFreq);
-
-        // New Feature: NXDOMAIN ratio
-        long nxdomainCount = dnsEntries.stream()
-                .filter(e -> "NXDOMAIN".equals(e.path("rcode_name").asText("")))
-                .count();
-        double nxdomainRatio = queryFreq > 0 ? (double) nxdomainCount / queryFreq : 0.0;
-
-        // New Feature: Query length entropy
-        Frequency queryLengthFreq = new Frequency();
-        dnsEntries.forEach(e -> {
-            String query = e.path("query").asText("");
-            if (!query.isEmpty()) {
-                queryLengthFreq.addValue(query.length());
+            if (entry.rcodeNameCode() == NXDOMAIN) {
+                nxdomainCount++;
             }
-        });
-        double queryLengthEntropy = EntropyUtils.calculateEntropy(queryLengthFreq);
-
-        // New Feature: Subdomain level average
-        double totalSubdomainLevels = 0;
-        int validDomainCount = 0;
-        for (JsonNode entry : dnsEntries) {
-            String query = entry.path("query").asText("");
+            String query = entry.query();
             if (!query.isEmpty()) {
-                int levels = query.split("\\.").length - 1; // e.g., sub.example.com -> 2
-                totalSubdomainLevels += levels;
+                uniqueDomains.add(query);
+                String registeredDomain = WhoisService.getRegisteredDomain(query);
+                if (registeredDomain != null) {
+                    registeredDomainCounts.merge(registeredDomain, 1, Integer::sum);
+                }
+                queryLengthFreq.add(query.length());
+                totalSubdomainLevels += subdomainLevels(query); // e.g., sub.example.com -> 2
                 validDomainCount++;
             }
+            matchQueryResponse(entry);
         }
-        double subdomainLevelAvg = validDomainCount > 0 ? totalSubdomainLevels / validDomainCount : 0.0;
-
-        // Feature: Average query-response time (optimized)
-        double queryResponseTimeAvg = calculateQueryResponseTimeAvg(dnsEntries);
-
-        // Feature: Domain age anomaly count
-        int domainAgeAnomaly = calculateDomainAgeAnomaly(dnsEntries);
-
-        // Submit all features
-        Map<String, Double> features = Map.of(
-                FeatureConfig.DNS_QUERY_FREQUENCY, (double) queryFreq,
-                FeatureConfig.DNS_UNIQUE_DOMAIN, (double) uniqueDomains.size(),
-                FeatureConfig.DOMAIN_ENTROPY, qtypeEntropy,
-                FeatureConfig.QUERY_RESPONSE_TIME_AVG, queryResponseTimeAvg,
-                FeatureConfig.DOMAIN_AGE_ANOMALY, (double) domainAgeAnomaly,
-                FeatureConfig.NXDOMAIN_RATIO, nxdomainRatio,
-                FeatureConfig.QUERY_LENGTH_ENTROPY, queryLengthEntropy,
-                FeatureConfig.SUBDOMAIN_LEVEL_AVG, subdomainLevelAvg
-        );
-
-        submitFeatures(ip, windowStart, features);
-    }
 
-    /**
-     * Optimized calculation of average query-response time using a map.
-     */
-    private double calculateQueryResponseTimeAvg(List<JsonNode> dnsEntries) {
-        Map<String, Double> queryTimestamps = new HashMap<>();
-        List<Double> timeDifferences = new ArrayList<>();
-
-        for (JsonNode entry : dnsEntries) {
-            String uid = entry.path("uid").asText("");
-            String transId = entry.path("trans_id").asText("");
-            if (uid.isEmpty() || transId.isEmpty()) {
-                log.warn("Missing 'uid' or 'trans_id' in DNS entry for timestamp: {}", entry.path("ts").asText(""));
-                continue;
+        private void matchQueryResponse(DnsRecord entry) {
+            String uid = entry.uid();
+            int transId = entry.transId();
+            if (uid.isEmpty() || transId < 0) {
+                log.warn("Missing 'uid' or 'trans_id' in DNS entry for timestamp: {}", entry.ts());
+                return;
             }
             String key = uid + "_" + transId;
-            double ts = entry.path("ts").asDouble(0.0);
+            double ts = entry.ts();
 
-            if (entry.has("answers") && !entry.get("answers").isEmpty()) {
+            if (entry.answerCount() > 0) {
                 // This is a response
-                if (queryTimestamps.containsKey(key)) {
-                    double queryTs = queryTimestamps.get(key);
-                    double diff = ts - queryTs;
-                    if (diff > 0) {
-                        timeDifferences.add(diff);
-                    }
-                    queryTimestamps.remove(key); // Remove after matching
+                Double queryTs = queryTimestamps.remove(key); // Remove after matching
+                if (queryTs != null) {
+                    addResponseTime(ts - queryTs);
+                } else if (earlyResponses.size() < MAX_EARLY_RESPONSES) {
+                    earlyResponses.add(new EarlyResponse(key, ts));
                 }
             } else {
                 // This is a query
@@ -136,25 +133,98 @@ public class DnsFeatureExtractor extends BaseFeatureExtractor implements IFeatur
             }
         }
 
-        return timeDifferences.isEmpty() ? 0.0 :
-                timeDifferences.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-    }
+        private void addResponseTime(double diff) {
+            if (diff > 0) {
+                totalResponseTime += diff;
+                responseTimeCount++;
+            }
+        }
 
-    /**
-     * Counts the number of queried domains with an age less than 30 days.
-     */
-    private int calculateDomainAgeAnomaly(List<JsonNode> dnsEntries) {
-        int anomalies = 0;
-        for (JsonNode entry : dnsEntries) {
-            String domain = entry.path("query").asText("");
-            if (!domain.isEmpty()) {
-                LocalDateTime creationDate = WhoisService.getWhoisCreationDate(domain);
+        @Override
+        public void merge(DnsAccumulator other) {
+            queryFreq += other.queryFreq;
+            uniqueDomains.merge(other.uniqueDomains);
+            other.registeredDomainCounts.forEach((domain, count) ->
+                    registeredDomainCounts.merge(domain, count, Integer::sum));
+            qtypeCounts = mergeCounts(qtypeCounts, other.qtypeCounts);
+            nxdomainCount += other.nxdomainCount;
+            queryLengthFreq.merge(other.queryLengthFreq);
+            totalSubdomainLevels += other.totalSubdomainLevels;
+            validDomainCount += other.validDomainCount;
+
+            // The other part follows this one: its unmatched responses answer this part's open queries,
+            // and its own queries replace them
+            totalResponseTime += other.totalResponseTime;
+            responseTimeCount += other.responseTimeCount;
+            for (EarlyResponse response : other.earlyResponses) {
+                Double queryTs = queryTimestamps.remove(response.key());
+                if (queryTs != null) {
+                    addResponseTime(response.ts() - queryTs);
+                } else if (earlyResponses.size() < MAX_EARLY_RESPONSES) {
+                    earlyResponses.add(response);
+                }
+            }
+            queryTimestamps.putAll(other.queryTimestamps);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (queryFreq == 0) {
+                return Map.of();
+            }
+            double nxdomainRatio = (double) nxdomainCount / queryFreq;
+            double subdomainLevelAvg = validDomainCount > 0 ? totalSubdomainLevels / validDomainCount : 0.0;
+            double queryResponseTimeAvg = responseTimeCount > 0 ? totalResponseTime / responseTimeCount : 0.0;
+
+            return Map.of(
+                    FeatureConfig.DNS_QUERY_FREQUENCY, (double) queryFreq,
+                    FeatureConfig.DNS_UNIQUE_DOMAIN, (double) uniqueDomains.count(),
+                    FeatureConfig.DOMAIN_ENTROPY, EntropyUtils.calculateEntropy(qtypeCounts),
+                    FeatureConfig.QUERY_RESPONSE_TIME_AVG, queryResponseTimeAvg,
+                    FeatureConfig.DOMAIN_AGE_ANOMALY, (double) calculateDomainAgeAnomaly(),
+                    FeatureConfig.NXDOMAIN_RATIO, nxdomainRatio,
+                    FeatureConfig.QUERY_LENGTH_ENTROPY, EntropyUtils.calculateEntropy(queryLengthFreq),
+                    FeatureConfig.SUBDOMAIN_LEVEL_AVG, subdomainLevelAvg
+            );
+        }
+
+        /**
+         * Counts the number of queries for domains with an age less than 30 days.
+         */
+        private int calculateDomainAgeAnomaly() {
+            int anomalies = 0;
+            for (Map.Entry<String, Integer> domain : registeredDomainCounts.entrySet()) {
+                LocalDateTime creationDate = WhoisService.getWhoisCreationDate(domain.getKey());
                 long ageDays = ChronoUnit.DAYS.between(creationDate, LocalDateTime.now());
                 if (ageDays < 30) {
-                    anomalies++;
+                    anomalies += domain.getValue();
                 }
             }
+            return anomalies;
         }
-        return anomalies;
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the dots of a name, ignoring trailing ones, without splitting it; a name of dots only has
+     * -1 levels, as splitting it would give no labels.
+     */
+    private static int subdomainLevels(String query) {
+        int end = query.length();
+        while (end > 0 && query.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end == 0) {
+            return -1;
+        }
+        int dots = 0;
+        for (int i = 0; i < end; i++) {
+            if (query.charAt(i) == '.') {
+                dots++;
+            }
+        }
+        return dots;
+    }
+
+    private record EarlyResponse(String key, double ts) implements Serializable {
+    }
+}
@@ -0,0 +1,40 @@
+package com.threat.anomalyze.commons.features;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Running state of one extractor over one window, fed record by record as entries arrive and turned
+ * into the window's features when it closes. Its size depends on the distinct values it counts, not on
+ * the number of records. Accumulators of consecutive parts of a window, such as its panes, merge into
+ * the accumulator of the whole window, so overlapping and coarser windows are built without the records.
+ * <p>
+ * Accumulators are serializable so a closed window can be spilled to disk. They are not thread-safe, but
+ * once fed they may be read by several threads at once: neither {@link #features} nor being merged into
+ * another accumulator changes them.
+ *
+ * @param <A> the accumulator's own type, which it merges with
+ */
+public interface FeatureAccumulator<A extends FeatureAccumulator<A>> extends Serializable {
+
+    /**
+     * Counts one record. Records of log types the extractor does not read are ignored.
+     */
+    void add(ZeekRecord record);
+
+    /**
+     * Folds in the state of another part of the same window, leaving the other accumulator unchanged.
+     */
+    void merge(A other);
+
+    /**
+     * Computes the window's features.
+     *
+     * @param windowDurationSeconds the window length, for rate features
+     * @param joinIndex             links the window's records to their conn record by UID
+     * @return feature name to value; empty if no record the extractor reads was added
+     */
+    Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex);
+}
@@ -10,10 +10,21 @@ import java.util.concurrent.ConcurrentHashMap;
 @Service
 @Slf4j
 public class FeatureAggregator {
-    // IP -> WindowStartTimestamp -> FeatureName -> Value
-    private final Map<String, Map<Long, Map<String, Double>>> featureStore = new ConcurrentHashMap<>();
+    // Namespace of windows keyed by source IP, which getFeatureStore() returns
+    public static final String DEFAULT_NAMESPACE = "src";
+
+    // Namespace -> Key (IP, host pair, subnet, ...) -> WindowStartTimestamp -> FeatureName -> Value
+    private final Map<String, Map<String, Map<Long, Map<String, Double>>>> featureStores = new ConcurrentHashMap<>();
+
+    // Namespace features submitted by the current thread go to; extractors submit without naming one
+    private final ThreadLocal<String> currentNamespace = ThreadLocal.withInitial(() -> DEFAULT_NAMESPACE);
+
+    // Length of the window the current thread extracts features from; 0 if not set
+    private final ThreadLocal<Long> currentWindowSizeMs = ThreadLocal.withInitial(() -> 0L);
 
     public void addFeatures(String ip, long windowStart, Map<String, Double> features) {
+        Map<String, Map<Long, Map<String, Double>>> featureStore =
+                featureStores.computeIfAbsent(currentNamespace.get(), k -> new ConcurrentHashMap<>());
         featureStore.compute(ip, (key, ipMap) -> {
             if (ipMap == null) {
                 ipMap = new ConcurrentHashMap<>();
@@ -29,11 +40,50 @@ public class FeatureAggregator {
         });
     }
 
+    /**
+     * Runs a task, typically the extractors of one window, with the features it submits on this thread
+     * going to the given namespace.
+     */
+    public void inNamespace(String namespace, Runnable task) {
+        String previous = currentNamespace.get();
+        currentNamespace.set(namespace);
+        try {
+            task.run();
+        } finally {
+            currentNamespace.set(previous);
+        }
+    }
+
+    /**
+     * Runs a task like {@link #inNamespace}, telling the extractors it runs how long the window is, for
+     * windows whose length differs from {@link FeatureConfig#WINDOW_SIZE_MS}.
+     */
+    public void inWindow(String namespace, long windowSizeMs, Runnable task) {
+        long previous = currentWindowSizeMs.get();
+        currentWindowSizeMs.set(windowSizeMs);
+        try {
+            inNamespace(namespace, task);
+        } finally {
+            currentWindowSizeMs.set(previous);
+        }
+    }
+
+    /**
+     * @return the length of the window being extracted on this thread, or 0 outside {@link #inWindow}
+     */
+    public long currentWindowSizeMs() {
+        return currentWindowSizeMs.get();
+    }
+
     public Map<String, Map<Long, Map<String, Double>>> getFeatureStore() {
-        return Collections.unmodifiableMap(featureStore);
+        return getFeatureStore(DEFAULT_NAMESPACE);
+    }
+
+    public Map<String, Map<Long, Map<String, Double>>> getFeatureStore(String namespace) {
+        return Collections.unmodifiableMap(featureStores.computeIfAbsent(namespace, k -> new ConcurrentHashMap<>()));
     }
 
     public void clear() {
-        featureStore.clear();
+        featureStores.values().forEach(Map::clear);
     }
 }
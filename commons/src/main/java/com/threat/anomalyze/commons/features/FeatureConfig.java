@@ -1,6 +1,7 @@
 package com.threat.anomalyze.commons.features;
 
 import java.util.List;
+import java.util.Set;
 
 public class FeatureConfig {
     public static final String CONNECTION_FREQUENCY = "conn_freq";
@@ -176,5 +177,19 @@ public class FeatureConfig {
             SSH_NO_CLIENT_ID_COUNT
     );
 
+    // Features of the "other" entity the long tail of keys is folded into when key cardinality is bounded
+    public static final String OTHER_ENTRY_COUNT = "other_entry_count";
+    public static final String OTHER_DISTINCT_KEYS = "other_distinct_keys";
+    public static final String OTHER_SAMPLE_RATIO = "other_sample_ratio";
+
+    // Entropy features over unbounded-cardinality fields that can be estimated in bounded memory
+    public static final Set<String> SKETCHABLE_ENTROPY_FEATURES = Set.of(
+            DESTINATION_IP_ENTROPY,
+            SOURCE_IP_ENTROPY,
+            USER_AGENT_ENTROPY,
+            HOST_ENTROPY,
+            JA3_ENTROPY
+    );
+
     public static final long WINDOW_SIZE_MS = 60_000;
 }
\ No newline at end of file
@@ -1,119 +1,152 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.FilesRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.DistinctCounter;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.FrequencyTable;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class FilesFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
-    private static final Set<String> EXECUTABLE_TYPES = Set.of("exe", "dll", "bat", "jar", "sh", "vbs", "ps1", "cmd");
-    private static final Set<String> SUSPICIOUS_TYPES = Set.of("zip", "rar", "js", "vbs", "ps1", "pdf", "doc", "docx");
+public class FilesFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<FilesFeatureExtractor.FilesAccumulator> {
+    private static final String[] EXECUTABLE_TYPES = {"exe", "dll", "bat", "jar", "sh", "vbs", "ps1", "cmd"};
+    private static final String[] SUSPICIOUS_TYPES = {"zip", "rar", "js", "vbs", "ps1", "pdf", "doc", "docx"};
 
     public FilesFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> fileEntries = logEntriesByType.get("files");
-        if (fileEntries == null || fileEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(FilesRecord.LOG_TYPE, Set.of("source", "is_orig", "mime_type", "seen_bytes", "md5"));
+    }
+
+    @Override
+    public FilesAccumulator newAccumulator(String ip) {
+        return new FilesAccumulator(distinctPrecision);
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, FilesRecord.LOG_TYPE)) {
             log.debug("No file entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
+
+    private static boolean containsAny(String type, String[] fragments) {
+        for (String fragment : fragments) {
+            if (type.contains(fragment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * File features of one window, counted in a single pass over its transfers. MIME types are tallied by
+     * dictionary code and classified once per distinct type when the window closes.
+     */
+    public static final class FilesAccumulator implements FeatureAccumulator<FilesAccumulator> {
+        private static final long serialVersionUID = 1L;
 
-        // File type entropy
-        Frequency typeFreq = new Frequency();
-        fileEntries.forEach(e -> {
-            String fileType = e.path("mime_type").asText("");
-            if (!fileType.isEmpty()) typeFreq.addValue(fileType);
-        });
-        double typeEntropy = EntropyUtils.calculateEntropy(typeFreq);
-
-        // Average file size and variance
-        DescriptiveStatistics sizeStats = new DescriptiveStatistics();
-        fileEntries.forEach(e -> {
-            double size = e.path("seen_bytes").asDouble(-1.0);
-            if (size >= 0) sizeStats.addValue(size);
-        });
-        double avgFileSize = sizeStats.getN() > 0 ? sizeStats.getMean() : 0.0;
-        double sizeVariance = sizeStats.getN() > 0 ? sizeStats.getVariance() : 0.0;
-
-        // Executable file ratio
-        long exeCount = fileEntries.stream()
-                .map(e -> e.path("mime_type").asText("").toLowerCase())
-                .filter(type -> EXECUTABLE_TYPES.stream().anyMatch(type::contains) ||
-                        type.contains("octet-stream")) // Catch generic executables
-                .count();
-        double exeRatio = fileEntries.isEmpty() ? 0.0 : (double) exeCount / fileEntries.size();
-
-        // Suspicious file type ratio
-        long suspiciousCount = fileEntries.stream()
-                .map(e -> e.path("mime_type").asText("").toLowerCase())
-                .filter(type -> SUSPICIOUS_TYPES.stream().anyMatch(type::contains))
-                .count();
-        double suspiciousRatio = fileEntries.isEmpty() ? 0.0 : (double) suspiciousCount / fileEntries.size();
-
-        // Unique file hash count
-        Set<String> uniqueHashes = fileEntries.stream()
-                .map(e -> e.path("md5").asText(""))
-                .filter(hash -> {
-                    if (hash.isEmpty()) {
-                        log.warn("Missing md5 hash for IP: {} in window: {}", ip, windowStart);
-                        return false;
-                    }
-                    return true;
-                })
-                .collect(Collectors.toSet());
-        long uniqueHashCount = uniqueHashes.size();
-
-        // File transfer rate
-        double windowDurationSeconds = (double) FeatureConfig.WINDOW_SIZE_MS / 1000.0;
-        double fileRate = fileEntries.size() / windowDurationSeconds;
-
-        // Protocol entropy
-        Frequency protocolFreq = new Frequency();
-        fileEntries.forEach(e -> {
-            String protocol = e.path("source").asText("");
-            if (!protocol.isEmpty()) protocolFreq.addValue(protocol);
-        });
-        double protocolEntropy = EntropyUtils.calculateEntropy(protocolFreq);
-
-        // Upload ratio
-        long uploadCount = fileEntries.stream()
-                .filter(e -> e.path("is_orig").asBoolean(false))
-                .count();
-        double uploadRatio = fileEntries.isEmpty() ? 0.0 : (double) uploadCount / fileEntries.size();
-
-        // Temporal clustering
-        DescriptiveStatistics tsStats = new DescriptiveStatistics();
-        fileEntries.forEach(e -> {
-            double ts = e.path("ts").asDouble(-1.0);
-            if (ts >= 0) tsStats.addValue(ts);
-        });
-        double tsVariance = tsStats.getN() > 0 ? tsStats.getVariance() : 0.0;
-
-        // Submit features
-        Map<String, Double> features = Map.of(
-                FeatureConfig.FILE_TYPE_ENTROPY, typeEntropy,
-                FeatureConfig.AVG_FILE_SIZE, avgFileSize,
-                FeatureConfig.FILE_SIZE_VARIANCE, sizeVariance,
-                FeatureConfig.EXE_RATIO, exeRatio,
-                FeatureConfig.SUSPICIOUS_TYPE_RATIO, suspiciousRatio,
-                FeatureConfig.UNIQUE_HASH_COUNT, (double) uniqueHashCount,
-                FeatureConfig.FILE_RATE, fileRate,
-                FeatureConfig.PROTOCOL_ENTROPY, protocolEntropy,
-                FeatureConfig.FILE_UPLOAD_RATIO, uploadRatio,
-                FeatureConfig.FILE_TS_VARIANCE, tsVariance
-        );
-        submitFeatures(ip, windowStart, features);
+        private long fileCount;
+        private int[] typeCounts = new int[FieldDictionaries.MIME_TYPE.size()];
+        private final StreamingMoments sizeStats = new StreamingMoments();
+        private final DistinctCounter uniqueHashes;
+        private final FrequencyTable protocolFreq = new FrequencyTable();
+        private long uploadCount;
+        private final StreamingMoments tsStats = new StreamingMoments();
+
+        FilesAccumulator(int distinctPrecision) {
+            this.uniqueHashes = new DistinctCounter(distinctPrecision);
+        }
+
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof FilesRecord entry)) {
+                return;
+            }
+            fileCount++;
+            if (entry.mimeTypeCode() != FieldDictionary.EMPTY) {
+                typeCounts = countCode(typeCounts, entry.mimeTypeCode());
+            }
+            double size = entry.seenBytes();
+            if (size >= 0) sizeStats.add(size);
+
+            String hash = entry.md5();
+            if (hash.isEmpty()) {
+                log.warn("Missing md5 hash in file entry for timestamp: {}", entry.ts());
+            } else {
+                uniqueHashes.add(hash);
+            }
+            String protocol = entry.source();
+            if (!protocol.isEmpty()) protocolFreq.add(protocol);
+            if (entry.isOrig()) {
+                uploadCount++;
+            }
+            double ts = entry.ts();
+            if (ts >= 0) tsStats.add(ts);
+        }
+
+        @Override
+        public void merge(FilesAccumulator other) {
+            fileCount += other.fileCount;
+            typeCounts = mergeCounts(typeCounts, other.typeCounts);
+            sizeStats.merge(other.sizeStats);
+            uniqueHashes.merge(other.uniqueHashes);
+            protocolFreq.merge(other.protocolFreq);
+            uploadCount += other.uploadCount;
+            tsStats.merge(other.tsStats);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (fileCount == 0) {
+                return Map.of();
+            }
+            // Entries without a MIME type match neither list
+            long exeCount = 0;
+            long suspiciousCount = 0;
+            for (int code = 0; code < typeCounts.length; code++) {
+                if (typeCounts[code] == 0) {
+                    continue;
+                }
+                String lowerType = FieldDictionaries.MIME_TYPE.decode(code).toLowerCase();
+                if (containsAny(lowerType, EXECUTABLE_TYPES) ||
+                        lowerType.contains("octet-stream")) { // Catch generic executables
+                    exeCount += typeCounts[code];
+                }
+                if (containsAny(lowerType, SUSPICIOUS_TYPES)) {
+                    suspiciousCount += typeCounts[code];
+                }
+            }
+            double avgFileSize = sizeStats.mean();
+            double sizeVariance = sizeStats.variance();
+            double tsVariance = tsStats.variance();
+
+            return Map.of(
+                    FeatureConfig.FILE_TYPE_ENTROPY, EntropyUtils.calculateEntropy(typeCounts),
+                    FeatureConfig.AVG_FILE_SIZE, avgFileSize,
+                    FeatureConfig.FILE_SIZE_VARIANCE, sizeVariance,
+                    FeatureConfig.EXE_RATIO, (double) exeCount / fileCount,
+                    FeatureConfig.SUSPICIOUS_TYPE_RATIO, (double) suspiciousCount / fileCount,
+                    FeatureConfig.UNIQUE_HASH_COUNT, (double) uniqueHashes.count(),
+                    FeatureConfig.FILE_RATE, fileCount / windowDurationSeconds,
+                    FeatureConfig.PROTOCOL_ENTROPY, EntropyUtils.calculateEntropy(protocolFreq),
+                    FeatureConfig.FILE_UPLOAD_RATIO, (double) uploadCount / fileCount,
+                    FeatureConfig.FILE_TS_VARIANCE, tsVariance
+            );
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,130 +1,176 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.HttpRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.EntropySketch;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class HttpFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class HttpFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<HttpFeatureExtractor.HttpAccumulator> {
 
     private static final Set<String> COMMON_METHODS = Set.of("GET", "POST", "HEAD");
+    private static final Set<Integer> COMMON_METHOD_CODES = COMMON_METHODS.stream()
+            .map(FieldDictionaries.HTTP_METHOD::encode)
+            .collect(Collectors.toUnmodifiableSet());
 
-    private static final Set<String> SUSPICIOUS_URI_PATTERNS = Set.of(
+    private static final String[] SUSPICIOUS_URI_PATTERNS = {
             "..", "%00", "'", "--", ";", "&", "|", "%25", "%2e", "%252e", "%3b", "%27",
             "SELECT", "UNION", "<script>", "%2527"
-    );
+    };
 
     public HttpFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> httpEntries = logEntriesByType.get("http");
-        if (httpEntries == null || httpEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(HttpRecord.LOG_TYPE, Set.of("method", "host", "uri", "user_agent", "status_code", "request_body_len"));
+    }
+
+    @Override
+    public HttpAccumulator newAccumulator(String ip) {
+        return new HttpAccumulator(newEntropyCounter(FeatureConfig.USER_AGENT_ENTROPY),
+                newEntropyCounter(FeatureConfig.HOST_ENTROPY));
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, HttpRecord.LOG_TYPE)) {
             log.debug("No http entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // Rare HTTP methods
-        long rareMethodCount = httpEntries.stream()
-                .map(e -> e.path("method").asText(""))
-                .filter(method -> !method.isEmpty() && !COMMON_METHODS.contains(method))
-                .count();
-
-        // URI anomalies
-        long uriAnomalyCount = httpEntries.stream()
-                .map(e -> e.path("uri").asText("").toLowerCase())
-                .filter(uri -> !uri.isEmpty() && SUSPICIOUS_URI_PATTERNS.stream().anyMatch(uri::contains))
-                .count();
-
-        // URI length variance
-        DescriptiveStatistics uriLenStats = new DescriptiveStatistics();
-        httpEntries.forEach(e -> {
-            String uri = e.path("uri").asText("");
-            if (!uri.isEmpty()) uriLenStats.addValue(uri.length());
-        });
-        double uriLenVariance = uriLenStats.getN() > 0 ? uriLenStats.getVariance() : 0.0;
-
-        // Status code ratios
-        long clientErrorCount = httpEntries.stream()
-                .map(e -> e.path("status_code").asInt(0))
-                .filter(code -> code >= 400 && code < 500)
-                .count();
-        long serverErrorCount = httpEntries.stream()
-                .map(e -> e.path("status_code").asInt(0))
-                .filter(code -> code >= 500 && code < 600)
-                .count();
-        long authErrorCount = httpEntries.stream()
-                .map(e -> e.path("status_code").asInt(0))
-                .filter(code -> code == 401 || code == 403)
-                .count();
-        double clientErrorRatio = httpEntries.isEmpty() ? 0.0 : (double) clientErrorCount / httpEntries.size();
-        double serverErrorRatio = httpEntries.isEmpty() ? 0.0 : (double) serverErrorCount / httpEntries.size();
-        double authErrorRatio = httpEntries.isEmpty() ? 0.0 : (double) authErrorCount / httpEntries.size();
-
-        // Method entropy
-        Frequency methodFreq = new Frequency();
-        httpEntries.forEach(e -> {
-            String method = e.path("method").asText("");
-            if (!method.isEmpty()) methodFreq.addValue(method);
-        });
-        double methodEntropy = EntropyUtils.calculateEntropy(methodFreq);
-
-        // User-agent entropy
-        Frequency uaFreq = new Frequency();
-        httpEntries.forEach(e -> {
-            String ua = e.path("user_agent").asText("");
-            if (!ua.isEmpty()) uaFreq.addValue(ua);
-        });
-        double uaEntropy = EntropyUtils.calculateEntropy(uaFreq);
-
-        // Request body length variance
-        DescriptiveStatistics bodyLenStats = new DescriptiveStatistics();
-        httpEntries.forEach(e -> {
-            double len = e.path("request_body_len").asDouble(-1.0);
-            if (len >= 0) bodyLenStats.addValue(len);
-        });
-        double bodyLenVariance = bodyLenStats.getN() > 0 ? bodyLenStats.getVariance() : 0.0;
-
-        // Host entropy
-        Frequency hostFreq = new Frequency();
-        httpEntries.forEach(e -> {
-            String host = e.path("host").asText("");
-            if (!host.isEmpty()) hostFreq.addValue(host);
-        });
-        double hostEntropy = EntropyUtils.calculateEntropy(hostFreq);
-
-        // Temporal clustering
-        DescriptiveStatistics tsStats = new DescriptiveStatistics();
-        httpEntries.forEach(e -> {
-            double ts = e.path("ts").asDouble(-1.0);
-            if (ts >= 0) tsStats.addValue(ts);
-        });
-        double tsVariance = tsStats.getN() > 0 ? tsStats.getVariance() : 0.0;
-
-        Map<String, Double> features = Map.ofEntries(
-                Map.entry(FeatureConfig.RARE_HTTP_METHODS, (double) rareMethodCount),
-                Map.entry(FeatureConfig.URI_ANOMALIES, (double) uriAnomalyCount),
-                Map.entry(FeatureConfig.URI_LENGTH_VARIANCE, uriLenVariance),
-                Map.entry(FeatureConfig.CLIENT_ERROR_RATIO, clientErrorRatio),
-                Map.entry(FeatureConfig.SERVER_ERROR_RATIO, serverErrorRatio),
-                Map.entry(FeatureConfig.AUTH_ERROR_RATIO, authErrorRatio),
-                Map.entry(FeatureConfig.METHOD_ENTROPY, methodEntropy),
-                Map.entry(FeatureConfig.USER_AGENT_ENTROPY, uaEntropy),
-                Map.entry(FeatureConfig.BODY_LENGTH_VARIANCE, bodyLenVariance),
-                Map.entry(FeatureConfig.HOST_ENTROPY, hostEntropy),
-                Map.entry(FeatureConfig.HTTP_TIMESTAMP_VARIANCE, tsVariance)
-        );
-
-        submitFeatures(ip, windowStart, features);
+    private static boolean isSuspiciousUri(String lowerUri) {
+        for (String pattern : SUSPICIOUS_URI_PATTERNS) {
+            if (lowerUri.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * HTTP features of one window, counted in a single pass over its requests. Methods are tallied by
+     * dictionary code, so rare methods are counted once the window closes.
+     */
+    public static final class HttpAccumulator implements FeatureAccumulator<HttpAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private long requestCount;
+        private long uriAnomalyCount;
+        private final StreamingMoments uriLenStats = new StreamingMoments();
+        private long clientErrorCount;
+        private long serverErrorCount;
+        private long authErrorCount;
+        private int[] methodCounts = new int[FieldDictionaries.HTTP_METHOD.size()];
+        private final EntropySketch uaFreq;
+        private final StreamingMoments bodyLenStats = new StreamingMoments();
+        private final EntropySketch hostFreq;
+        private final StreamingMoments tsStats = new StreamingMoments();
+
+        HttpAccumulator(EntropySketch uaFreq, EntropySketch hostFreq) {
+            this.uaFreq = uaFreq;
+            this.hostFreq = hostFreq;
+        }
+
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof HttpRecord entry)) {
+                return;
+            }
+            requestCount++;
+
+            // Rare HTTP methods and method entropy
+            int method = entry.methodCode();
+            if (method != FieldDictionary.EMPTY) {
+                methodCounts = countCode(methodCounts, method);
+            }
+
+            // URI anomalies and length variance
+            String uri = entry.uri();
+            if (!uri.isEmpty()) {
+                if (isSuspiciousUri(uri.toLowerCase())) {
+                    uriAnomalyCount++;
+                }
+                uriLenStats.add(uri.length());
+            }
+
+            // Status code ratios
+            int code = entry.statusCode();
+            if (code >= 400 && code < 500) {
+                clientErrorCount++;
+            } else if (code >= 500 && code < 600) {
+                serverErrorCount++;
+            }
+            if (code == 401 || code == 403) {
+                authErrorCount++;
+            }
+
+            String ua = entry.userAgent();
+            if (!ua.isEmpty()) uaFreq.add(ua);
+            double len = entry.requestBodyLen();
+            if (len >= 0) bodyLenStats.add(len);
+            String host = entry.host();
+            if (!host.isEmpty()) hostFreq.add(host);
+            double ts = entry.ts();
+            if (ts >= 0) tsStats.add(ts);
+        }
+
+        @Override
+        public void merge(HttpAccumulator other) {
+            requestCount += other.requestCount;
+            uriAnomalyCount += other.uriAnomalyCount;
+            uriLenStats.merge(other.uriLenStats);
+            clientErrorCount += other.clientErrorCount;
+            serverErrorCount += other.serverErrorCount;
+            authErrorCount += other.authErrorCount;
+            methodCounts = mergeCounts(methodCounts, other.methodCounts);
+            uaFreq.merge(other.uaFreq);
+            bodyLenStats.merge(other.bodyLenStats);
+            hostFreq.merge(other.hostFreq);
+            tsStats.merge(other.tsStats);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (requestCount == 0) {
+                return Map.of();
+            }
+            long methodCount = 0;
+            for (int count : methodCounts) {
+                methodCount += count;
+            }
+            long rareMethodCount = methodCount - countOf(methodCounts, COMMON_METHOD_CODES);
+            double uriLenVariance = uriLenStats.variance();
+            double bodyLenVariance = bodyLenStats.variance();
+            double tsVariance = tsStats.variance();
+
+            return Map.ofEntries(
+                    Map.entry(FeatureConfig.RARE_HTTP_METHODS, (double) rareMethodCount),
+                    Map.entry(FeatureConfig.URI_ANOMALIES, (double) uriAnomalyCount),
+                    Map.entry(FeatureConfig.URI_LENGTH_VARIANCE, uriLenVariance),
+                    Map.entry(FeatureConfig.CLIENT_ERROR_RATIO, (double) clientErrorCount / requestCount),
+                    Map.entry(FeatureConfig.SERVER_ERROR_RATIO, (double) serverErrorCount / requestCount),
+                    Map.entry(FeatureConfig.AUTH_ERROR_RATIO, (double) authErrorCount / requestCount),
+                    Map.entry(FeatureConfig.METHOD_ENTROPY, EntropyUtils.calculateEntropy(methodCounts)),
+                    Map.entry(FeatureConfig.USER_AGENT_ENTROPY, EntropyUtils.calculateEntropy(uaFreq)),
+                    Map.entry(FeatureConfig.BODY_LENGTH_VARIANCE, bodyLenVariance),
+                    Map.entry(FeatureConfig.HOST_ENTROPY, EntropyUtils.calculateEntropy(hostFreq)),
+                    Map.entry(FeatureConfig.HTTP_TIMESTAMP_VARIANCE, tsVariance)
+            );
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,36 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface IFeatureExtractor {
-        void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType);
+        /**
+         * Computes the features of one window and submits them to the aggregator.
+         *
+         * @param ip               the IP the window belongs to
+         * @param windowStart      start of the window in epoch milliseconds
+         * @param logEntriesByType the window's entries grouped by log type
+         * @param joinIndex        links the window's records to their conn record by UID
+         */
+        void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                             UidJoinIndex joinIndex);
+
+        /**
+         * Declares that the extractor joins records to their connection through the {@link UidJoinIndex},
+         * so windows keep their conn records even when incremental extractors have already counted them.
+         */
+        default boolean joinsConn() {
+                return false;
+        }
+
+        /**
+         * Declares the Zeek fields this extractor reads, per log type, so the parser can skip all others.
+         * The common {@code ts}, {@code uid} and {@code id.*} fields are always parsed and need not be listed.
+         *
+         * @return log type (e.g. "conn") mapped to the Zeek field names read from it
+         */
+        Map<String, Set<String>> requiredFields();
 }
@@ -0,0 +1,18 @@
+package com.threat.anomalyze.commons.features;
+
+/**
+ * Feature extractor that can also run incrementally: the window processor feeds each record to a
+ * per-window {@link FeatureAccumulator} as it arrives and only keeps the accumulators, not the records,
+ * until the window closes. {@link #extractFeatures} gives the same features for a window whose records
+ * were kept.
+ *
+ * @param <A> the extractor's accumulator type
+ */
+public interface IncrementalFeatureExtractor<A extends FeatureAccumulator<A>> extends IFeatureExtractor {
+
+    /**
+     * @param ip the key of the window the accumulator is for, e.g. to tell inbound from outbound records
+     * @return an empty accumulator
+     */
+    A newAccumulator(String ip);
+}
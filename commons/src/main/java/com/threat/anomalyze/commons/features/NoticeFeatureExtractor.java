@@ -1,98 +1,114 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.NoticeRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 @Slf4j
-public class NoticeFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class NoticeFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<NoticeFeatureExtractor.NoticeAccumulator> {
 
     public NoticeFeatureExtractor(FeatureAggregator aggregator) {
         super(aggregator, FeatureConfig.WINDOW_SIZE_MS);
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> noticeEntries = logEntriesByType.get("notice");
-        if (noticeEntries == null || noticeEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(NoticeRecord.LOG_TYPE, Set.of("notice_type", "severity"));
+    }
+
+    @Override
+    public NoticeAccumulator newAccumulator(String ip) {
+        return new NoticeAccumulator();
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, NoticeRecord.LOG_TYPE)) {
             log.debug("No notice entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // 1. Total notice count
-        long noticeCount = noticeEntries.size();
-
-        // 2. Notice type entropy
-        Frequency typeFreq = new Frequency();
-        noticeEntries.forEach(e -> {
-            String type = e.path("notice_type").asText("");
-            if (!type.isEmpty()) typeFreq.addValue(type);
-        });
-        double typeEntropy = calculateEntropy(typeFreq);
-
-        // 3. Severity distribution (low=1, medium=2, high=3)
-        DescriptiveStatistics severityStats = new DescriptiveStatistics();
-        for (JsonNode entry : noticeEntries) {
-            String severityStr = entry.path("severity").asText("").toLowerCase();
-            double severity = mapSeverityToValue(severityStr);
-            if (severity > 0) severityStats.addValue(severity);
-        }
-        double averageSeverity = severityStats.getN() > 0 ? severityStats.getMean() : 0.0;
+    /**
+     * Notice features of one window, counted notice by notice.
+     */
+    public static final class NoticeAccumulator implements FeatureAccumulator<NoticeAccumulator> {
+        private static final long serialVersionUID = 1L;
 
-        // 4. Notice rate (notices per second)
-        double windowDurationSeconds = (double) FeatureConfig.WINDOW_SIZE_MS / 1000.0;
-        double noticeRate = noticeCount / windowDurationSeconds;
+        private long noticeCount;
+        private int[] typeCounts = new int[FieldDictionaries.NOTICE_TYPE.size()];
+        private final StreamingMoments severityStats = new StreamingMoments();
+        private final StreamingMoments timestampStats = new StreamingMoments();
 
-        // 5. Temporal clustering (variance of timestamps)
-        DescriptiveStatistics timestampStats = new DescriptiveStatistics();
-        for (JsonNode entry : noticeEntries) {
-            double ts = entry.path("ts").asDouble(0.0);
-            if (ts > 0) timestampStats.addValue(ts);
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof NoticeRecord entry)) {
+                return;
+            }
+            // 1. Total notice count
+            noticeCount++;
+
+            // 2. Notice type entropy
+            int type = entry.noticeTypeCode();
+            if (type != FieldDictionary.EMPTY) typeCounts = countCode(typeCounts, type);
+
+            // 3. Severity distribution (low=1, medium=2, high=3)
+            double severity = mapSeverityToValue(entry.severity());
+            if (severity > 0) severityStats.add(severity);
+
+            // 5. Temporal clustering (variance of timestamps)
+            double ts = entry.ts();
+            if (ts > 0) timestampStats.add(ts);
         }
-        double timestampVariance = timestampStats.getN() > 0 ? timestampStats.getVariance() : 0.0;
-
-        // Submit features
-        Map<String, Double> features = Map.of(
-                FeatureConfig.NOTICE_COUNT, (double) noticeCount,
-                FeatureConfig.NOTICE_TYPE_ENTROPY, typeEntropy,
-                FeatureConfig.AVERAGE_SEVERITY, averageSeverity,
-                FeatureConfig.NOTICE_RATE, noticeRate,
-                FeatureConfig.NOTICE_TIMESTAMP_VARIANCE, timestampVariance
-        );
-        submitFeatures(ip, windowStart, features);
-    }
 
-    // Calculate entropy from frequency distribution
-    private double calculateEntropy(Frequency freq) {
-        if (freq.getUniqueCount() == 0) return 0.0;
-        double total = freq.getSumFreq();
-        double entropy = 0.0;
-        for (Iterator<Comparable<?>> it = freq.valuesIterator(); it.hasNext(); ) {
-            long count = freq.getCount(it.next());
-            double p = count / total;
-            entropy -= p * Math.log(p) / Math.log(2); // Base-2 logarithm
+        @Override
+        public void merge(NoticeAccumulator other) {
+            noticeCount += other.noticeCount;
+            typeCounts = mergeCounts(typeCounts, other.typeCounts);
+            severityStats.merge(other.severityStats);
+            timestampStats.merge(other.timestampStats);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (noticeCount == 0) {
+                return Map.of();
+            }
+            double averageSeverity = severityStats.mean();
+            // 4. Notice rate (notices per second)
+            double noticeRate = noticeCount / windowDurationSeconds;
+            double timestampVariance = timestampStats.variance();
+
+            return Map.of(
+                    FeatureConfig.NOTICE_COUNT, (double) noticeCount,
+                    FeatureConfig.NOTICE_TYPE_ENTROPY, EntropyUtils.calculateEntropy(typeCounts),
+                    FeatureConfig.AVERAGE_SEVERITY, averageSeverity,
+                    FeatureConfig.NOTICE_RATE, noticeRate,
+                    FeatureConfig.NOTICE_TIMESTAMP_VARIANCE, timestampVariance
+            );
         }
-        return entropy;
     }
 
-    // Map severity strings to numerical values
-    private double mapSeverityToValue(String severity) {
-        switch (severity) {
-            case "low":
-                return 1.0;
-            case "medium":
-                return 2.0;
-            case "high":
-                return 3.0;
-            default:
-                return 0.0; // Missing or unknown severity
+    // Map severity strings to numerical values, ignoring case
+    private static double mapSeverityToValue(String severity) {
+        if (severity.equalsIgnoreCase("low")) {
+            return 1.0;
+        } else if (severity.equalsIgnoreCase("medium")) {
+            return 2.0;
+        } else if (severity.equalsIgnoreCase("high")) {
+            return 3.0;
         }
+        return 0.0; // Missing or unknown severity
     }
 }
\ No newline at end of file
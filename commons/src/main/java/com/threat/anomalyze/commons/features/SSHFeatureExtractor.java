@@ -1,28 +1,36 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.ConnRecord;
+import com.threat.anomalyze.commons.parser.record.SshRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.DistinctCounter;
 import com.threat.anomalyze.commons.util.EntropyUtils;
+import com.threat.anomalyze.commons.util.FrequencyTable;
+import com.threat.anomalyze.commons.util.StreamingMoments;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeSet;
 
 @Service
 @Slf4j
-public class SSHFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
+public class SSHFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<SSHFeatureExtractor.SshAccumulator> {
 
-    // Define weak algorithms for security analysis
-    private static final Set<String> WEAK_ALGORITHMS = Set.of(
-            "arcfour", "arcfour128", "arcfour256", "3des-cbc", "blowfish-cbc", "des-cbc",
-            "hmac-md5", "hmac-md5-96", "hmac-sha1-96", "diffie-hellman-group1-sha1"
-    );
+    // Define weak algorithms for security analysis, matched case-insensitively without lower-casing each name
+    private static final Set<String> WEAK_ALGORITHMS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        WEAK_ALGORITHMS.addAll(List.of(
+                "arcfour", "arcfour128", "arcfour256", "3des-cbc", "blowfish-cbc", "des-cbc",
+                "hmac-md5", "hmac-md5-96", "hmac-sha1-96", "diffie-hellman-group1-sha1"
+        ));
+    }
     private static final int STANDARD_SSH_PORT = 22;
 
     public SSHFeatureExtractor(FeatureAggregator aggregator) {
@@ -30,220 +38,204 @@ public class SSHFeatureExtractor extends BaseFeatureExtractor implements IFeatur
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        // Retrieve SSH log entries
-        List<JsonNode> sshEntries = logEntriesByType.getOrDefault("ssh", Collections.emptyList());
-        if (sshEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(
+                SshRecord.LOG_TYPE, Set.of("auth_success", "auth_attempts", "client", "server",
+                        "cipher_alg", "mac_alg", "kex_alg", "hassh", "hasshServer"),
+                ConnRecord.LOG_TYPE, Set.of("service", "duration", "orig_bytes", "resp_bytes"));
+    }
+
+    @Override
+    public boolean joinsConn() {
+        return true;
+    }
+
+    @Override
+    public SshAccumulator newAccumulator(String ip) {
+        return new SshAccumulator(ip, distinctPrecision);
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!entriesOf(logEntriesByType, SshRecord.LOG_TYPE).isEmpty() && joinIndex.size() == 0) {
+            log.warn("No conn.log entries available for IP: {} in window: {}. Duration and byte features will be zero.", ip, windowStart);
+        }
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, SshRecord.LOG_TYPE)) {
             log.debug("No SSH entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // Retrieve conn.log entries for correlation
-        List<JsonNode> connEntries = logEntriesByType.getOrDefault("conn", Collections.emptyList());
-        if (connEntries.isEmpty()) {
-            log.warn("No conn.log entries available for IP: {} in window: {}. Duration and byte features will be zero.", ip, windowStart);
+    private static boolean usesWeakAlgorithm(SshRecord entry) {
+        return WEAK_ALGORITHMS.contains(entry.cipherAlg()) ||
+                WEAK_ALGORITHMS.contains(entry.macAlg()) ||
+                WEAK_ALGORITHMS.contains(entry.kexAlg());
+    }
+
+    private static int authAttemptsOf(SshRecord entry) {
+        int attempts = entry.authAttempts();
+        // Handle Zeek bug: if auth_success is false and attempts is 0, assume 1 attempt
+        if (!entry.authSuccess() && attempts == 0) {
+            attempts = 1;
         }
+        return attempts;
+    }
 
-        // Build conn.log UID map for efficient lookup
-        Map<String, JsonNode> uidToConn = connEntries.stream()
-                .collect(Collectors.toMap(
-                        conn -> conn.path("uid").asText(""),
-                        conn -> conn,
-                        (c1, c2) -> c1 // Keep first entry in case of duplicates
-                ));
-
-        // Separate inbound and outbound connections
-        List<JsonNode> outboundEntries = sshEntries.stream()
-                .filter(e -> ip.equals(e.path("id.orig_h").asText("")))
-                .toList();
-        List<JsonNode> inboundEntries = sshEntries.stream()
-                .filter(e -> ip.equals(e.path("id.resp_h").asText("")))
-                .toList();
-
-        // **Outbound Features**
-        // Feature 1: Number of outgoing SSH connections
-        int outgoingConnCount = outboundEntries.size();
-
-        // Feature 2: Number of unique destination IPs
-        Set<String> uniqueDestIps = outboundEntries.stream()
-                .map(e -> e.path("id.resp_h").asText(""))
-                .filter(destIp -> !destIp.isEmpty())
-                .collect(Collectors.toSet());
-        int uniqueDestIpCount = uniqueDestIps.size();
-
-        // Feature 3: Outbound authentication success ratio
-        long outboundSuccessAuthCount = outboundEntries.stream()
-                .filter(e -> e.path("auth_success").asBoolean(false))
-                .count();
-        double outboundAuthSuccessRatio = outgoingConnCount > 0 ? (double) outboundSuccessAuthCount / outgoingConnCount : 0.0;
-
-        // Feature 4: Entropy of server software (outbound)
-        Frequency serverFreq = new Frequency();
-        outboundEntries.forEach(e -> {
-            String server = e.path("server").asText("");
-            if (!server.isEmpty()) serverFreq.addValue(server);
-        });
-        double serverEntropy = EntropyUtils.calculateEntropy(serverFreq);
-
-        // Feature 5: Number of outbound connections using weak algorithms
-        long outboundWeakAlgoCount = outboundEntries.stream()
-                .filter(e -> WEAK_ALGORITHMS.contains(e.path("cipher_alg").asText("").toLowerCase()) ||
-                        WEAK_ALGORITHMS.contains(e.path("mac_alg").asText("").toLowerCase()) ||
-                        WEAK_ALGORITHMS.contains(e.path("kex_alg").asText("").toLowerCase()))
-                .count();
-
-        // Feature 6: Average authentication attempts per outbound connection
-        DescriptiveStatistics outboundAuthAttemptsStats = new DescriptiveStatistics();
-        outboundEntries.forEach(e -> {
-            int attempts = e.path("auth_attempts").asInt(0);
-            // Handle Zeek bug: if auth_success is false and attempts is 0, assume 1 attempt
-            if (!e.path("auth_success").asBoolean(false) && attempts == 0) {
-                attempts = 1;
-            }
-            outboundAuthAttemptsStats.addValue(attempts);
-        });
-        double outboundAvgAuthAttempts = outboundAuthAttemptsStats.getN() > 0 ? outboundAuthAttemptsStats.getMean() : 0.0;
-
-        // Feature 7: Number of unique destination ports (outbound)
-        Set<Integer> uniqueDestPorts = outboundEntries.stream()
-                .map(e -> e.path("id.resp_p").asInt(0))
-                .filter(port -> port > 0)
-                .collect(Collectors.toSet());
-        int uniqueDestPortCount = uniqueDestPorts.size();
-
-        // Feature 8: Number of outbound connections to non-standard ports
-        long nonStandardPortCount = outboundEntries.stream()
-                .filter(e -> e.path("id.resp_p").asInt(0) != STANDARD_SSH_PORT)
-                .count();
-
-        // Feature 9: Timestamp variance (outbound)
-        DescriptiveStatistics outboundTsStats = new DescriptiveStatistics();
-        outboundEntries.forEach(e -> {
-            double ts = e.path("ts").asDouble(0.0);
-            if (ts > 0) outboundTsStats.addValue(ts);
-        });
-        double outboundTsVariance = outboundTsStats.getN() > 0 ? outboundTsStats.getVariance() : 0.0;
-
-        // Feature 10: Average session duration (outbound, from conn.log)
-        DescriptiveStatistics outboundDurationStats = new DescriptiveStatistics();
-        for (JsonNode sshEntry : outboundEntries) {
-            String uid = sshEntry.path("uid").asText("");
-            JsonNode conn = uidToConn.get(uid);
-            if (conn != null) {
-                double duration = conn.path("duration").asDouble(0.0);
-                outboundDurationStats.addValue(duration);
-            }
+    /**
+     * SSH features of one window, split into the key's outbound and inbound sessions. Session duration
+     * and bytes come from the conn records Zeek tagged with the ssh service, joined through the window's
+     * {@link UidJoinIndex} when the window closes, so ssh and conn records from any part of the window meet.
+     */
+    public static final class SshAccumulator implements FeatureAccumulator<SshAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final String ip;
+        private long sshCount;
+
+        // Outbound
+        private int outgoingConnCount;
+        private final DistinctCounter uniqueDestIps;
+        private long outboundSuccessAuthCount;
+        private final FrequencyTable serverFreq = new FrequencyTable();
+        private long outboundWeakAlgoCount;
+        private long outboundAuthAttempts;
+        private final Set<Integer> uniqueDestPorts = new HashSet<>();
+        private long nonStandardPortCount;
+        private final StreamingMoments outboundTsStats = new StreamingMoments();
+        private final FrequencyTable outboundCipherFreq = new FrequencyTable();
+        private final FrequencyTable hasshFreq = new FrequencyTable();
+        private final Map<String, Integer> outboundUids = new HashMap<>();
+
+        // Inbound
+        private int inboundConnCount;
+        private final DistinctCounter uniqueSrcIps;
+        private long inboundSuccessAuthCount;
+        private final FrequencyTable clientFreq = new FrequencyTable();
+        private long inboundWeakAlgoCount;
+        private long inboundAuthAttempts;
+        private final FrequencyTable hasshServerFreq = new FrequencyTable();
+        private long noClientIdCount;
+
+        SshAccumulator(String ip, int distinctPrecision) {
+            this.ip = ip;
+            this.uniqueDestIps = new DistinctCounter(distinctPrecision);
+            this.uniqueSrcIps = new DistinctCounter(distinctPrecision);
         }
-        double outboundAvgDuration = outboundDurationStats.getN() > 0 ? outboundDurationStats.getMean() : 0.0;
-
-        // Feature 11: Total bytes transferred (outbound, from conn.log)
-        double outboundTotalBytes = 0.0;
-        for (JsonNode sshEntry : outboundEntries) {
-            String uid = sshEntry.path("uid").asText("");
-            JsonNode conn = uidToConn.get(uid);
-            if (conn != null) {
-                double origBytes = conn.path("orig_bytes").asDouble(0.0);
-                double respBytes = conn.path("resp_bytes").asDouble(0.0);
-                outboundTotalBytes += origBytes + respBytes;
+
+        @Override
+        public void add(ZeekRecord record) {
+            if (record instanceof SshRecord entry) {
+                sshCount++;
+                if (ip.equals(entry.origH())) {
+                    addOutbound(entry);
+                }
+                if (ip.equals(entry.respH())) {
+                    addInbound(entry);
+                }
             }
         }
 
-        // Feature 12: Entropy of cipher algorithms (outbound)
-        Frequency outboundCipherFreq = new Frequency();
-        outboundEntries.forEach(e -> {
-            String cipher = e.path("cipher_alg").asText("");
-            if (!cipher.isEmpty()) outboundCipherFreq.addValue(cipher);
-        });
-        double outboundCipherEntropy = EntropyUtils.calculateEntropy(outboundCipherFreq);
-
-        // Feature 13: Entropy of HASSH fingerprints (outbound clients)
-        Frequency hasshFreq = new Frequency();
-        outboundEntries.forEach(e -> {
-            String hassh = e.path("hassh").asText("");
-            if (!hassh.isEmpty()) hasshFreq.addValue(hassh);
-        });
-        double hasshEntropy = EntropyUtils.calculateEntropy(hasshFreq);
-
-        // **Inbound Features**
-        // Feature 14: Number of inbound SSH connections
-        int inboundConnCount = inboundEntries.size();
-
-        // Feature 15: Number of unique source IPs
-        Set<String> uniqueSrcIps = inboundEntries.stream()
-                .map(e -> e.path("id.orig_h").asText(""))
-                .filter(srcIp -> !srcIp.isEmpty())
-                .collect(Collectors.toSet());
-        int uniqueSrcIpCount = uniqueSrcIps.size();
-
-        // Feature 16: Inbound authentication success ratio
-        long inboundSuccessAuthCount = inboundEntries.stream()
-                .filter(e -> e.path("auth_success").asBoolean(false))
-                .count();
-        double inboundAuthSuccessRatio = inboundConnCount > 0 ? (double) inboundSuccessAuthCount / inboundConnCount : 0.0;
-
-        // Feature 17: Entropy of client software (inbound)
-        Frequency clientFreq = new Frequency();
-        inboundEntries.forEach(e -> {
-            String client = e.path("client").asText("");
-            if (!client.isEmpty()) clientFreq.addValue(client);
-        });
-        double clientEntropy = EntropyUtils.calculateEntropy(clientFreq);
-
-        // Feature 18: Number of inbound connections using weak algorithms
-        long inboundWeakAlgoCount = inboundEntries.stream()
-                .filter(e -> WEAK_ALGORITHMS.contains(e.path("cipher_alg").asText("").toLowerCase()) ||
-                        WEAK_ALGORITHMS.contains(e.path("mac_alg").asText("").toLowerCase()) ||
-                        WEAK_ALGORITHMS.contains(e.path("kex_alg").asText("").toLowerCase()))
-                .count();
-
-        // Feature 19: Average authentication attempts per inbound connection
-        DescriptiveStatistics inboundAuthAttemptsStats = new DescriptiveStatistics();
-        inboundEntries.forEach(e -> {
-            int attempts = e.path("auth_attempts").asInt(0);
-            if (!e.path("auth_success").asBoolean(false) && attempts == 0) {
-                attempts = 1;
+        private void addOutbound(SshRecord entry) {
+            outgoingConnCount++;
+            if (!entry.respH().isEmpty()) uniqueDestIps.add(entry.respH());
+            if (entry.authSuccess()) outboundSuccessAuthCount++;
+            if (!entry.server().isEmpty()) serverFreq.add(entry.server());
+            if (usesWeakAlgorithm(entry)) outboundWeakAlgoCount++;
+            outboundAuthAttempts += authAttemptsOf(entry);
+            if (entry.respP() > 0) uniqueDestPorts.add(entry.respP());
+            if (entry.respP() != STANDARD_SSH_PORT) nonStandardPortCount++;
+            if (entry.ts() > 0) outboundTsStats.add(entry.ts());
+            if (!entry.cipherAlg().isEmpty()) outboundCipherFreq.add(entry.cipherAlg());
+            if (!entry.hassh().isEmpty()) hasshFreq.add(entry.hassh());
+            outboundUids.merge(entry.uid(), 1, Integer::sum);
+        }
+
+        private void addInbound(SshRecord entry) {
+            inboundConnCount++;
+            if (!entry.origH().isEmpty()) uniqueSrcIps.add(entry.origH());
+            if (entry.authSuccess()) inboundSuccessAuthCount++;
+            if (!entry.client().isEmpty()) clientFreq.add(entry.client());
+            if (usesWeakAlgorithm(entry)) inboundWeakAlgoCount++;
+            inboundAuthAttempts += authAttemptsOf(entry);
+            if (!entry.hasshServer().isEmpty()) hasshServerFreq.add(entry.hasshServer());
+            if (entry.client().isEmpty()) noClientIdCount++;
+        }
+
+        @Override
+        public void merge(SshAccumulator other) {
+            sshCount += other.sshCount;
+            outgoingConnCount += other.outgoingConnCount;
+            uniqueDestIps.merge(other.uniqueDestIps);
+            outboundSuccessAuthCount += other.outboundSuccessAuthCount;
+            serverFreq.merge(other.serverFreq);
+            outboundWeakAlgoCount += other.outboundWeakAlgoCount;
+            outboundAuthAttempts += other.outboundAuthAttempts;
+            uniqueDestPorts.addAll(other.uniqueDestPorts);
+            nonStandardPortCount += other.nonStandardPortCount;
+            outboundTsStats.merge(other.outboundTsStats);
+            outboundCipherFreq.merge(other.outboundCipherFreq);
+            hasshFreq.merge(other.hasshFreq);
+            other.outboundUids.forEach((uid, count) -> outboundUids.merge(uid, count, Integer::sum));
+
+            inboundConnCount += other.inboundConnCount;
+            uniqueSrcIps.merge(other.uniqueSrcIps);
+            inboundSuccessAuthCount += other.inboundSuccessAuthCount;
+            clientFreq.merge(other.clientFreq);
+            inboundWeakAlgoCount += other.inboundWeakAlgoCount;
+            inboundAuthAttempts += other.inboundAuthAttempts;
+            hasshServerFreq.merge(other.hasshServerFreq);
+            noClientIdCount += other.noClientIdCount;
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (sshCount == 0) {
+                return Map.of();
+            }
+            // Session duration and bytes of outbound connections, joined with conn.log
+            double totalDuration = 0.0;
+            double outboundTotalBytes = 0.0;
+            int joinedCount = 0;
+            for (Map.Entry<String, Integer> uid : outboundUids.entrySet()) {
+                ConnRecord conn = joinIndex.connFor(uid.getKey());
+                if (conn != null && conn.service().contains("ssh")) {
+                    double duration = Double.isNaN(conn.duration()) ? 0.0 : conn.duration();
+                    double bytes = Math.max(conn.origBytes(), 0) + Math.max(conn.respBytes(), 0);
+                    totalDuration += duration * uid.getValue();
+                    outboundTotalBytes += bytes * uid.getValue();
+                    joinedCount += uid.getValue();
+                }
             }
-            inboundAuthAttemptsStats.addValue(attempts);
-        });
-        double inboundAvgAuthAttempts = inboundAuthAttemptsStats.getN() > 0 ? inboundAuthAttemptsStats.getMean() : 0.0;
-
-        // Feature 20: Entropy of HASSH server fingerprints (inbound servers)
-        Frequency hasshServerFreq = new Frequency();
-        inboundEntries.forEach(e -> {
-            String hasshServer = e.path("hasshServer").asText("");
-            if (!hasshServer.isEmpty()) hasshServerFreq.addValue(hasshServer);
-        });
-        double hasshServerEntropy = EntropyUtils.calculateEntropy(hasshServerFreq);
-
-        // Feature 21: Number of connections without client identification
-        long noClientIdCount = inboundEntries.stream()
-                .filter(e -> e.path("client").asText("").isEmpty())
-                .count();
-
-        // Submit features to aggregator
-        Map<String, Double> features = new HashMap<>();
-        features.put(FeatureConfig.SSH_OUTGOING_CONNECTIONS, (double) outgoingConnCount);
-        features.put(FeatureConfig.SSH_UNIQUE_DEST_IPS, (double) uniqueDestIpCount);
-        features.put(FeatureConfig.SSH_AUTH_SUCCESS_RATIO, outboundAuthSuccessRatio);
-        features.put(FeatureConfig.SSH_SERVER_SOFTWARE_ENTROPY, serverEntropy);
-        features.put(FeatureConfig.SSH_WEAK_ALGO_COUNT, (double) outboundWeakAlgoCount);
-        features.put(FeatureConfig.SSH_AVG_AUTH_ATTEMPTS, outboundAvgAuthAttempts);
-        features.put(FeatureConfig.SSH_UNIQUE_DEST_PORTS, (double) uniqueDestPortCount);
-        features.put(FeatureConfig.SSH_NON_STANDARD_PORT_COUNT, (double) nonStandardPortCount);
-        features.put(FeatureConfig.SSH_TIMESTAMP_VARIANCE, outboundTsVariance);
-        features.put(FeatureConfig.SSH_AVG_DURATION, outboundAvgDuration);
-        features.put(FeatureConfig.SSH_TOTAL_BYTES, outboundTotalBytes);
-        features.put(FeatureConfig.SSH_CIPHER_ALGO_ENTROPY, outboundCipherEntropy);
-        features.put(FeatureConfig.SSH_HASSH_ENTROPY, hasshEntropy);
-        features.put(FeatureConfig.SSH_INBOUND_CONNECTIONS, (double) inboundConnCount);
-        features.put(FeatureConfig.SSH_UNIQUE_SRC_IPS, (double) uniqueSrcIpCount);
-        features.put(FeatureConfig.SSH_INBOUND_AUTH_SUCCESS_RATIO, inboundAuthSuccessRatio);
-        features.put(FeatureConfig.SSH_CLIENT_SOFTWARE_ENTROPY, clientEntropy);
-        features.put(FeatureConfig.SSH_INBOUND_WEAK_ALGO_COUNT, (double) inboundWeakAlgoCount);
-        features.put(FeatureConfig.SSH_INBOUND_AVG_AUTH_ATTEMPTS, inboundAvgAuthAttempts);
-        features.put(FeatureConfig.SSH_HASSH_SERVER_ENTROPY, hasshServerEntropy);
-        features.put(FeatureConfig.SSH_NO_CLIENT_ID_COUNT, (double) noClientIdCount);
-
-        submitFeatures(ip, windowStart, features);
+            double outboundAvgDuration = joinedCount > 0 ? totalDuration / joinedCount : 0.0;
+            double outboundAuthSuccessRatio = outgoingConnCount > 0 ? (double) outboundSuccessAuthCount / outgoingConnCount : 0.0;
+            double outboundAvgAuthAttempts = outgoingConnCount > 0 ? (double) outboundAuthAttempts / outgoingConnCount : 0.0;
+            double outboundTsVariance = outboundTsStats.variance();
+            double inboundAuthSuccessRatio = inboundConnCount > 0 ? (double) inboundSuccessAuthCount / inboundConnCount : 0.0;
+            double inboundAvgAuthAttempts = inboundConnCount > 0 ? (double) inboundAuthAttempts / inboundConnCount : 0.0;
+
+            Map<String, Double> features = new HashMap<>();
+            features.put(FeatureConfig.SSH_OUTGOING_CONNECTIONS, (double) outgoingConnCount);
+            features.put(FeatureConfig.SSH_UNIQUE_DEST_IPS, (double) uniqueDestIps.count());
+            features.put(FeatureConfig.SSH_AUTH_SUCCESS_RATIO, outboundAuthSuccessRatio);
+            features.put(FeatureConfig.SSH_SERVER_SOFTWARE_ENTROPY, EntropyUtils.calculateEntropy(serverFreq));
+            features.put(FeatureConfig.SSH_WEAK_ALGO_COUNT, (double) outboundWeakAlgoCount);
+            features.put(FeatureConfig.SSH_AVG_AUTH_ATTEMPTS, outboundAvgAuthAttempts);
+            features.put(FeatureConfig.SSH_UNIQUE_DEST_PORTS, (double) uniqueDestPorts.size());
+            features.put(FeatureConfig.SSH_NON_STANDARD_PORT_COUNT, (double) nonStandardPortCount);
+            features.put(FeatureConfig.SSH_TIMESTAMP_VARIANCE, outboundTsVariance);
+            features.put(FeatureConfig.SSH_AVG_DURATION, outboundAvgDuration);
+            features.put(FeatureConfig.SSH_TOTAL_BYTES, outboundTotalBytes);
+            features.put(FeatureConfig.SSH_CIPHER_ALGO_ENTROPY, EntropyUtils.calculateEntropy(outboundCipherFreq));
+            features.put(FeatureConfig.SSH_HASSH_ENTROPY, EntropyUtils.calculateEntropy(hasshFreq));
+            features.put(FeatureConfig.SSH_INBOUND_CONNECTIONS, (double) inboundConnCount);
+            features.put(FeatureConfig.SSH_UNIQUE_SRC_IPS, (double) uniqueSrcIps.count());
+            features.put(FeatureConfig.SSH_INBOUND_AUTH_SUCCESS_RATIO, inboundAuthSuccessRatio);
+            features.put(FeatureConfig.SSH_CLIENT_SOFTWARE_ENTROPY, EntropyUtils.calculateEntropy(clientFreq));
+            features.put(FeatureConfig.SSH_INBOUND_WEAK_ALGO_COUNT, (double) inboundWeakAlgoCount);
+            features.put(FeatureConfig.SSH_INBOUND_AVG_AUTH_ATTEMPTS, inboundAvgAuthAttempts);
+            features.put(FeatureConfig.SSH_HASSH_SERVER_ENTROPY, EntropyUtils.calculateEntropy(hasshServerFreq));
+            features.put(FeatureConfig.SSH_NO_CLIENT_ID_COUNT, (double) noClientIdCount);
+            return features;
+        }
     }
-}
\ No newline at end of file
+}
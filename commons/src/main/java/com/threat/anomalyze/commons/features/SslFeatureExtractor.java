@@ -1,28 +1,22 @@
 package com.threat.anomalyze.commons.features;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.SslRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.EntropySketch;
 import com.threat.anomalyze.commons.util.EntropyUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.Frequency;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class SslFeatureExtractor extends BaseFeatureExtractor implements IFeatureExtractor {
-
-    private static final String VERSION_FIELD = "version";
-    private static final String CIPHER_FIELD = "cipher";
-    private static final String JA3_FIELD = "ja3";
-    private static final String ISSUER_FIELD = "issuer";
-    private static final String SUBJECT_FIELD = "subject";
-    private static final String ESTABLISHED_FIELD = "established";
-    private static final String CURVE_FIELD = "curve";
-    private static final String RESUMED_FIELD = "resumed";
-    private static final String NEXT_PROTOCOL_FIELD = "next_protocol";
+public class SslFeatureExtractor extends BaseFeatureExtractor
+        implements IncrementalFeatureExtractor<SslFeatureExtractor.SslAccumulator> {
 
     // Weak ciphers from Zeek logs
     private static final Set<String> WEAK_CIPHERS = Set.of(
@@ -37,6 +31,13 @@ public class SslFeatureExtractor extends BaseFeatureExtractor implements IFeatur
             "secp160r1", "secp192r1", "sect163k1"
     );
 
+    private static final Set<Integer> WEAK_CIPHER_CODES = WEAK_CIPHERS.stream()
+            .map(FieldDictionaries.SSL_CIPHER::encode)
+            .collect(Collectors.toUnmodifiableSet());
+    private static final Set<Integer> WEAK_CURVE_CODES = WEAK_CURVES.stream()
+            .map(FieldDictionaries.SSL_CURVE::encode)
+            .collect(Collectors.toUnmodifiableSet());
+
     // Outdated SSL/TLS versions
     private static final Set<String> OUTDATED_VERSIONS = Set.of(
             "SSLV2", "SSLV3", "TLSV10", "TLSV11"
@@ -50,88 +51,107 @@ public class SslFeatureExtractor extends BaseFeatureExtractor implements IFeatur
     }
 
     @Override
-    public void extractFeatures(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
-        List<JsonNode> sslEntries = logEntriesByType.get("ssl");
-        if (sslEntries == null || sslEntries.isEmpty()) {
+    public Map<String, Set<String>> requiredFields() {
+        return Map.of(SslRecord.LOG_TYPE, Set.of("version", "cipher", "curve", "next_protocol", "resumed", "established", "ja3", "issuer", "subject"));
+    }
+
+    @Override
+    public SslAccumulator newAccumulator(String ip) {
+        return new SslAccumulator(newEntropyCounter(FeatureConfig.JA3_ENTROPY));
+    }
+
+    @Override
+    public void extractFeatures(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType,
+                                UidJoinIndex joinIndex) {
+        if (!extractWith(newAccumulator(ip), ip, windowStart, logEntriesByType, joinIndex, SslRecord.LOG_TYPE)) {
             log.debug("No ssl entries for IP: {} in window: {}", ip, windowStart);
-            return;
         }
+    }
 
-        // Outdated SSL/TLS Versions
-        long outdatedSslCount = sslEntries.stream()
-                .map(e -> e.path(VERSION_FIELD).asText("").toUpperCase())
-                .filter(OUTDATED_VERSIONS::contains)
-                .count();
-
-        // Weak Ciphers
-        long weakCipherCount = sslEntries.stream()
-                .map(e -> e.path(CIPHER_FIELD).asText(""))
-                .filter(cipher -> !cipher.isEmpty() && WEAK_CIPHERS.contains(cipher))
-                .count();
-
-        // Cipher Suite Entropy
-        Frequency cipherFreq = new Frequency();
-        sslEntries.forEach(e -> cipherFreq.addValue(e.path(CIPHER_FIELD).asText("")));
-        double cipherEntropy = EntropyUtils.calculateEntropy(cipherFreq);
-
-        // JA3 Entropy
-        Frequency ja3Freq = new Frequency();
-        sslEntries.forEach(e -> {
-            String ja3 = e.path(JA3_FIELD).asText("");
-            if (!ja3.isEmpty()) ja3Freq.addValue(ja3);
-        });
-        double ja3Entropy = EntropyUtils.calculateEntropy(ja3Freq);
-
-        // Self-Signed Certificates
-        long selfSignedCertCount = sslEntries.stream()
-                .filter(e -> {
-                    String issuer = e.path(ISSUER_FIELD).asText("");
-                    String subject = e.path(SUBJECT_FIELD).asText("");
-                    return !issuer.isEmpty() && issuer.equals(subject);
-                })
-                .count();
-
-        // Handshake Failure Rate
-        long handshakeFailureCount = sslEntries.stream()
-                .filter(e -> !e.path(ESTABLISHED_FIELD).asBoolean(true))
-                .count();
-        double handshakeFailureRate = sslEntries.isEmpty() ? 0.0 : (double) handshakeFailureCount / sslEntries.size();
-
-        // SSL/TLS Version Entropy
-        Frequency versionFreq = new Frequency();
-        sslEntries.forEach(e -> versionFreq.addValue(e.path(VERSION_FIELD).asText("")));
-        double versionEntropy = EntropyUtils.calculateEntropy(versionFreq);
-
-        // Weak Curve Count
-        long weakCurveCount = sslEntries.stream()
-                .map(e -> e.path(CURVE_FIELD).asText(""))
-                .filter(curve -> !curve.isEmpty() && WEAK_CURVES.contains(curve))
-                .count();
-
-        // Resumption Rate
-        long resumedCount = sslEntries.stream()
-                .filter(e -> e.path(RESUMED_FIELD).asBoolean(false))
-                .count();
-        double resumptionRate = sslEntries.isEmpty() ? 0.0 : (double) resumedCount / sslEntries.size();
-
-        // Next Protocol Entropy
-        Frequency nextProtocolFreq = new Frequency();
-        sslEntries.forEach(e -> nextProtocolFreq.addValue(e.path(NEXT_PROTOCOL_FIELD).asText("")));
-        double nextProtocolEntropy = EntropyUtils.calculateEntropy(nextProtocolFreq);
-
-        // Submit Features
-        Map<String, Double> features = Map.of(
-                FeatureConfig.OUTDATED_SSL_VERSIONS, (double) outdatedSslCount,
-                FeatureConfig.WEAK_CIPHERS, (double) weakCipherCount,
-                FeatureConfig.CIPHER_SUITE_ENTROPY, cipherEntropy,
-                FeatureConfig.JA3_ENTROPY, ja3Entropy,
-                FeatureConfig.SELF_SIGNED_CERT_COUNT, (double) selfSignedCertCount,
-                FeatureConfig.HANDSHAKE_FAILURE_RATE, handshakeFailureRate,
-                FeatureConfig.SSL_VERSION_ENTROPY, versionEntropy,
-                FeatureConfig.WEAK_CURVE_COUNT, (double) weakCurveCount,
-                FeatureConfig.RESUMPTION_RATE, resumptionRate,
-                FeatureConfig.NEXT_PROTOCOL_ENTROPY, nextProtocolEntropy
-        );
-        submitFeatures(ip, windowStart, features);
+    /**
+     * SSL features of one window, counted in a single pass over its handshakes. Versions, ciphers and
+     * curves are tallied by dictionary code and classified once the window closes.
+     */
+    public static final class SslAccumulator implements FeatureAccumulator<SslAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private long sslCount;
+        private int[] versionCounts = new int[FieldDictionaries.SSL_VERSION.size()];
+        private int[] cipherCounts = new int[FieldDictionaries.SSL_CIPHER.size()];
+        private final EntropySketch ja3Freq;
+        private long selfSignedCertCount;
+        private long handshakeFailureCount;
+        private int[] curveCounts = new int[FieldDictionaries.SSL_CURVE.size()];
+        private long resumedCount;
+        private int[] nextProtocolCounts = new int[FieldDictionaries.SSL_NEXT_PROTOCOL.size()];
+
+        SslAccumulator(EntropySketch ja3Freq) {
+            this.ja3Freq = ja3Freq;
+        }
+
+        @Override
+        public void add(ZeekRecord record) {
+            if (!(record instanceof SslRecord entry)) {
+                return;
+            }
+            sslCount++;
+            versionCounts = countCode(versionCounts, entry.versionCode());
+            cipherCounts = countCode(cipherCounts, entry.cipherCode());
+            String ja3 = entry.ja3();
+            if (!ja3.isEmpty()) ja3Freq.add(ja3);
+            String issuer = entry.issuer();
+            if (!issuer.isEmpty() && issuer.equals(entry.subject())) {
+                selfSignedCertCount++;
+            }
+            if (!entry.established()) {
+                handshakeFailureCount++;
+            }
+            curveCounts = countCode(curveCounts, entry.curveCode());
+            if (entry.resumed()) {
+                resumedCount++;
+            }
+            nextProtocolCounts = countCode(nextProtocolCounts, entry.nextProtocolCode());
+        }
+
+        @Override
+        public void merge(SslAccumulator other) {
+            sslCount += other.sslCount;
+            versionCounts = mergeCounts(versionCounts, other.versionCounts);
+            cipherCounts = mergeCounts(cipherCounts, other.cipherCounts);
+            ja3Freq.merge(other.ja3Freq);
+            selfSignedCertCount += other.selfSignedCertCount;
+            handshakeFailureCount += other.handshakeFailureCount;
+            curveCounts = mergeCounts(curveCounts, other.curveCounts);
+            resumedCount += other.resumedCount;
+            nextProtocolCounts = mergeCounts(nextProtocolCounts, other.nextProtocolCounts);
+        }
+
+        @Override
+        public Map<String, Double> features(double windowDurationSeconds, UidJoinIndex joinIndex) {
+            if (sslCount == 0) {
+                return Map.of();
+            }
+            // Versions are compared case-insensitively, so each distinct version is only classified once
+            long outdatedSslCount = 0;
+            for (int code = 0; code < versionCounts.length; code++) {
+                if (versionCounts[code] > 0
+                        && OUTDATED_VERSIONS.contains(FieldDictionaries.SSL_VERSION.decode(code).toUpperCase())) {
+                    outdatedSslCount += versionCounts[code];
+                }
+            }
+
+            return Map.of(
+                    FeatureConfig.OUTDATED_SSL_VERSIONS, (double) outdatedSslCount,
+                    FeatureConfig.WEAK_CIPHERS, (double) countOf(cipherCounts, WEAK_CIPHER_CODES),
+                    FeatureConfig.CIPHER_SUITE_ENTROPY, EntropyUtils.calculateEntropy(cipherCounts),
+                    FeatureConfig.JA3_ENTROPY, EntropyUtils.calculateEntropy(ja3Freq),
+                    FeatureConfig.SELF_SIGNED_CERT_COUNT, (double) selfSignedCertCount,
+                    FeatureConfig.HANDSHAKE_FAILURE_RATE, (double) handshakeFailureCount / sslCount,
+                    FeatureConfig.SSL_VERSION_ENTROPY, EntropyUtils.calculateEntropy(versionCounts),
+                    FeatureConfig.WEAK_CURVE_COUNT, (double) countOf(curveCounts, WEAK_CURVE_CODES),
+                    FeatureConfig.RESUMPTION_RATE, (double) resumedCount / sslCount,
+                    FeatureConfig.NEXT_PROTOCOL_ENTROPY, EntropyUtils.calculateEntropy(nextProtocolCounts)
+            );
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package com.threat.anomalyze.commons.features;
+
+import com.threat.anomalyze.commons.parser.record.ConnRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Links the records of a window to their conn record through the connection UID that every Zeek log
+ * shares. The window processor builds one index per window and hands it to every extractor and
+ * {@link FeatureAccumulator}, so a record of any log type (ssl, http, files, ssh, ...) can be joined with
+ * its connection in O(1) without each extractor hashing the conn entries again. Overlapping windows are
+ * indexed once per pane and combined with {@link #union(List)}, which looks a UID up in each part rather
+ * than rehashing them; panes keep their conn records for the index even when incremental extractors
+ * have counted them, as long as an extractor {@link IFeatureExtractor#joinsConn() joins} on them.
+ * Instances are immutable.
+ */
+public final class UidJoinIndex {
+
+    /**
+     * Index of a window without conn records.
+     */
+    public static final UidJoinIndex EMPTY = new UidJoinIndex(Map.of());
+
+    private final Map<String, ConnRecord> connByUid;
+    // Indexes combined by union(), searched in order; null for an index built from conn records
+    private final UidJoinIndex[] parts;
+
+    private UidJoinIndex(Map<String, ConnRecord> connByUid) {
+        this.connByUid = connByUid;
+        this.parts = null;
+    }
+
+    private UidJoinIndex(UidJoinIndex[] parts) {
+        this.connByUid = Map.of();
+        this.parts = parts;
+    }
+
+    /**
+     * Indexes the conn entries of a window.
+     *
+     * @param logEntriesByType the window's entries grouped by log type
+     * @return the index; {@link #EMPTY} if the window has no conn entries
+     */
+    public static UidJoinIndex of(Map<String, List<ZeekRecord>> logEntriesByType) {
+        List<ZeekRecord> connEntries = logEntriesByType.get(ConnRecord.LOG_TYPE);
+        return connEntries == null ? EMPTY : of(connEntries);
+    }
+
+    /**
+     * Indexes conn records by UID. If a UID occurs more than once the first record is kept.
+     */
+    public static UidJoinIndex of(Collection<? extends ZeekRecord> connEntries) {
+        if (connEntries.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, ConnRecord> connByUid = new HashMap<>(connEntries.size() * 4 / 3 + 1);
+        for (ZeekRecord entry : connEntries) {
+            if (entry instanceof ConnRecord conn && !conn.uid().isEmpty()) {
+                connByUid.putIfAbsent(conn.uid(), conn);
+            }
+        }
+        return new UidJoinIndex(connByUid);
+    }
+
+    /**
+     * Combines the indexes of consecutive parts of a window, such as its panes. If a UID occurs in more
+     * than one part, the record of the earliest part is kept.
+     */
+    public static UidJoinIndex union(List<UidJoinIndex> indexes) {
+        UidJoinIndex[] parts = indexes.stream().filter(index -> index.size() > 0).toArray(UidJoinIndex[]::new);
+        if (parts.length == 0) {
+            return EMPTY;
+        }
+        return parts.length == 1 ? parts[0] : new UidJoinIndex(parts);
+    }
+
+    /**
+     * @return the conn record of the record's connection, the record itself for a conn record, or
+     * null if the window has no conn record with its UID
+     */
+    public ConnRecord connOf(ZeekRecord record) {
+        if (record instanceof ConnRecord conn) {
+            return conn;
+        }
+        return connFor(record.uid());
+    }
+
+    /**
+     * @return the conn record with the UID, or null if the window has none
+     */
+    public ConnRecord connFor(String uid) {
+        if (parts == null) {
+            return connByUid.get(uid);
+        }
+        for (UidJoinIndex part : parts) {
+            ConnRecord conn = part.connFor(uid);
+            if (conn != null) {
+                return conn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of indexed connections; for a union, UIDs found in several parts count once per part
+     */
+    public int size() {
+        if (parts == null) {
+            return connByUid.size();
+        }
+        int size = 0;
+        for (UidJoinIndex part : parts) {
+            size += part.size();
+        }
+        return size;
+    }
+}
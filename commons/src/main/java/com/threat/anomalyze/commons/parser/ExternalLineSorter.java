@@ -0,0 +1,263 @@
+package com.threat.anomalyze.commons.parser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of raw log lines by timestamp. Lines are buffered until the memory budget is
+ * reached, then sorted and spilled to a temporary run file. {@link #merge(SortedLineHandler)} k-way
+ * merges the runs, together with whatever is still in memory, and hands the lines out in timestamp
+ * order. The sort is stable: lines with equal timestamps keep the order in which they were added.
+ * Temporary files are removed by {@link #close()}. Not thread-safe.
+ */
+@Slf4j
+final class ExternalLineSorter implements Closeable {
+    // Rough per-line heap cost on top of the line bytes: the entry, the array header and the list slot
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    // Maximum number of runs merged at once; more runs are first merged into larger ones
+    private static final int MAX_FAN_IN = 64;
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<Entry> BY_TIMESTAMP = (a, b) -> Double.compare(a.ts, b.ts);
+
+    private final long memoryBudgetBytes;
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long bufferedBytes;
+    private Path tempDirectory;
+
+    /**
+     * Receives the lines in timestamp order. The line bytes are only valid for the duration of the call.
+     */
+    @FunctionalInterface
+    interface SortedLineHandler {
+        void onLine(int source, byte[] data, int offset, int length) throws IOException;
+    }
+
+    ExternalLineSorter(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Adds a line, spilling the buffered lines to disk if the memory budget is exceeded.
+     *
+     * @param ts     the line's timestamp; NaN sorts after every other value
+     * @param source caller-defined tag handed back with the line, e.g. the index of the file it came from
+     */
+    void add(double ts, int source, byte[] data, int offset, int length) throws IOException {
+        buffer.add(new Entry(ts, source, Arrays.copyOfRange(data, offset, offset + length)));
+        bufferedBytes += length + ENTRY_OVERHEAD_BYTES;
+        if (bufferedBytes >= memoryBudgetBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Delivers every added line in timestamp order.
+     */
+    void merge(SortedLineHandler handler) throws IOException {
+        buffer.sort(BY_TIMESTAMP);
+        if (runs.isEmpty()) {
+            for (Entry entry : buffer) {
+                handler.onLine(entry.source, entry.line, 0, entry.line.length);
+            }
+            return;
+        }
+
+        // Keep the fan-in bounded; the in-memory lines count as one more input
+        while (runs.size() + 1 > MAX_FAN_IN) {
+            List<Path> group = runs.subList(0, MAX_FAN_IN);
+            Path merged = newRunFile();
+            try (DataOutputStream out = openRun(merged)) {
+                mergeRuns(List.copyOf(group), List.of(),
+                        cursor -> writeEntry(out, cursor.ts, cursor.source, cursor.line, cursor.length));
+            }
+            deleteRuns(group);
+            group.clear();
+            runs.add(0, merged);
+        }
+        mergeRuns(runs, buffer, cursor -> handler.onLine(cursor.source, cursor.line, 0, cursor.length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        deleteRuns(runs);
+        runs.clear();
+        if (tempDirectory != null) {
+            Files.deleteIfExists(tempDirectory);
+            tempDirectory = null;
+        }
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(BY_TIMESTAMP);
+        Path run = newRunFile();
+        try (DataOutputStream out = openRun(run)) {
+            for (Entry entry : buffer) {
+                writeEntry(out, entry.ts, entry.source, entry.line, entry.line.length);
+            }
+        }
+        runs.add(run);
+        log.debug("Spilled run {} with {} lines ({} bytes) to {}", runs.size(), buffer.size(), bufferedBytes, run);
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Merges the run files and the sorted in-memory lines, handing each head to the sink in order.
+     */
+    private void mergeRuns(List<Path> files, List<Entry> memory, CursorSink sink) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(
+                Comparator.comparingDouble((Cursor cursor) -> cursor.ts).thenComparingInt(cursor -> cursor.order));
+        try {
+            for (Path file : files) {
+                cursors.add(new FileCursor(cursors.size(), file));
+            }
+            if (!memory.isEmpty()) {
+                cursors.add(new MemoryCursor(cursors.size(), memory.iterator()));
+            }
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                sink.accept(cursor);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private Path newRunFile() throws IOException {
+        if (tempDirectory == null) {
+            tempDirectory = Files.createTempDirectory("zeek-sort-");
+        }
+        return Files.createTempFile(tempDirectory, "run-", ".bin");
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private static void writeEntry(DataOutputStream out, double ts, int source, byte[] line, int length)
+            throws IOException {
+        out.writeDouble(ts);
+        out.writeInt(source);
+        out.writeInt(length);
+        out.write(line, 0, length);
+    }
+
+    private static void deleteRuns(List<Path> files) throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CursorSink {
+        void accept(Cursor cursor) throws IOException;
+    }
+
+    private record Entry(double ts, int source, byte[] line) {
+    }
+
+    /**
+     * Head of one sorted input. {@code order} breaks timestamp ties so earlier runs win.
+     */
+    private abstract static class Cursor implements Closeable {
+        final int order;
+        double ts;
+        int source;
+        byte[] line;
+        int length;
+
+        Cursor(int order) {
+            this.order = order;
+        }
+
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static final class MemoryCursor extends Cursor {
+        private final Iterator<Entry> entries;
+
+        MemoryCursor(int order, Iterator<Entry> entries) {
+            super(order);
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (!entries.hasNext()) {
+                return false;
+            }
+            Entry entry = entries.next();
+            ts = entry.ts;
+            source = entry.source;
+            line = entry.line;
+            length = entry.line.length;
+            return true;
+        }
+    }
+
+    private static final class FileCursor extends Cursor {
+        private final DataInputStream in;
+
+        FileCursor(int order, Path file) throws IOException {
+            super(order);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), RUN_BUFFER_SIZE));
+            this.line = new byte[256];
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                ts = in.readDouble();
+            } catch (EOFException e) {
+                return false;
+            }
+            source = in.readInt();
+            length = in.readInt();
+            if (length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            in.readFully(line, 0, length);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
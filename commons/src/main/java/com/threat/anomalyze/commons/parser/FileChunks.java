@@ -0,0 +1,64 @@
+package com.threat.anomalyze.commons.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Positional helpers for splitting a line-oriented file into newline-aligned byte ranges.
+ * All reads go through {@link FileChannel#read(ByteBuffer, long)}, which does not move the channel
+ * position, so one channel can be shared by every chunk-parsing thread.
+ */
+final class FileChunks {
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private FileChunks() {
+    }
+
+    /**
+     * Finds the first line start at or after {@code position}.
+     *
+     * @return the offset just past the first newline at or after {@code position - 1}, or {@code size}
+     * if there is none
+     */
+    static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        if (position <= 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long scanFrom = position - 1;
+        while (scanFrom < size) {
+            buffer.clear();
+            int read = channel.read(buffer, scanFrom);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return scanFrom + i + 1;
+                }
+            }
+            scanFrom += read;
+        }
+        return size;
+    }
+
+    /**
+     * Reads the byte range {@code [start, end)} into a new array.
+     */
+    static byte[] read(FileChannel channel, long start, long end) throws IOException {
+        byte[] data = new byte[Math.toIntExact(end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, start + buffer.position());
+            if (read < 0) {
+                throw new EOFException("File truncated while reading bytes " + start + "-" + end);
+            }
+        }
+        return data;
+    }
+}
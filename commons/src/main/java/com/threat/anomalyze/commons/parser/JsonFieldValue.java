@@ -0,0 +1,151 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.FieldValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * {@link FieldValue} backed by the current value token of a Jackson {@link JsonParser}.
+ * Container values are only walked when {@link #size()} or {@link #asText()} is called;
+ * otherwise the decoder skips them after the builder returns.
+ */
+class JsonFieldValue implements FieldValue {
+    private JsonParser parser;
+    private JsonToken token;
+    private boolean consumed;
+
+    void bind(JsonParser parser, JsonToken token) {
+        this.parser = parser;
+        this.token = token;
+        this.consumed = false;
+    }
+
+    /**
+     * @return true if the value was a container whose children have already been read
+     */
+    boolean consumed() {
+        return consumed;
+    }
+
+    @Override
+    public String asText() {
+        try {
+            return switch (token) {
+                case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getText();
+                case VALUE_TRUE -> "true";
+                case VALUE_FALSE -> "false";
+                case START_ARRAY, START_OBJECT -> {
+                    skip();
+                    yield "";
+                }
+                default -> "";
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int asCode(FieldDictionary dictionary) {
+        if (token != JsonToken.VALUE_STRING) {
+            return FieldValue.super.asCode(dictionary);
+        }
+        try {
+            return dictionary.encode(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public double asDouble(double defaultValue) {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+                case VALUE_STRING -> NumberInput.parseAsDouble(parser.getText(), defaultValue, false);
+                case VALUE_TRUE -> 1.0;
+                case VALUE_FALSE -> 0.0;
+                default -> defaultValue;
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long asLong(long defaultValue) {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT -> parser.getLongValue();
+                case VALUE_NUMBER_FLOAT -> (long) parser.getDoubleValue();
+                case VALUE_STRING -> NumberInput.parseAsLong(parser.getText(), defaultValue);
+                case VALUE_TRUE -> 1L;
+                case VALUE_FALSE -> 0L;
+                default -> defaultValue;
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean asBoolean(boolean defaultValue) {
+        try {
+            return switch (token) {
+                case VALUE_TRUE -> true;
+                case VALUE_FALSE -> false;
+                case VALUE_NUMBER_INT -> parser.getLongValue() != 0;
+                case VALUE_STRING -> {
+                    String text = parser.getText().trim();
+                    if ("true".equals(text)) {
+                        yield true;
+                    } else if ("false".equals(text)) {
+                        yield false;
+                    }
+                    yield defaultValue;
+                }
+                default -> defaultValue;
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+            return 0;
+        }
+        consumed = true;
+        try {
+            JsonToken end = token == JsonToken.START_ARRAY ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+            int count = 0;
+            JsonToken next;
+            while ((next = parser.nextToken()) != end) {
+                if (next == null) {
+                    throw new IOException("Unexpected end of input inside container value");
+                }
+                if (next == JsonToken.FIELD_NAME) {
+                    next = parser.nextToken();
+                }
+                if (next.isStructStart()) {
+                    parser.skipChildren();
+                }
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void skip() throws IOException {
+        consumed = true;
+        parser.skipChildren();
+    }
+}
@@ -0,0 +1,94 @@
+package com.threat.anomalyze.commons.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits raw bytes into newline-terminated lines without creating a String per line.
+ * A trailing '\r' is stripped before a line is handed on; other whitespace is preserved because
+ * it can be significant in tab-separated logs.
+ */
+final class LineReader {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Callback receiving one trimmed line. The buffer is only valid for the duration of the call.
+     */
+    @FunctionalInterface
+    interface LineHandler {
+        void onLine(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private LineReader() {
+    }
+
+    /**
+     * Reads the stream to the end, passing every line to the handler.
+     */
+    static void forEachLine(InputStream in, LineHandler handler) throws IOException {
+        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        int filled = 0;
+        int read;
+        while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int consumed = forEachCompleteLine(buffer, 0, filled, handler);
+            if (consumed > 0) {
+                System.arraycopy(buffer, consumed, buffer, 0, filled - consumed);
+                filled -= consumed;
+            } else if (filled == buffer.length) {
+                // A single line is longer than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        if (filled > 0) {
+            emit(buffer, 0, filled, handler);
+        }
+    }
+
+    /**
+     * Passes every line in {@code buffer[from, to)} to the handler, including a final line that is
+     * not newline-terminated.
+     */
+    static void forEachLine(byte[] buffer, int from, int to, LineHandler handler) throws IOException {
+        int consumed = forEachCompleteLine(buffer, from, to, handler);
+        if (consumed < to) {
+            emit(buffer, consumed, to, handler);
+        }
+    }
+
+    /**
+     * Passes every complete line in {@code buffer[from, to)} to the handler.
+     *
+     * @return the index just past the last complete line; bytes after it belong to an unfinished line
+     */
+    static int forEachCompleteLine(byte[] buffer, int from, int to, LineHandler handler) throws IOException {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                emit(buffer, lineStart, i, handler);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    /**
+     * @return true if the line contains only ASCII whitespace
+     */
+    static boolean isBlank(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if ((buffer[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void emit(byte[] buffer, int start, int end, LineHandler handler) throws IOException {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        handler.onLine(buffer, start, end - start);
+    }
+}
@@ -1,64 +1,551 @@
 package com.threat.anomalyze.commons.parser;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.threat.anomalyze.commons.parser.record.FieldProjection;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecordBuilder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 @Slf4j
 public class LogParser {
+    // Size of the byte ranges a single file is split into for parallel parsing
+    private static final long CHUNK_SIZE_BYTES = 4L * 1024 * 1024;
+
+    // Bytes read from the start of a file to detect its format and TSV header
+    private static final int HEAD_SIZE_BYTES = 64 * 1024;
+
+    // Records per batch and batches buffered per segment while reading rotated segments concurrently
+    private static final int SEGMENT_BATCH_SIZE = 512;
+    private static final int SEGMENT_QUEUE_BATCHES = 16;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
     private final ObjectMapper mapper;
 
+    // Fields decoded per log type; everything else is skipped while parsing
+    private final FieldProjection projection;
+
     public LogParser(ObjectMapper mapper) {
+        this(mapper, FieldProjection.ALL);
+    }
+
+    /**
+     * Creates a parser that only decodes the projected fields of each record, typically the union of
+     * the fields the registered feature extractors read.
+     */
+    public LogParser(ObjectMapper mapper, FieldProjection projection) {
         this.mapper = mapper;
+        this.projection = projection;
+        log.info("Decoding Zeek fields: {}", projection);
     }
 
-    public List<JsonNode> parseLogFile(String filePath) throws Exception {
-        if (filePath == null || filePath.trim().isEmpty()) {
-            log.error("File path must not be null or empty: {}", filePath);
-            throw new IllegalArgumentException("The filePath must not be null/empty");
+    /**
+     * Produces the records of one or more log files, e.g. by calling one of the stream methods.
+     */
+    @FunctionalInterface
+    public interface RecordSource {
+        long stream(Consumer<? super ZeekRecord> consumer) throws IOException;
+    }
+
+    /**
+     * Streams a Zeek log file, decoding each line straight into a typed record and handing it to the
+     * consumer as soon as it is read. No entries are retained by the parser, so heap usage does not
+     * depend on the size of the file. Both JSON-per-line logs and Zeek's default tab-separated format
+     * are supported; the format is detected from the first line. Files ending in {@code .gz} are
+     * decompressed on the fly.
+     *
+     * @param filePath path of the log file
+     * @param logType  Zeek log type of the file (e.g. "conn", "dns")
+     * @param consumer callback receiving each record in file order
+     * @return the number of records decoded
+     * @throws IOException if the file cannot be read
+     */
+    public long streamLogFile(String filePath, String logType, Consumer<? super ZeekRecord> consumer)
+            throws IOException {
+        Path path = toPath(filePath);
+        try {
+            return readRecords(path, logType, consumer);
+        } catch (IOException e) {
+            log.error("Failed to read file: {}", filePath, e);
+            throw e;
         }
+    }
 
-        Path path = Paths.get(filePath);
-        List<JsonNode> entries = new ArrayList<>();
+    /**
+     * Streams one or more log files of the same type in timestamp order, without writing a sorted copy.
+     * Lines are keyed by their {@code ts} field and external-merge-sorted: once the buffered lines reach
+     * {@code memoryBudgetBytes} they are sorted and spilled to a temporary run file, and the runs are
+     * k-way merged straight into the decoder. Files larger than the heap can therefore be sorted.
+     * Lines with equal timestamps keep their original order, and lines without a timestamp come last.
+     *
+     * @param files             log files, plain or gzipped, JSON or tab-separated
+     * @param logType           Zeek log type of the files (e.g. "conn")
+     * @param memoryBudgetBytes approximate heap used to buffer lines before spilling a run to disk
+     * @param consumer          callback receiving each record in timestamp order
+     * @return the number of records decoded
+     * @throws IOException if a file or a temporary run cannot be read or written
+     */
+    public long streamLogFilesSorted(List<Path> files, String logType, long memoryBudgetBytes,
+                                     Consumer<? super ZeekRecord> consumer) throws IOException {
+        List<ZeekLineDecoder> decoders = new ArrayList<>(files.size());
+        long[] count = {0};
 
-        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                processLine(line, entries);
+        try (ExternalLineSorter sorter = new ExternalLineSorter(memoryBudgetBytes)) {
+            for (Path file : files) {
+                try {
+                    decoders.add(spoolForSort(file, decoders.size(), logType, sorter));
+                } catch (IOException e) {
+                    log.error("Failed to read file: {}", file, e);
+                    throw e;
+                }
+            }
+            sorter.merge((source, buffer, offset, length) -> {
+                ZeekRecord entry = decodeLine(decoders.get(source), buffer, offset, length);
+                if (entry != null) {
+                    consumer.accept(entry);
+                    count[0]++;
+                }
+            });
+        }
+        return count[0];
+    }
+
+    /**
+     * Streams the records of a set of log files through a binary columnar cache. The first time, the
+     * records are produced by {@code source}, typically one of the other stream methods of this parser,
+     * and written to a cache file in {@code cacheDirectory} as they are delivered. Later calls for the
+     * same files reload the records from that cache through memory mapping, without decoding any JSON
+     * or TSV. A cache entry is reused only while every file keeps its path, size and modification time
+     * and the parser decodes the same fields; otherwise it is rebuilt.
+     *
+     * @param files          log files the records are read from; they identify the cache entry
+     * @param logType        Zeek log type of the files (e.g. "conn")
+     * @param cacheDirectory directory holding the cache files; created if missing
+     * @param source         parses the files when the cache cannot be used
+     * @param consumer       callback receiving each record in the order {@code source} delivered it
+     * @return the number of records delivered
+     * @throws IOException if the source fails to read the files
+     */
+    public long streamLogFilesCached(List<Path> files, String logType, Path cacheDirectory, RecordSource source,
+                                     Consumer<? super ZeekRecord> consumer) throws IOException {
+        StringBuilder identity = new StringBuilder(logType);
+        StringBuilder key = new StringBuilder(logType).append('|').append(projection);
+        for (Path file : files) {
+            Path absolute = file.toAbsolutePath().normalize();
+            identity.append('|').append(absolute);
+            key.append('|').append(absolute).append(',').append(Files.size(file))
+                    .append(',').append(Files.getLastModifiedTime(file).toMillis());
+        }
+        Path cacheFile = cacheDirectory.resolve(logType + "-"
+                + UUID.nameUUIDFromBytes(identity.toString().getBytes(StandardCharsets.UTF_8)) + ".zrc");
+
+        long cached = RecordCache.read(cacheFile, key.toString(), consumer);
+        if (cached >= 0) {
+            log.info("Loaded {} {} records from cache {}", cached, logType, cacheFile);
+            return cached;
+        }
+        try (RecordCache.Writer writer = new RecordCache.Writer(cacheFile, key.toString())) {
+            long count = source.stream(entry -> {
+                writer.add(entry);
+                consumer.accept(entry);
+            });
+            writer.commit();
+            return count;
+        }
+    }
+
+    /**
+     * Starts following a live log file that Zeek is still appending to. To resume after a restart, pass
+     * the {@link ZeekLogTail#fileId()} and {@link ZeekLogTail#offset()} recorded earlier; if the file
+     * at the path is no longer the one they were recorded for, it is read from the start.
+     *
+     * @param file    path of the live log, e.g. {@code conn.log}; it does not need to exist yet
+     * @param logType Zeek log type of the file (e.g. "conn")
+     * @param fileId  identity of the file the offset belongs to, or null to read from the start
+     * @param offset  byte offset of the first line not yet read
+     * @return a tail positioned at the offset; nothing is read until it is polled
+     */
+    public ZeekLogTail tail(Path file, String logType, String fileId, long offset) {
+        return new ZeekLogTail(this, file, logType, fileId, fileId == null ? 0 : offset);
+    }
+
+    /**
+     * Finds every log file of a type in a directory, including Zeek's rotated segments such as
+     * {@code conn.2026-10-15-10-00-00.log.gz} and the current, not yet rotated {@code conn.log}.
+     *
+     * @param directory directory holding the logs
+     * @param logType   Zeek log type (e.g. "conn")
+     * @return the segments in timestamp order, with the unrotated log last
+     * @throws IOException if the directory cannot be listed
+     */
+    public List<Path> findLogSegments(String directory, String logType) throws IOException {
+        Path dir = toPath(directory);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(logType) + "(?:\\.(?<stamp>.+?))?\\.log(?:\\.gz)?");
+
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> pattern.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparing((Path file) -> rotationStamp(pattern, file),
+                                    Comparator.nullsLast(Comparator.naturalOrder()))
+                            .thenComparing(Path::getFileName))
+                    .toList();
+        }
+    }
+
+    /**
+     * Streams several segments of one log type, such as the rotated files returned by
+     * {@link #findLogSegments(String, String)}. Up to {@code concurrency} segments are read and
+     * decompressed at the same time, each into a small bounded buffer, while records are handed to the
+     * consumer on the calling thread strictly in segment order.
+     *
+     * @param segments    log files in the order their records should be delivered
+     * @param logType     Zeek log type of the files (e.g. "conn")
+     * @param concurrency number of segments read at the same time
+     * @param consumer    callback receiving each record in segment and file order
+     * @return the number of records decoded
+     * @throws IOException if a segment cannot be read
+     */
+    public long streamLogSegments(List<Path> segments, String logType, int concurrency,
+                                  Consumer<? super ZeekRecord> consumer) throws IOException {
+        if (segments.size() <= 1 || concurrency <= 1) {
+            long count = 0;
+            for (Path segment : segments) {
+                count += streamLogFile(segment.toString(), logType, consumer);
+            }
+            return count;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, segments.size()));
+        long count = 0;
+        try {
+            // Tasks run in submission order, so the segment being drained has always been started
+            List<SegmentBuffer> buffers = new ArrayList<>();
+            for (Path segment : segments) {
+                SegmentBuffer buffer = new SegmentBuffer(segment);
+                executor.execute(() -> buffer.fill(logType));
+                buffers.add(buffer);
+            }
+            for (SegmentBuffer buffer : buffers) {
+                count += buffer.drain(consumer);
+                log.debug("Finished segment {}", buffer.segment);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Parses a single Zeek log file on several threads. The file is split into newline-aligned byte
+     * ranges that are read with positional NIO reads and decoded concurrently; records are still handed
+     * to the consumer on the calling thread in original file order. At most {@code 2 * parallelism}
+     * decoded ranges are held in memory at a time. For tab-separated logs the header is read up front
+     * and shared by every range.
+     *
+     * @param filePath    path of the log file
+     * @param logType     Zeek log type of the file (e.g. "conn", "dns")
+     * @param parallelism number of parsing threads; files smaller than one range are parsed sequentially
+     * @param consumer    callback receiving each record in file order
+     * @return the number of records decoded
+     * @throws IOException if the file cannot be read
+     */
+    public long streamLogFileParallel(String filePath, String logType, int parallelism,
+                                      Consumer<? super ZeekRecord> consumer) throws IOException {
+        Path path = toPath(filePath);
+        long size = Files.size(path);
+        if (parallelism <= 1 || size <= CHUNK_SIZE_BYTES || isCompressed(path)) {
+            return streamLogFile(filePath, logType, consumer);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Deque<Future<List<ZeekRecord>>> pending = new ArrayDeque<>();
+        int maxInFlight = parallelism * 2;
+        long count = 0;
+        long chunks = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Supplier<ZeekLineDecoder> decoders = decoderFactory(channel, size, logType);
+            long position = 0;
+            while (position < size || !pending.isEmpty()) {
+                while (position < size && pending.size() < maxInFlight) {
+                    long start = position;
+                    long end = FileChunks.nextLineStart(channel, start + CHUNK_SIZE_BYTES, size);
+                    pending.add(executor.submit(() -> parseChunk(channel, start, end, decoders.get())));
+                    position = end;
+                    chunks++;
+                }
+                List<ZeekRecord> entries = awaitChunk(pending.poll());
+                entries.forEach(consumer);
+                count += entries.size();
             }
         } catch (IOException e) {
             log.error("Failed to read file: {}", filePath, e);
             throw e;
+        } finally {
+            executor.shutdownNow();
         }
 
-        return Collections.unmodifiableList(entries);
+        log.debug("Parsed {} in {} chunks on {} threads", filePath, chunks, parallelism);
+        return count;
     }
 
+    private long readRecords(Path path, String logType, Consumer<? super ZeekRecord> consumer) throws IOException {
+        long[] count = {0};
+        try (InputStream in = new BufferedInputStream(openLogStream(path), HEAD_SIZE_BYTES)) {
+            ZeekLineDecoder decoder = newDecoder(logType, ZeekLogFormat.detect(in));
+            LineReader.forEachLine(in, (buffer, offset, length) -> {
+                ZeekRecord entry = decodeLine(decoder, buffer, offset, length);
+                if (entry != null) {
+                    consumer.accept(entry);
+                    count[0]++;
+                }
+            });
+        }
+        return count[0];
+    }
 
-    private void processLine(String line, List<JsonNode> entries) {
-        String trimmedLine = line.trim();
-        if (trimmedLine.isEmpty()) {
+    private InputStream openLogStream(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (!isCompressed(path)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, HEAD_SIZE_BYTES);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    private static String rotationStamp(Pattern pattern, Path file) {
+        Matcher matcher = pattern.matcher(file.getFileName().toString());
+        return matcher.matches() ? matcher.group("stamp") : null;
+    }
+
+    /**
+     * Reads one file into the sorter, keyed by each line's timestamp, and returns a decoder that can
+     * decode the file's lines afterwards in any order.
+     */
+    private ZeekLineDecoder spoolForSort(Path path, int source, String logType, ExternalLineSorter sorter)
+            throws IOException {
+        TimestampProbe probe = new TimestampProbe();
+        try (InputStream in = new BufferedInputStream(openLogStream(path), HEAD_SIZE_BYTES)) {
+            ZeekLogFormat format = ZeekLogFormat.detect(in);
+            ZeekLineDecoder probeDecoder = switch (format) {
+                case JSON -> new ZeekJsonDecoder(mapper.getFactory(), probe);
+                case TSV -> new ZeekTsvDecoder(probe);
+            };
+            LineReader.forEachLine(in, (buffer, offset, length) -> {
+                decodeLine(probeDecoder, buffer, offset, length);
+                if (probe.consume()) {
+                    sorter.add(probe.timestamp(), source, buffer, offset, length);
+                }
+            });
+            // A TSV decoder needs the header it has just read to decode the file's lines
+            return probeDecoder instanceof ZeekTsvDecoder tsvDecoder
+                    ? tsvDecoder.copy(newBuilder(logType))
+                    : newDecoder(logType, format);
+        }
+    }
+
+    private List<ZeekRecord> parseChunk(FileChannel channel, long start, long end, ZeekLineDecoder decoder)
+            throws IOException {
+        byte[] data = FileChunks.read(channel, start, end);
+        List<ZeekRecord> entries = new ArrayList<>();
+        LineReader.forEachLine(data, 0, data.length, (buffer, offset, length) -> {
+            ZeekRecord entry = decodeLine(decoder, buffer, offset, length);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        });
+        return entries;
+    }
+
+    private List<ZeekRecord> awaitChunk(Future<List<ZeekRecord>> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a parsed chunk");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to parse chunk", cause);
+        }
+    }
+
+    /**
+     * Detects the format of a file from its head and returns a factory of decoders that can start at
+     * any line of the file.
+     */
+    Supplier<ZeekLineDecoder> decoderFactory(FileChannel channel, long size, String logType)
+            throws IOException {
+        byte[] head = FileChunks.read(channel, 0, Math.min(size, HEAD_SIZE_BYTES));
+        if (ZeekLogFormat.detect(head, 0, head.length) == ZeekLogFormat.JSON) {
+            return () -> newDecoder(logType, ZeekLogFormat.JSON);
+        }
+
+        ZeekTsvDecoder header = new ZeekTsvDecoder(newBuilder(logType));
+        LineReader.forEachCompleteLine(head, 0, head.length, (buffer, offset, length) -> {
+            if (length > 0 && buffer[offset] == '#') {
+                header.decode(buffer, offset, length);
+            }
+        });
+        if (!header.hasHeader()) {
+            throw new IOException("Tab-separated log has no #fields header in its first " + head.length + " bytes");
+        }
+        return () -> header.copy(newBuilder(logType));
+    }
+
+    private ZeekRecordBuilder newBuilder(String logType) {
+        return ZeekRecordBuilder.forLogType(logType, projection);
+    }
+
+    private ZeekLineDecoder newDecoder(String logType, ZeekLogFormat format) {
+        ZeekRecordBuilder builder = newBuilder(logType);
+        return switch (format) {
+            case JSON -> new ZeekJsonDecoder(mapper.getFactory(), builder);
+            case TSV -> new ZeekTsvDecoder(builder);
+        };
+    }
+
+    ZeekRecord decodeLine(ZeekLineDecoder decoder, byte[] buffer, int offset, int length) {
+        if (LineReader.isBlank(buffer, offset, length)) {
             log.debug("Skipped empty line");
-            return;
+            return null;
         }
 
         try {
-            JsonNode entry = mapper.readTree(trimmedLine);
-            entries.add(entry);
-        } catch (JsonProcessingException e) {
-            log.warn("Skipped invalid JSON line: {}", trimmedLine, e);
+            return decoder.decode(buffer, offset, length);
+        } catch (IOException e) {
+            log.warn("Skipped invalid log line: {}", new String(buffer, offset, length, StandardCharsets.UTF_8), e);
+            return null;
+        }
+    }
+
+    private Path toPath(String filePath) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            log.error("File path must not be null or empty: {}", filePath);
+            throw new IllegalArgumentException("The filePath must not be null/empty");
+        }
+        return Paths.get(filePath);
+    }
+
+    /**
+     * Bounded hand-off of one segment's records from its reader thread to the consuming thread.
+     */
+    private class SegmentBuffer {
+        private static final List<ZeekRecord> END = List.of();
+
+        private final Path segment;
+        private final BlockingQueue<List<ZeekRecord>> batches = new ArrayBlockingQueue<>(SEGMENT_QUEUE_BATCHES);
+        private volatile IOException failure;
+        private List<ZeekRecord> pending = new ArrayList<>(SEGMENT_BATCH_SIZE);
+
+        SegmentBuffer(Path segment) {
+            this.segment = segment;
+        }
+
+        void fill(String logType) {
+            try {
+                readRecords(segment, logType, entry -> {
+                    pending.add(entry);
+                    if (pending.size() == SEGMENT_BATCH_SIZE) {
+                        put(pending);
+                        pending = new ArrayList<>(SEGMENT_BATCH_SIZE);
+                    }
+                });
+                if (!pending.isEmpty()) {
+                    put(pending);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (SegmentInterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                failure = new IOException("Failed to read segment " + segment, e);
+            }
+            try {
+                batches.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long drain(Consumer<? super ZeekRecord> consumer) throws IOException {
+            long count = 0;
+            try {
+                List<ZeekRecord> batch;
+                while ((batch = batches.take()) != END) {
+                    batch.forEach(consumer);
+                    count += batch.size();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading segment " + segment);
+            }
+            if (failure != null) {
+                log.error("Failed to read file: {}", segment, failure);
+                throw failure;
+            }
+            return count;
+        }
+
+        private void put(List<ZeekRecord> batch) {
+            try {
+                batches.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SegmentInterruptedException();
+            }
         }
     }
 
+    /**
+     * Unwinds a segment reader whose consumer has stopped.
+     */
+    private static class SegmentInterruptedException extends RuntimeException {
+    }
 }
@@ -0,0 +1,405 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Binary columnar file holding the typed records decoded from one or more Zeek logs, so later runs can
+ * reload them without decoding JSON or TSV again.
+ * <p>
+ * The file starts with a header naming the cache key, the record class and its column layout. Records
+ * follow in blocks of up to {@link #BLOCK_ROWS} rows; inside a block each record component is stored
+ * as one contiguous column, and String columns hold a block-local table of distinct values followed by
+ * one index per row. Blocks are read through memory mapping. Dictionary-coded components are stored as
+ * their values and encoded again on load, because codes are only stable within one JVM.
+ */
+@Slf4j
+final class RecordCache {
+
+    private static final int MAGIC = 0x5A524331; // "ZRC1"
+    private static final int VERSION = 1;
+
+    // Rows buffered and written per block
+    static final int BLOCK_ROWS = 16 * 1024;
+
+    private RecordCache() {
+    }
+
+    /**
+     * Reads a cache file if it was written for the key and the current layout of its record class. The
+     * whole file is decoded before any record is delivered, so a damaged file is rejected without side
+     * effects.
+     *
+     * @return the number of records delivered, or -1 if the file is missing, stale or unreadable, in
+     * which case nothing has been delivered
+     * @throws RuntimeException if the consumer fails once delivery has started; some records may have
+     *                          been delivered, so the caller must not fall back to parsing the logs
+     */
+    static long read(Path file, String key, Consumer<? super ZeekRecord> consumer) {
+        if (!Files.isRegularFile(file)) {
+            return -1;
+        }
+        RecordSchema schema;
+        List<Block> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = readFully(channel, 0, 12);
+            if (head.getInt() != MAGIC || head.getInt() != VERSION) {
+                log.info("Ignoring record cache {} written by another version", file);
+                return -1;
+            }
+            int headerLength = head.getInt();
+            ByteBuffer header = readFully(channel, 12, headerLength);
+            if (!key.equals(readString(header))) {
+                log.info("Record cache {} is stale; its logs have changed", file);
+                return -1;
+            }
+            String className = readString(header);
+            String signature = readString(header);
+            if (className.isEmpty()) {
+                return 0;
+            }
+            schema = schemaOf(className);
+            if (schema == null || !schema.signature().equals(signature)) {
+                log.info("Ignoring record cache {} written for another layout of {}", file, className);
+                return -1;
+            }
+
+            // Decode every block into its columns before delivering anything, so a damaged file can
+            // still be rebuilt from the logs
+            long size = channel.size();
+            long position = 12L + headerLength;
+            while (position < size) {
+                long blockLength = readFully(channel, position, Long.BYTES).getLong();
+                blocks.add(readBlock(schema, channel.map(FileChannel.MapMode.READ_ONLY, position + Long.BYTES,
+                        blockLength)));
+                position += Long.BYTES + blockLength;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read record cache {}; parsing the logs instead", file, e);
+            return -1;
+        }
+
+        // Failures from here on come from the consumer and propagate
+        long count = 0;
+        for (Block block : blocks) {
+            count += deliverBlock(schema, block, consumer);
+        }
+        return count;
+    }
+
+    /**
+     * One decoded block: an array per record component, each holding the block's rows.
+     */
+    private record Block(int rows, Object[] columns) {
+    }
+
+    private static Block readBlock(RecordSchema schema, ByteBuffer block) {
+        int rows = block.getInt();
+        List<RecordSchema.Column> columns = schema.columns();
+        Object[] data = new Object[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            data[c] = readColumn(columns.get(c), block, rows);
+        }
+        return new Block(rows, data);
+    }
+
+    private static int deliverBlock(RecordSchema schema, Block block, Consumer<? super ZeekRecord> consumer) {
+        List<RecordSchema.Column> columns = schema.columns();
+        Object[] data = block.columns();
+        int rows = block.rows();
+        Object[] values = new Object[columns.size()];
+        for (int row = 0; row < rows; row++) {
+            for (int c = 0; c < columns.size(); c++) {
+                values[c] = switch (columns.get(c).kind()) {
+                    case DOUBLE -> ((double[]) data[c])[row];
+                    case LONG -> ((long[]) data[c])[row];
+                    case INT, CODE -> ((int[]) data[c])[row];
+                    case BOOLEAN -> ((boolean[]) data[c])[row];
+                    case STRING -> ((String[]) data[c])[row];
+                };
+            }
+            consumer.accept(schema.create(values));
+        }
+        return rows;
+    }
+
+    private static Object readColumn(RecordSchema.Column column, ByteBuffer block, int rows) {
+        switch (column.kind()) {
+            case DOUBLE -> {
+                double[] values = new double[rows];
+                block.asDoubleBuffer().get(values);
+                block.position(block.position() + rows * Double.BYTES);
+                return values;
+            }
+            case LONG -> {
+                long[] values = new long[rows];
+                block.asLongBuffer().get(values);
+                block.position(block.position() + rows * Long.BYTES);
+                return values;
+            }
+            case INT -> {
+                return readInts(block, rows);
+            }
+            case BOOLEAN -> {
+                boolean[] values = new boolean[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = block.get() != 0;
+                }
+                return values;
+            }
+            default -> {
+                String[] distinct = new String[block.getInt()];
+                for (int i = 0; i < distinct.length; i++) {
+                    distinct[i] = readString(block);
+                }
+                int[] indexes = readInts(block, rows);
+                if (column.kind() == RecordSchema.Kind.CODE) {
+                    // Encode each distinct value once, then map every row through the block's table
+                    int[] codes = new int[distinct.length];
+                    for (int i = 0; i < distinct.length; i++) {
+                        codes[i] = column.dictionary().encode(distinct[i]);
+                    }
+                    for (int i = 0; i < rows; i++) {
+                        indexes[i] = codes[indexes[i]];
+                    }
+                    return indexes;
+                }
+                String[] values = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = distinct[indexes[i]];
+                }
+                return values;
+            }
+        }
+    }
+
+    private static int[] readInts(ByteBuffer block, int rows) {
+        int[] values = new int[rows];
+        block.asIntBuffer().get(values);
+        block.position(block.position() + rows * Integer.BYTES);
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RecordSchema schemaOf(String className) {
+        try {
+            Class<?> type = Class.forName(className);
+            if (!ZeekRecord.class.isAssignableFrom(type)) {
+                return null;
+            }
+            return RecordSchema.of((Class<? extends ZeekRecord>) type);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of record cache at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a cache file while its records are being parsed. Records are written to a temporary file
+     * that replaces the target only when {@link #commit()} is called, so an interrupted parse never
+     * leaves a partial cache behind. A failure to write only disables caching; it never fails the parse.
+     * Not thread-safe.
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final String key;
+        private final List<ZeekRecord> rows = new ArrayList<>(BLOCK_ROWS);
+
+        private Path temp;
+        private DataOutputStream out;
+        private RecordSchema schema;
+        private boolean failed;
+
+        Writer(Path target, String key) {
+            this.target = target;
+            this.key = key;
+        }
+
+        void add(ZeekRecord record) {
+            if (failed) {
+                return;
+            }
+            if (schema != null && record.getClass() != schema.type()) {
+                fail(new IllegalStateException("Mixed record types " + schema.type().getName()
+                        + " and " + record.getClass().getName()));
+                return;
+            }
+            try {
+                if (out == null) {
+                    open(record);
+                }
+                rows.add(record);
+                if (rows.size() == BLOCK_ROWS) {
+                    writeBlock();
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Completes the file and moves it into place.
+         */
+        void commit() {
+            if (failed) {
+                return;
+            }
+            try {
+                if (out == null) {
+                    open(null);
+                }
+                if (!rows.isEmpty()) {
+                    writeBlock();
+                }
+                out.close();
+                out = null;
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                log.info("Wrote record cache {}", target);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Discards the temporary file unless the cache was committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+                temp = null;
+            }
+        }
+
+        private void open(ZeekRecord first) throws IOException {
+            schema = first == null ? null : RecordSchema.of(first.getClass());
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            writeString(headerOut, key);
+            writeString(headerOut, schema == null ? "" : schema.type().getName());
+            writeString(headerOut, schema == null ? "" : schema.signature());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(header.size());
+            header.writeTo(out);
+        }
+
+        private void writeBlock() throws IOException {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(rows.size() * 64);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            blockOut.writeInt(rows.size());
+            for (RecordSchema.Column column : schema.columns()) {
+                writeColumn(column, blockOut);
+            }
+            out.writeLong(block.size());
+            block.writeTo(out);
+            rows.clear();
+        }
+
+        private void writeColumn(RecordSchema.Column column, DataOutputStream blockOut) throws IOException {
+            switch (column.kind()) {
+                case DOUBLE -> {
+                    for (ZeekRecord row : rows) {
+                        blockOut.writeDouble((Double) schema.get(column, row));
+                    }
+                }
+                case LONG -> {
+                    for (ZeekRecord row : rows) {
+                        blockOut.writeLong((Long) schema.get(column, row));
+                    }
+                }
+                case INT -> {
+                    for (ZeekRecord row : rows) {
+                        blockOut.writeInt((Integer) schema.get(column, row));
+                    }
+                }
+                case BOOLEAN -> {
+                    for (ZeekRecord row : rows) {
+                        blockOut.writeByte((Boolean) schema.get(column, row) ? 1 : 0);
+                    }
+                }
+                default -> {
+                    Map<String, Integer> indexes = new HashMap<>();
+                    List<String> distinct = new ArrayList<>();
+                    int[] rowIndexes = new int[rows.size()];
+                    for (int i = 0; i < rows.size(); i++) {
+                        Object value = schema.get(column, rows.get(i));
+                        String text = column.kind() == RecordSchema.Kind.CODE
+                                ? column.dictionary().decode((Integer) value)
+                                : (String) value;
+                        rowIndexes[i] = indexes.computeIfAbsent(text == null ? "" : text, k -> {
+                            distinct.add(k);
+                            return distinct.size() - 1;
+                        });
+                    }
+                    blockOut.writeInt(distinct.size());
+                    for (String value : distinct) {
+                        writeString(blockOut, value);
+                    }
+                    for (int index : rowIndexes) {
+                        blockOut.writeInt(index);
+                    }
+                }
+            }
+        }
+
+        private void fail(Exception e) {
+            failed = true;
+            rows.clear();
+            log.warn("Not caching records in {}: {}", target, e.getMessage(), e);
+            try {
+                close();
+            } catch (IOException closeFailure) {
+                log.warn("Failed to delete {}", temp, closeFailure);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact binary form of single typed records, for temporary files such as windows spilled to disk.
+ * Each record is written as a one-byte type tag followed by its components in declaration order.
+ * Dictionary codes are written as they are, so the output can only be read back by the JVM that wrote
+ * it; use the record cache of {@link LogParser} for data that outlives the process.
+ */
+public final class RecordCodec {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends ZeekRecord>[] TYPES =
+            (Class<? extends ZeekRecord>[]) ZeekRecord.class.getPermittedSubclasses();
+
+    private static final RecordSchema[] SCHEMAS = new RecordSchema[TYPES.length];
+
+    // Heap estimate: object header, and a String's own header plus its byte array's header
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    // Per record type: bytes of the record object itself, and the String columns adding to it
+    private static final long[] FIXED_BYTES = new long[TYPES.length];
+    private static final RecordSchema.Column[][] STRING_COLUMNS = new RecordSchema.Column[TYPES.length][];
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            SCHEMAS[i] = RecordSchema.of(TYPES[i]);
+            long fixed = OBJECT_HEADER_BYTES;
+            for (RecordSchema.Column column : SCHEMAS[i].columns()) {
+                fixed += switch (column.kind()) {
+                    case DOUBLE, LONG -> 8;
+                    case INT, CODE, STRING -> 4;
+                    case BOOLEAN -> 1;
+                };
+            }
+            FIXED_BYTES[i] = (fixed + 7) & ~7L;
+            STRING_COLUMNS[i] = SCHEMAS[i].columns().stream()
+                    .filter(column -> column.kind() == RecordSchema.Kind.STRING)
+                    .toArray(RecordSchema.Column[]::new);
+        }
+    }
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Writes one record.
+     */
+    public static void write(DataOutput out, ZeekRecord record) throws IOException {
+        int tag = tagOf(record.getClass());
+        RecordSchema schema = SCHEMAS[tag];
+        out.writeByte(tag);
+        for (RecordSchema.Column column : schema.columns()) {
+            Object value = schema.get(column, record);
+            switch (column.kind()) {
+                case DOUBLE -> out.writeDouble((Double) value);
+                case LONG -> out.writeLong((Long) value);
+                case INT, CODE -> out.writeInt((Integer) value);
+                case BOOLEAN -> out.writeBoolean((Boolean) value);
+                case STRING -> writeString(out, (String) value);
+            }
+        }
+    }
+
+    /**
+     * Reads one record written by {@link #write(DataOutput, ZeekRecord)}.
+     *
+     * @throws IOException if the input ends early or does not hold a record
+     */
+    public static ZeekRecord read(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag >= SCHEMAS.length) {
+            throw new IOException("Unknown record tag " + tag);
+        }
+        RecordSchema schema = SCHEMAS[tag];
+        List<RecordSchema.Column> columns = schema.columns();
+        Object[] values = new Object[columns.size()];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = switch (columns.get(c).kind()) {
+                case DOUBLE -> in.readDouble();
+                case LONG -> in.readLong();
+                case INT, CODE -> in.readInt();
+                case BOOLEAN -> in.readBoolean();
+                case STRING -> readString(in);
+            };
+        }
+        return schema.create(values);
+    }
+
+    /**
+     * Estimates the heap a record occupies, its strings included, for memory accounting. Strings shared
+     * with other records are counted in full, so the estimate errs on the high side.
+     */
+    public static long estimateHeapBytes(ZeekRecord record) {
+        int tag = tagOf(record.getClass());
+        RecordSchema schema = SCHEMAS[tag];
+        long bytes = FIXED_BYTES[tag];
+        for (RecordSchema.Column column : STRING_COLUMNS[tag]) {
+            String value = (String) schema.get(column, record);
+            if (value != null) {
+                bytes += STRING_OVERHEAD_BYTES + value.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static int tagOf(Class<?> type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a Zeek record type: " + type.getName());
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
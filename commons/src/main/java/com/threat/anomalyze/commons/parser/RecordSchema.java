@@ -0,0 +1,137 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.FieldDictionaries;
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column layout of a typed record class, derived from its record components, used to write records to
+ * and rebuild them from the binary record cache.
+ */
+final class RecordSchema {
+
+    /**
+     * Storage kind of one column.
+     */
+    enum Kind {
+        DOUBLE, LONG, INT, BOOLEAN, STRING,
+        // Dictionary code; stored as its String value because codes are only stable within one JVM
+        CODE
+    }
+
+    // Record components holding FieldDictionaries codes, by component name
+    private static final Map<String, FieldDictionary> CODED_COMPONENTS = Map.ofEntries(
+            Map.entry("protoCode", FieldDictionaries.PROTO),
+            Map.entry("connStateCode", FieldDictionaries.CONN_STATE),
+            Map.entry("serviceCode", FieldDictionaries.CONN_SERVICE),
+            Map.entry("qtypeNameCode", FieldDictionaries.QTYPE_NAME),
+            Map.entry("rcodeNameCode", FieldDictionaries.RCODE_NAME),
+            Map.entry("methodCode", FieldDictionaries.HTTP_METHOD),
+            Map.entry("versionCode", FieldDictionaries.SSL_VERSION),
+            Map.entry("cipherCode", FieldDictionaries.SSL_CIPHER),
+            Map.entry("curveCode", FieldDictionaries.SSL_CURVE),
+            Map.entry("nextProtocolCode", FieldDictionaries.SSL_NEXT_PROTOCOL),
+            Map.entry("mimeTypeCode", FieldDictionaries.MIME_TYPE),
+            Map.entry("noticeTypeCode", FieldDictionaries.NOTICE_TYPE));
+
+    /**
+     * One record component stored as a column.
+     */
+    record Column(String name, Kind kind, FieldDictionary dictionary, MethodHandle accessor) {
+    }
+
+    private final Class<? extends ZeekRecord> type;
+    private final List<Column> columns;
+    private final MethodHandle constructor;
+
+    private RecordSchema(Class<? extends ZeekRecord> type, List<Column> columns, MethodHandle constructor) {
+        this.type = type;
+        this.columns = columns;
+        this.constructor = constructor;
+    }
+
+    static RecordSchema of(Class<? extends ZeekRecord> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException(type.getName() + " is not a record class");
+        }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        RecordComponent[] components = type.getRecordComponents();
+        List<Column> columns = new ArrayList<>(components.length);
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        try {
+            for (int i = 0; i < components.length; i++) {
+                RecordComponent component = components[i];
+                parameterTypes[i] = component.getType();
+                Kind kind = kindOf(component);
+                MethodHandle accessor = lookup.unreflect(component.getAccessor())
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                columns.add(new Column(component.getName(), kind, CODED_COMPONENTS.get(component.getName()), accessor));
+            }
+            MethodHandle constructor = lookup.unreflectConstructor(type.getConstructor(parameterTypes))
+                    .asSpreader(Object[].class, components.length);
+            return new RecordSchema(type, List.copyOf(columns), constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot access the components of " + type.getName(), e);
+        }
+    }
+
+    Class<? extends ZeekRecord> type() {
+        return type;
+    }
+
+    List<Column> columns() {
+        return columns;
+    }
+
+    /**
+     * @return a description of the columns, stored in cache files so a changed record class invalidates them
+     */
+    String signature() {
+        StringBuilder signature = new StringBuilder(type.getName());
+        for (Column column : columns) {
+            signature.append(';').append(column.name()).append(':').append(column.kind());
+        }
+        return signature.toString();
+    }
+
+    Object get(Column column, ZeekRecord record) {
+        try {
+            return column.accessor().invoke(record);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot read " + column.name() + " of " + type.getName(), e);
+        }
+    }
+
+    ZeekRecord create(Object[] values) {
+        try {
+            return (ZeekRecord) constructor.invoke(values);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create " + type.getName(), e);
+        }
+    }
+
+    private static Kind kindOf(RecordComponent component) {
+        Class<?> type = component.getType();
+        if (type == double.class) {
+            return Kind.DOUBLE;
+        } else if (type == long.class) {
+            return Kind.LONG;
+        } else if (type == int.class) {
+            // Plain ints such as HttpRecord.statusCode share the suffix, so only registered names are codes
+            return CODED_COMPONENTS.containsKey(component.getName()) ? Kind.CODE : Kind.INT;
+        } else if (type == boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == String.class) {
+            return Kind.STRING;
+        }
+        throw new IllegalStateException("Unsupported record component type " + type + " of " + component.getName());
+    }
+}
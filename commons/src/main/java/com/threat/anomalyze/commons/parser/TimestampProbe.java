@@ -0,0 +1,45 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.FieldValue;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecordBuilder;
+
+/**
+ * Builder that keeps only the {@code ts} field of a line, used to order lines before they are
+ * decoded for real. Every other field is skipped by the decoders, and no record is ever created.
+ */
+class TimestampProbe extends ZeekRecordBuilder {
+    private boolean built;
+
+    /**
+     * @return true if a data line has been decoded since the last call, as opposed to a header line
+     */
+    boolean consume() {
+        boolean result = built;
+        built = false;
+        return result;
+    }
+
+    /**
+     * @return the timestamp of the last decoded line, or NaN if it had none
+     */
+    double timestamp() {
+        return ts;
+    }
+
+    @Override
+    public ZeekRecord build() {
+        built = true;
+        return null;
+    }
+
+    @Override
+    protected void resetFields() {
+        built = false;
+    }
+
+    @Override
+    protected void setField(String field, FieldValue value) {
+        // only the timestamp is needed
+    }
+}
@@ -0,0 +1,153 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.FieldDictionary;
+import com.threat.anomalyze.commons.parser.record.FieldValue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link FieldValue} backed by one column of a Zeek tab-separated log line. The column bytes are
+ * only decoded into a String when a builder actually reads the value. The unset ({@code -}) and
+ * empty ({@code (empty)}) sentinels both read as an unset value.
+ */
+class TsvFieldValue implements FieldValue {
+    private final byte[] unsetField;
+    private final byte[] emptyField;
+    private final byte setSeparator;
+
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private boolean container;
+
+    TsvFieldValue(byte[] unsetField, byte[] emptyField, byte setSeparator) {
+        this.unsetField = unsetField;
+        this.emptyField = emptyField;
+        this.setSeparator = setSeparator;
+    }
+
+    void bind(byte[] buffer, int start, int end, boolean container) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+        this.container = container;
+    }
+
+    @Override
+    public String asText() {
+        if (isUnset()) {
+            return "";
+        }
+        return unescape();
+    }
+
+    @Override
+    public int asCode(FieldDictionary dictionary) {
+        if (isUnset()) {
+            return FieldDictionary.EMPTY;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0 || buffer[i] == '\\') {
+                return dictionary.encode(unescape()); // Non-ASCII or escaped bytes need decoding first
+            }
+        }
+        return dictionary.encodeAscii(buffer, start, end - start);
+    }
+
+    @Override
+    public double asDouble(double defaultValue) {
+        if (isUnset() || container) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(ascii());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public long asLong(long defaultValue) {
+        if (isUnset() || container) {
+            return defaultValue;
+        }
+        String text = ascii();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(text);
+            } catch (NumberFormatException ignored) {
+                return defaultValue;
+            }
+        }
+    }
+
+    @Override
+    public boolean asBoolean(boolean defaultValue) {
+        if (isUnset() || end - start != 1) {
+            return defaultValue;
+        }
+        return switch (buffer[start]) {
+            case 'T' -> true;
+            case 'F' -> false;
+            default -> defaultValue;
+        };
+    }
+
+    @Override
+    public int size() {
+        if (!container || isUnset()) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == setSeparator) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isUnset() {
+        return matches(unsetField) || matches(emptyField);
+    }
+
+    private boolean matches(byte[] sentinel) {
+        return Arrays.equals(buffer, start, end, sentinel, 0, sentinel.length);
+    }
+
+    private String ascii() {
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    // Zeek writes separators and non-printable bytes as \xHH escapes
+    private String unescape() {
+        int escape = indexOfEscape(start);
+        if (escape < 0) {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(end - start);
+        int from = start;
+        while (escape >= 0) {
+            out.write(buffer, from, escape - from);
+            out.write(Integer.parseInt(new String(buffer, escape + 2, 2, StandardCharsets.ISO_8859_1), 16));
+            from = escape + 4;
+            escape = indexOfEscape(from);
+        }
+        out.write(buffer, from, end - from);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private int indexOfEscape(int from) {
+        for (int i = from; i + 3 < end; i++) {
+            if (buffer[i] == '\\' && buffer[i + 1] == 'x'
+                    && Character.digit(buffer[i + 2], 16) >= 0 && Character.digit(buffer[i + 3], 16) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,50 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecordBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Decodes one JSON-per-line Zeek entry directly into a typed {@link ZeekRecord} using Jackson's
+ * token-level {@link JsonParser}, without building an intermediate {@code JsonNode} tree.
+ * Fields the record does not keep are skipped at the token level. Not thread-safe; use one
+ * decoder per parsing thread.
+ */
+class ZeekJsonDecoder implements ZeekLineDecoder {
+    private final JsonFactory factory;
+    private final ZeekRecordBuilder builder;
+    private final JsonFieldValue value = new JsonFieldValue();
+
+    ZeekJsonDecoder(JsonFactory factory, ZeekRecordBuilder builder) {
+        this.factory = factory;
+        this.builder = builder;
+    }
+
+    @Override
+    public ZeekRecord decode(byte[] data, int offset, int length) throws IOException {
+        try (JsonParser parser = factory.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object per line");
+            }
+            builder.reset();
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                value.bind(parser, token);
+                builder.set(field, value);
+                if (!value.consumed() && token.isStructStart()) {
+                    parser.skipChildren();
+                }
+            }
+            return builder.build();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.io.IOException;
+
+/**
+ * Decodes one line of a Zeek log into a typed record. Implementations are stateful and not
+ * thread-safe; use one decoder per parsing thread.
+ */
+interface ZeekLineDecoder {
+
+    /**
+     * @param data   buffer holding the line, without its line terminator
+     * @param offset offset of the first byte of the line
+     * @param length number of bytes in the line
+     * @return the decoded record, or null if the line carries no record (e.g. a header line)
+     * @throws IOException if the line is malformed
+     */
+    ZeekRecord decode(byte[] data, int offset, int length) throws IOException;
+}
@@ -0,0 +1,47 @@
+package com.threat.anomalyze.commons.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * On-disk formats Zeek can write its logs in.
+ */
+enum ZeekLogFormat {
+    /**
+     * One JSON object per line ({@code LogAscii::use_json=T}).
+     */
+    JSON,
+    /**
+     * Zeek's default tab-separated ASCII format with {@code #}-prefixed header lines.
+     */
+    TSV;
+
+    private static final int DETECT_LIMIT = 8 * 1024;
+
+    /**
+     * Detects the format from the first non-whitespace byte of a log.
+     */
+    static ZeekLogFormat detect(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if ((data[i] & 0xFF) > ' ') {
+                return data[i] == '#' ? TSV : JSON;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Detects the format from the start of a stream without consuming it.
+     *
+     * @param in a stream supporting {@link InputStream#mark(int)}
+     */
+    static ZeekLogFormat detect(InputStream in) throws IOException {
+        in.mark(DETECT_LIMIT);
+        try {
+            byte[] head = in.readNBytes(DETECT_LIMIT);
+            return detect(head, 0, head.length);
+        } finally {
+            in.reset();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Incrementally reads a live Zeek log file, such as {@code conn.log}, as Zeek appends to it.
+ * Each {@link #poll(Consumer)} decodes the complete lines written since the previous poll; a line
+ * still being written is left for the next one. The tail keeps the file open, so when Zeek rotates
+ * the log the rest of the old file is still drained before the tail moves on to the new one.
+ * <p>
+ * The file identity and byte offset reached so far can be persisted and handed back to
+ * {@link LogParser#tail(Path, String, String, long)} to resume after a restart. If the log was rotated
+ * in between, the rest of the rotated file is read first, as long as it is still in the directory
+ * uncompressed. Not thread-safe.
+ */
+@Slf4j
+public final class ZeekLogTail implements Closeable {
+    // Maximum bytes read from the file at once
+    private static final int READ_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private final LogParser parser;
+    private final Path path;
+    private final String logType;
+
+    private FileChannel channel;
+    private String fileId;
+    private long offset;
+    private ZeekLineDecoder decoder;
+
+    ZeekLogTail(LogParser parser, Path path, String logType, String fileId, long offset) {
+        this.parser = parser;
+        this.path = path;
+        this.logType = logType;
+        this.fileId = fileId;
+        this.offset = offset;
+    }
+
+    /**
+     * Decodes every complete line appended since the last poll and follows a rotation if one happened.
+     *
+     * @param consumer callback receiving each new record in file order
+     * @return the number of records decoded
+     * @throws IOException if the file cannot be read
+     */
+    public long poll(Consumer<? super ZeekRecord> consumer) throws IOException {
+        if (channel == null && !open()) {
+            return 0;
+        }
+        long count = drain(consumer);
+
+        // The open channel still points at the old file, to which Zeek may have appended since it was
+        // measured; read it to its end before moving on
+        if (isRotated()) {
+            long drained;
+            do {
+                drained = offset;
+                count += drain(consumer);
+            } while (offset > drained);
+            log.info("{} was rotated after {} bytes; following the new file", path, offset);
+            closeChannel();
+            fileId = null;
+            offset = 0;
+            if (open()) {
+                count += drain(consumer);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the followed path, e.g. {@code /logs/conn.log}
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return an identifier of the file currently followed at {@link #path()}, or null before it exists
+     */
+    public String fileId() {
+        return fileId;
+    }
+
+    /**
+     * @return the offset just past the last line that has been decoded
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        String currentId = fileIdOf(path);
+        if (fileId != null && !fileId.equals(currentId)) {
+            Path rotated = findRotated(fileId);
+            if (rotated != null) {
+                // Finish the rotated file first; the next poll sees the rotation and moves on to the path
+                log.info("{} was rotated to {}; resuming it at offset {}", path, rotated, offset);
+                channel.close();
+                channel = FileChannel.open(rotated, StandardOpenOption.READ);
+                decoder = null;
+                return true;
+            }
+            log.info("{} is not the file offset {} was recorded for; reading it from the start", path, offset);
+            offset = 0;
+        }
+        fileId = currentId;
+        decoder = null;
+        return true;
+    }
+
+    /**
+     * Looks for the file with the given identity among the rotated segments of the log next to it, such
+     * as {@code conn.2026-10-15-10-00-00.log} for {@code conn.log}. A compressed segment is a new file
+     * and is never found.
+     *
+     * @return the rotated file, or null if it is gone
+     */
+    private Path findRotated(String id) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String name = path.getFileName().toString();
+        String prefix = (name.endsWith(".log") ? name.substring(0, name.length() - 4) : name) + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(prefix) && !fileName.endsWith(".gz") && Files.isRegularFile(file)
+                        && id.equals(fileIdOf(file))) {
+                    return file;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return null; // Deleted while listing
+        }
+        return null;
+    }
+
+    private long drain(Consumer<? super ZeekRecord> consumer) throws IOException {
+        long size = channel.size();
+        if (size < offset) {
+            log.info("{} was truncated to {} bytes; reading it from the start", path, size);
+            offset = 0;
+            decoder = null;
+        }
+        if (size == offset) {
+            return 0;
+        }
+        if (decoder == null) {
+            decoder = parser.decoderFactory(channel, size, logType).get();
+        }
+
+        long[] count = {0};
+        int readSize = READ_SIZE_BYTES;
+        while (offset < size) {
+            long end = Math.min(size, offset + readSize);
+            byte[] data = FileChunks.read(channel, offset, end);
+            int consumed = LineReader.forEachCompleteLine(data, 0, data.length, (buffer, lineOffset, length) -> {
+                ZeekRecord entry = parser.decodeLine(decoder, buffer, lineOffset, length);
+                if (entry != null) {
+                    consumer.accept(entry);
+                    count[0]++;
+                }
+            });
+            if (consumed == 0) {
+                if (end == size) {
+                    break; // The last line is still being written
+                }
+                readSize *= 2; // A single line is longer than the read size
+            }
+            offset += consumed;
+        }
+        return count[0];
+    }
+
+    private boolean isRotated() throws IOException {
+        try {
+            return !fileIdOf(path).equals(fileId);
+        } catch (NoSuchFileException e) {
+            return false; // Renamed, but the new file has not been created yet
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Identifies a file independently of its name, so a rotated log can be told apart from its successor.
+     */
+    private static String fileIdOf(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : String.valueOf(attributes.creationTime().toMillis());
+    }
+}
@@ -0,0 +1,174 @@
+package com.threat.anomalyze.commons.parser;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecordBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes Zeek's default tab-separated ASCII log format into typed records. The {@code #separator},
+ * {@code #set_separator}, {@code #empty_field}, {@code #unset_field}, {@code #fields} and {@code #types}
+ * header lines are read as they appear, and data columns are mapped to record fields by name, so
+ * column order and extra columns do not matter. Columns a record does not keep are never decoded.
+ */
+class ZeekTsvDecoder implements ZeekLineDecoder {
+    private static final String SEPARATOR_DIRECTIVE = "#separator ";
+
+    private final ZeekRecordBuilder builder;
+
+    private byte separator = '\t';
+    private byte setSeparator = ',';
+    private byte[] emptyField = "(empty)".getBytes(StandardCharsets.US_ASCII);
+    private byte[] unsetField = "-".getBytes(StandardCharsets.US_ASCII);
+    private String[] fields;
+    private boolean[] containers;
+    // Columns the builder's projection decodes; the rest are skipped without being bound
+    private boolean[] projected;
+    private TsvFieldValue value;
+
+    ZeekTsvDecoder(ZeekRecordBuilder builder) {
+        this.builder = builder;
+        this.value = newValue();
+    }
+
+    /**
+     * Creates a decoder sharing this decoder's header but writing into another builder, so that
+     * chunks of a file that do not contain the header can still be decoded.
+     */
+    ZeekTsvDecoder copy(ZeekRecordBuilder builder) {
+        ZeekTsvDecoder copy = new ZeekTsvDecoder(builder);
+        copy.separator = separator;
+        copy.setSeparator = setSeparator;
+        copy.emptyField = emptyField;
+        copy.unsetField = unsetField;
+        copy.fields = fields;
+        copy.containers = containers;
+        copy.projected = copy.projectColumns();
+        copy.value = copy.newValue();
+        return copy;
+    }
+
+    /**
+     * @return true once a {@code #fields} header line has been read
+     */
+    boolean hasHeader() {
+        return fields != null;
+    }
+
+    @Override
+    public ZeekRecord decode(byte[] data, int offset, int length) throws IOException {
+        if (length > 0 && data[offset] == '#') {
+            readDirective(new String(data, offset, length, StandardCharsets.UTF_8));
+            return null;
+        }
+        if (fields == null) {
+            throw new IOException("Data line before #fields header");
+        }
+
+        builder.reset();
+        int end = offset + length;
+        int column = 0;
+        int columnStart = offset;
+        for (int i = offset; i <= end; i++) {
+            if (i == end || data[i] == separator) {
+                if (column >= fields.length) {
+                    throw new IOException("Expected " + fields.length + " columns but found more");
+                }
+                if (projected[column]) {
+                    value.bind(data, columnStart, i, containers[column]);
+                    builder.set(fields[column], value);
+                }
+                column++;
+                columnStart = i + 1;
+            }
+        }
+        if (column != fields.length) {
+            throw new IOException("Expected " + fields.length + " columns but found " + column);
+        }
+        return builder.build();
+    }
+
+    private void readDirective(String line) throws IOException {
+        if (line.startsWith(SEPARATOR_DIRECTIVE)) {
+            byte[] parsed = unescapeHeader(line.substring(SEPARATOR_DIRECTIVE.length()));
+            if (parsed.length != 1) {
+                throw new IOException("Only single-byte separators are supported: " + line);
+            }
+            separator = parsed[0];
+            return;
+        }
+
+        List<String> parts = split(line);
+        String directive = parts.get(0);
+        List<String> values = parts.subList(1, parts.size());
+        switch (directive) {
+            case "#set_separator" -> setSeparator = values.isEmpty() ? setSeparator : unescapeHeader(values.get(0))[0];
+            case "#empty_field" -> emptyField = values.isEmpty() ? emptyField : unescapeHeader(values.get(0));
+            case "#unset_field" -> unsetField = values.isEmpty() ? unsetField : unescapeHeader(values.get(0));
+            case "#fields" -> {
+                fields = values.toArray(new String[0]);
+                containers = new boolean[fields.length];
+                projected = projectColumns();
+            }
+            case "#types" -> {
+                if (fields != null && values.size() == fields.length) {
+                    for (int i = 0; i < values.size(); i++) {
+                        String type = values.get(i);
+                        containers[i] = type.startsWith("set[") || type.startsWith("vector[");
+                    }
+                }
+            }
+            default -> {
+                // #path, #open, #close and comments carry nothing the decoder needs
+            }
+        }
+        value = newValue();
+    }
+
+    private List<String> split(String line) {
+        List<String> parts = new ArrayList<>();
+        char sep = (char) (separator & 0xFF);
+        int from = 0;
+        int index;
+        while ((index = line.indexOf(sep, from)) >= 0) {
+            parts.add(line.substring(from, index));
+            from = index + 1;
+        }
+        parts.add(line.substring(from));
+        return parts;
+    }
+
+    private boolean[] projectColumns() {
+        if (fields == null) {
+            return null;
+        }
+        boolean[] columns = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            columns[i] = builder.accepts(fields[i]);
+        }
+        return columns;
+    }
+
+    private TsvFieldValue newValue() {
+        return new TsvFieldValue(unsetField, emptyField, setSeparator);
+    }
+
+    private static byte[] unescapeHeader(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[raw.length];
+        int length = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\\' && i + 3 < raw.length && raw[i + 1] == 'x') {
+                out[length++] = (byte) Integer.parseInt(new String(raw, i + 2, 2, StandardCharsets.US_ASCII), 16);
+                i += 3;
+            } else {
+                out[length++] = raw[i];
+            }
+        }
+        return Arrays.copyOf(out, length);
+    }
+}
@@ -0,0 +1,45 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code auth.log} record.
+ */
+public record AuthRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                         String result, String username, String sourceIp)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "auth";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private String result;
+        private String username;
+        private String sourceIp;
+
+        @Override
+        protected void resetFields() {
+            result = "";
+            username = "";
+            sourceIp = "";
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "result" -> result = value.asText();
+                case "username" -> username = value.asText();
+                case "source_ip" -> sourceIp = value.asText();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public AuthRecord build() {
+            return new AuthRecord(ts, uid, origH, origP, respH, respP, result, username, sourceIp);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code conn.log} record. {@code duration} is {@link Double#NaN} and the byte counters are -1
+ * when Zeek did not log them.
+ * Low-cardinality fields are stored as {@link FieldDictionaries} codes, with String accessors
+ * that decode them.
+ */
+public record ConnRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                         int protoCode, int connStateCode, int serviceCode, double duration, long origBytes,
+                         long respBytes)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "conn";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code proto} value of {@link #protoCode()}
+     */
+    public String proto() {
+        return FieldDictionaries.PROTO.decode(protoCode);
+    }
+
+    /**
+     * @return the {@code conn_state} value of {@link #connStateCode()}
+     */
+    public String connState() {
+        return FieldDictionaries.CONN_STATE.decode(connStateCode);
+    }
+
+    /**
+     * @return the {@code service} value of {@link #serviceCode()}, e.g. {@code ssh} or {@code ssl,http}
+     */
+    public String service() {
+        return FieldDictionaries.CONN_SERVICE.decode(serviceCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private int protoCode;
+        private int connStateCode;
+        private int serviceCode;
+        private double duration;
+        private long origBytes;
+        private long respBytes;
+
+        @Override
+        protected void resetFields() {
+            protoCode = FieldDictionary.EMPTY;
+            connStateCode = FieldDictionary.EMPTY;
+            serviceCode = FieldDictionary.EMPTY;
+            duration = Double.NaN;
+            origBytes = -1;
+            respBytes = -1;
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "proto" -> protoCode = value.asCode(FieldDictionaries.PROTO);
+                case "conn_state" -> connStateCode = value.asCode(FieldDictionaries.CONN_STATE);
+                case "service" -> serviceCode = value.asCode(FieldDictionaries.CONN_SERVICE);
+                case "duration" -> duration = value.asDouble(Double.NaN);
+                case "orig_bytes" -> origBytes = value.asLong(-1);
+                case "resp_bytes" -> respBytes = value.asLong(-1);
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public ConnRecord build() {
+            return new ConnRecord(ts, uid, origH, origP, respH, respP, protoCode, connStateCode, serviceCode, duration,
+                    origBytes, respBytes);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code dns.log} record. Only the number of answers is kept; {@code transId} is -1 when unset.
+ * Low-cardinality fields are stored as {@link FieldDictionaries} codes, with String accessors
+ * that decode them.
+ */
+public record DnsRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                        int transId, String query, int qtypeNameCode, int rcodeNameCode, int answerCount)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "dns";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code qtype_name} value of {@link #qtypeNameCode()}
+     */
+    public String qtypeName() {
+        return FieldDictionaries.QTYPE_NAME.decode(qtypeNameCode);
+    }
+
+    /**
+     * @return the {@code rcode_name} value of {@link #rcodeNameCode()}
+     */
+    public String rcodeName() {
+        return FieldDictionaries.RCODE_NAME.decode(rcodeNameCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private int transId;
+        private String query;
+        private int qtypeNameCode;
+        private int rcodeNameCode;
+        private int answerCount;
+
+        @Override
+        protected void resetFields() {
+            transId = -1;
+            query = "";
+            qtypeNameCode = FieldDictionary.EMPTY;
+            rcodeNameCode = FieldDictionary.EMPTY;
+            answerCount = 0;
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "trans_id" -> transId = value.asInt(-1);
+                case "query" -> query = value.asText();
+                case "qtype_name" -> qtypeNameCode = value.asCode(FieldDictionaries.QTYPE_NAME);
+                case "rcode_name" -> rcodeNameCode = value.asCode(FieldDictionaries.RCODE_NAME);
+                case "answers" -> answerCount = value.size();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public DnsRecord build() {
+            return new DnsRecord(ts, uid, origH, origP, respH, respP, transId, query, qtypeNameCode, rcodeNameCode, answerCount);
+        }
+    }
+}
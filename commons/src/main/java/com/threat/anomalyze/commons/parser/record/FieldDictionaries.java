@@ -0,0 +1,25 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Shared dictionaries of the low-cardinality Zeek fields that records store as int codes.
+ * One dictionary exists per field for the lifetime of the JVM, so codes can be compared across
+ * parser threads, files and windows.
+ */
+public final class FieldDictionaries {
+
+    public static final FieldDictionary PROTO = new FieldDictionary("proto");
+    public static final FieldDictionary CONN_STATE = new FieldDictionary("conn_state");
+    public static final FieldDictionary CONN_SERVICE = new FieldDictionary("service");
+    public static final FieldDictionary QTYPE_NAME = new FieldDictionary("qtype_name");
+    public static final FieldDictionary RCODE_NAME = new FieldDictionary("rcode_name");
+    public static final FieldDictionary HTTP_METHOD = new FieldDictionary("method");
+    public static final FieldDictionary SSL_VERSION = new FieldDictionary("version");
+    public static final FieldDictionary SSL_CIPHER = new FieldDictionary("cipher");
+    public static final FieldDictionary SSL_CURVE = new FieldDictionary("curve");
+    public static final FieldDictionary SSL_NEXT_PROTOCOL = new FieldDictionary("next_protocol");
+    public static final FieldDictionary MIME_TYPE = new FieldDictionary("mime_type");
+    public static final FieldDictionary NOTICE_TYPE = new FieldDictionary("notice_type");
+
+    private FieldDictionaries() {
+    }
+}
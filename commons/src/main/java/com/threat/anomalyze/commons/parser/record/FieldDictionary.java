@@ -0,0 +1,224 @@
+package com.threat.anomalyze.commons.parser.record;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Thread-safe, append-only dictionary that maps the values of one low-cardinality Zeek field, such as
+ * {@code proto} or {@code conn_state}, to small dense int codes. Codes are stable for the lifetime of
+ * the dictionary, so records can store a code instead of a String and extractors can count codes in
+ * plain arrays indexed by code.
+ * <p>
+ * Lookups of values that are already known take no lock and, when decoding from a parser's character
+ * or byte buffer, allocate nothing. Only the first occurrence of a value takes a lock. To bound memory
+ * when a field turns out not to be low-cardinality, values beyond the maximum size all map to
+ * {@link #OTHER}.
+ */
+@Slf4j
+public final class FieldDictionary {
+
+    /**
+     * Code of the empty string, which records use for unset fields.
+     */
+    public static final int EMPTY = 0;
+
+    /**
+     * Code of every value first seen after the dictionary reached its maximum size.
+     */
+    public static final int OTHER = 1;
+
+    private static final String OTHER_VALUE = "(other)";
+    private static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    private final String name;
+    private final int maxSize;
+    private final Object lock = new Object();
+
+    // Open-addressing hash table of entries; replaced, never shrunk, when it grows
+    private volatile Entry[] table = new Entry[64];
+    // Code -> value; written before size is published
+    private volatile String[] values = new String[32];
+    private volatile int size;
+    private boolean full;
+
+    public FieldDictionary(String name) {
+        this(name, DEFAULT_MAX_SIZE);
+    }
+
+    public FieldDictionary(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        values[EMPTY] = "";
+        values[OTHER] = OTHER_VALUE;
+        size = 2;
+    }
+
+    /**
+     * @return the code of the value, adding it to the dictionary if it is new
+     */
+    public int encode(String value) {
+        if (value.isEmpty()) {
+            return EMPTY;
+        }
+        int hash = value.hashCode();
+        Entry[] entries = table;
+        int mask = entries.length - 1;
+        for (int i = hash & mask; entries[i] != null; i = (i + 1) & mask) {
+            Entry entry = entries[i];
+            if (entry.hash == hash && entry.value.equals(value)) {
+                return entry.code;
+            }
+        }
+        return insert(value, hash);
+    }
+
+    /**
+     * Encodes the characters {@code chars[offset, offset + length)} without creating a String unless
+     * the value is new.
+     */
+    public int encode(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        Entry[] entries = table;
+        int mask = entries.length - 1;
+        for (int i = hash & mask; entries[i] != null; i = (i + 1) & mask) {
+            Entry entry = entries[i];
+            if (entry.hash == hash && matches(entry.value, chars, offset, length)) {
+                return entry.code;
+            }
+        }
+        return insert(new String(chars, offset, length), hash);
+    }
+
+    /**
+     * Encodes the ASCII bytes {@code bytes[offset, offset + length)} without creating a String unless
+     * the value is new. The caller must ensure every byte is below 0x80.
+     */
+    public int encodeAscii(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        Entry[] entries = table;
+        int mask = entries.length - 1;
+        for (int i = hash & mask; entries[i] != null; i = (i + 1) & mask) {
+            Entry entry = entries[i];
+            if (entry.hash == hash && matches(entry.value, bytes, offset, length)) {
+                return entry.code;
+            }
+        }
+        return insert(new String(bytes, offset, length, StandardCharsets.US_ASCII), hash);
+    }
+
+    /**
+     * @return the value of a code handed out by this dictionary
+     * @throws IllegalArgumentException if the code is unknown
+     */
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Unknown code " + code + " in dictionary " + name);
+        }
+        return values[code];
+    }
+
+    /**
+     * @return the number of codes handed out so far, including {@link #EMPTY} and {@link #OTHER};
+     * every code is below this value, so it can size an array of per-code counters
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldDictionary[" + name + ", size=" + size + "]";
+    }
+
+    private int insert(String value, int hash) {
+        synchronized (lock) {
+            Entry[] entries = table;
+            int mask = entries.length - 1;
+            int i = hash & mask;
+            for (; entries[i] != null; i = (i + 1) & mask) {
+                Entry entry = entries[i];
+                if (entry.hash == hash && entry.value.equals(value)) {
+                    return entry.code;
+                }
+            }
+            int code = size;
+            if (code >= maxSize) {
+                if (!full) {
+                    log.warn("Dictionary {} is full with {} values; new values are encoded as {}", name, code, OTHER_VALUE);
+                    full = true;
+                }
+                return OTHER;
+            }
+
+            String[] current = values;
+            if (code == current.length) {
+                current = Arrays.copyOf(current, code * 2);
+            }
+            current[code] = value;
+            values = current;
+            entries[i] = new Entry(value, hash, code);
+            size = code + 1;
+
+            if (size * 2 > entries.length) {
+                table = rehash(entries);
+            }
+            return code;
+        }
+    }
+
+    private static Entry[] rehash(Entry[] entries) {
+        Entry[] grown = new Entry[entries.length * 2];
+        int mask = grown.length - 1;
+        for (Entry entry : entries) {
+            if (entry != null) {
+                int i = entry.hash & mask;
+                while (grown[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                grown[i] = entry;
+            }
+        }
+        return grown;
+    }
+
+    private static boolean matches(String value, char[] chars, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String value, byte[] bytes, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Entry(String value, int hash, int code) {
+    }
+}
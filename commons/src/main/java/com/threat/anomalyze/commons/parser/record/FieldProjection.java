@@ -0,0 +1,86 @@
+package com.threat.anomalyze.commons.parser.record;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The Zeek fields that need to be decoded for each log type. Builders ignore every other field, so
+ * the decoders skip them without materializing their values. The common connection fields
+ * ({@code ts}, {@code uid} and the {@code id.*} tuple) are always decoded because windowing and
+ * cross-log joins depend on them. Instances are immutable.
+ */
+public final class FieldProjection {
+
+    /**
+     * Projection that decodes every field a record knows about.
+     */
+    public static final FieldProjection ALL = new FieldProjection(null);
+
+    /**
+     * Fields decoded for every log type regardless of the projection.
+     */
+    public static final Set<String> COMMON_FIELDS =
+            Set.of("ts", "uid", "id.orig_h", "id.orig_p", "id.resp_h", "id.resp_p");
+
+    // Log type -> fields to decode, or null to decode everything
+    private final Map<String, Set<String>> fieldsByLogType;
+
+    private FieldProjection(Map<String, Set<String>> fieldsByLogType) {
+        this.fieldsByLogType = fieldsByLogType;
+    }
+
+    /**
+     * Builds the union of several field requirements, such as those declared by each feature extractor.
+     * Log types that no requirement mentions keep only the common fields.
+     *
+     * @param requirements maps of log type to the fields needed from it
+     * @return the combined projection
+     */
+    public static FieldProjection of(Collection<? extends Map<String, ? extends Collection<String>>> requirements) {
+        Map<String, Set<String>> union = new HashMap<>();
+        for (Map<String, ? extends Collection<String>> requirement : requirements) {
+            requirement.forEach((logType, fields) ->
+                    union.computeIfAbsent(logType, k -> new HashSet<>(COMMON_FIELDS)).addAll(fields));
+        }
+        Map<String, Set<String>> frozen = new HashMap<>();
+        union.forEach((logType, fields) -> frozen.put(logType, Set.copyOf(fields)));
+        return new FieldProjection(Map.copyOf(frozen));
+    }
+
+    /**
+     * @return true if the field has to be decoded for the log type
+     */
+    public boolean includes(String logType, String field) {
+        Set<String> fields = fieldsFor(logType);
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * @return the fields to decode for the log type, or null if every field is decoded
+     */
+    Set<String> fieldsFor(String logType) {
+        if (fieldsByLogType == null) {
+            return null;
+        }
+        return fieldsByLogType.getOrDefault(logType, COMMON_FIELDS);
+    }
+
+    /**
+     * Lists the fields in sorted order, so equal projections always produce the same string; it is
+     * part of the record cache key.
+     */
+    @Override
+    public String toString() {
+        if (fieldsByLogType == null) {
+            return "FieldProjection[ALL]";
+        }
+        Map<String, Set<String>> sorted = new TreeMap<>();
+        fieldsByLogType.forEach((logType, fields) -> sorted.put(logType, new TreeSet<>(fields)));
+        return "FieldProjection" + sorted;
+    }
+}
@@ -0,0 +1,59 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Read-only view of a single Zeek field value while a log line is being decoded.
+ * Implementations are reused across fields and lines, so a value is only valid for the
+ * duration of the {@link ZeekRecordBuilder#set(String, FieldValue)} call it is passed to.
+ * Conversions follow Jackson's {@code JsonNode.asXxx(default)} semantics so typed records
+ * keep the behaviour extractors had when they read {@code JsonNode} trees.
+ */
+public interface FieldValue {
+
+    /**
+     * @return the textual form of the value, or an empty string if the field is unset or a container
+     */
+    String asText();
+
+    /**
+     * @param defaultValue value returned if the field is unset or not numeric
+     * @return the value as a double
+     */
+    double asDouble(double defaultValue);
+
+    /**
+     * @param defaultValue value returned if the field is unset or not numeric
+     * @return the value as a long
+     */
+    long asLong(long defaultValue);
+
+    /**
+     * @param defaultValue value returned if the field is unset or not numeric
+     * @return the value as an int
+     */
+    default int asInt(int defaultValue) {
+        return (int) asLong(defaultValue);
+    }
+
+    /**
+     * @param defaultValue value returned if the field is unset or not a boolean
+     * @return the value as a boolean
+     */
+    boolean asBoolean(boolean defaultValue);
+
+    /**
+     * Encodes the textual form of the value with a dictionary. Implementations avoid creating a String
+     * when the value is already in the dictionary.
+     *
+     * @param dictionary the field's dictionary
+     * @return the value's code, or {@link FieldDictionary#EMPTY} if the field is unset
+     */
+    default int asCode(FieldDictionary dictionary) {
+        return dictionary.encode(asText());
+    }
+
+    /**
+     * @return the number of elements of a container value (JSON array, Zeek set or vector),
+     * or 0 if the field is unset, empty or a scalar
+     */
+    int size();
+}
@@ -0,0 +1,59 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code files.log} record. {@code seenBytes} is -1 when unset. The MIME type is stored as a
+ * {@link FieldDictionaries} code, with a String accessor that decodes it.
+ */
+public record FilesRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                          String source, boolean isOrig, int mimeTypeCode, long seenBytes, String md5)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "files";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code mime_type} value of {@link #mimeTypeCode()}
+     */
+    public String mimeType() {
+        return FieldDictionaries.MIME_TYPE.decode(mimeTypeCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private String source;
+        private boolean isOrig;
+        private int mimeTypeCode;
+        private long seenBytes;
+        private String md5;
+
+        @Override
+        protected void resetFields() {
+            source = "";
+            isOrig = false;
+            mimeTypeCode = FieldDictionary.EMPTY;
+            seenBytes = -1;
+            md5 = "";
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "source" -> source = value.asText();
+                case "is_orig" -> isOrig = value.asBoolean(false);
+                case "mime_type" -> mimeTypeCode = value.asCode(FieldDictionaries.MIME_TYPE);
+                case "seen_bytes" -> seenBytes = value.asLong(-1);
+                case "md5" -> md5 = value.asText();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public FilesRecord build() {
+            return new FilesRecord(ts, uid, origH, origP, respH, respP, source, isOrig, mimeTypeCode, seenBytes, md5);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code http.log} record. {@code statusCode} is 0 and {@code requestBodyLen} is -1 when unset.
+ * Low-cardinality fields are stored as {@link FieldDictionaries} codes, with String accessors
+ * that decode them.
+ */
+public record HttpRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                         int methodCode, String host, String uri, String userAgent,
+                         int statusCode, long requestBodyLen)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "http";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code method} value of {@link #methodCode()}
+     */
+    public String method() {
+        return FieldDictionaries.HTTP_METHOD.decode(methodCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private int methodCode;
+        private String host;
+        private String uri;
+        private String userAgent;
+        private int statusCode;
+        private long requestBodyLen;
+
+        @Override
+        protected void resetFields() {
+            methodCode = FieldDictionary.EMPTY;
+            host = "";
+            uri = "";
+            userAgent = "";
+            statusCode = 0;
+            requestBodyLen = -1;
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "method" -> methodCode = value.asCode(FieldDictionaries.HTTP_METHOD);
+                case "host" -> host = value.asText();
+                case "uri" -> uri = value.asText();
+                case "user_agent" -> userAgent = value.asText();
+                case "status_code" -> statusCode = value.asInt(0);
+                case "request_body_len" -> requestBodyLen = value.asLong(-1);
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public HttpRecord build() {
+            return new HttpRecord(ts, uid, origH, origP, respH, respP, methodCode, host, uri, userAgent,
+                    statusCode, requestBodyLen);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code notice.log} record.
+ * Low-cardinality fields are stored as {@link FieldDictionaries} codes, with String accessors
+ * that decode them.
+ */
+public record NoticeRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                           int noticeTypeCode, String severity)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "notice";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code notice_type} value of {@link #noticeTypeCode()}
+     */
+    public String noticeType() {
+        return FieldDictionaries.NOTICE_TYPE.decode(noticeTypeCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private int noticeTypeCode;
+        private String severity;
+
+        @Override
+        protected void resetFields() {
+            noticeTypeCode = FieldDictionary.EMPTY;
+            severity = "";
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "notice_type" -> noticeTypeCode = value.asCode(FieldDictionaries.NOTICE_TYPE);
+                case "severity" -> severity = value.asText();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public NoticeRecord build() {
+            return new NoticeRecord(ts, uid, origH, origP, respH, respP, noticeTypeCode, severity);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code ssh.log} record. {@code authSuccess} defaults to false and {@code authAttempts} to 0 when unset.
+ */
+public record SshRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                        boolean authSuccess, int authAttempts, String client, String server,
+                        String cipherAlg, String macAlg, String kexAlg, String hassh, String hasshServer)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "ssh";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private boolean authSuccess;
+        private int authAttempts;
+        private String client;
+        private String server;
+        private String cipherAlg;
+        private String macAlg;
+        private String kexAlg;
+        private String hassh;
+        private String hasshServer;
+
+        @Override
+        protected void resetFields() {
+            authSuccess = false;
+            authAttempts = 0;
+            client = "";
+            server = "";
+            cipherAlg = "";
+            macAlg = "";
+            kexAlg = "";
+            hassh = "";
+            hasshServer = "";
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "auth_success" -> authSuccess = value.asBoolean(false);
+                case "auth_attempts" -> authAttempts = value.asInt(0);
+                case "client" -> client = value.asText();
+                case "server" -> server = value.asText();
+                case "cipher_alg" -> cipherAlg = value.asText();
+                case "mac_alg" -> macAlg = value.asText();
+                case "kex_alg" -> kexAlg = value.asText();
+                case "hassh" -> hassh = value.asText();
+                case "hasshServer" -> hasshServer = value.asText();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public SshRecord build() {
+            return new SshRecord(ts, uid, origH, origP, respH, respP, authSuccess, authAttempts, client, server,
+                    cipherAlg, macAlg, kexAlg, hassh, hasshServer);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * Typed {@code ssl.log} record. Certificate chains and other wide fields are not kept;
+ * {@code established} defaults to true and {@code resumed} to false when unset.
+ * Low-cardinality fields are stored as {@link FieldDictionaries} codes, with String accessors
+ * that decode them.
+ */
+public record SslRecord(double ts, String uid, String origH, int origP, String respH, int respP,
+                        int versionCode, int cipherCode, int curveCode, int nextProtocolCode,
+                        boolean resumed, boolean established, String ja3, String issuer, String subject)
+        implements ZeekRecord {
+
+    public static final String LOG_TYPE = "ssl";
+
+    @Override
+    public String logType() {
+        return LOG_TYPE;
+    }
+
+    /**
+     * @return the {@code version} value of {@link #versionCode()}
+     */
+    public String version() {
+        return FieldDictionaries.SSL_VERSION.decode(versionCode);
+    }
+
+    /**
+     * @return the {@code cipher} value of {@link #cipherCode()}
+     */
+    public String cipher() {
+        return FieldDictionaries.SSL_CIPHER.decode(cipherCode);
+    }
+
+    /**
+     * @return the {@code curve} value of {@link #curveCode()}
+     */
+    public String curve() {
+        return FieldDictionaries.SSL_CURVE.decode(curveCode);
+    }
+
+    /**
+     * @return the {@code next_protocol} value of {@link #nextProtocolCode()}
+     */
+    public String nextProtocol() {
+        return FieldDictionaries.SSL_NEXT_PROTOCOL.decode(nextProtocolCode);
+    }
+
+    static final class Builder extends ZeekRecordBuilder {
+        private int versionCode;
+        private int cipherCode;
+        private int curveCode;
+        private int nextProtocolCode;
+        private boolean resumed;
+        private boolean established;
+        private String ja3;
+        private String issuer;
+        private String subject;
+
+        @Override
+        protected void resetFields() {
+            versionCode = FieldDictionary.EMPTY;
+            cipherCode = FieldDictionary.EMPTY;
+            curveCode = FieldDictionary.EMPTY;
+            nextProtocolCode = FieldDictionary.EMPTY;
+            resumed = false;
+            established = true;
+            ja3 = "";
+            issuer = "";
+            subject = "";
+        }
+
+        @Override
+        protected void setField(String field, FieldValue value) {
+            switch (field) {
+                case "version" -> versionCode = value.asCode(FieldDictionaries.SSL_VERSION);
+                case "cipher" -> cipherCode = value.asCode(FieldDictionaries.SSL_CIPHER);
+                case "curve" -> curveCode = value.asCode(FieldDictionaries.SSL_CURVE);
+                case "next_protocol" -> nextProtocolCode = value.asCode(FieldDictionaries.SSL_NEXT_PROTOCOL);
+                case "resumed" -> resumed = value.asBoolean(false);
+                case "established" -> established = value.asBoolean(true);
+                case "ja3" -> ja3 = value.asText();
+                case "issuer" -> issuer = value.asText();
+                case "subject" -> subject = value.asText();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public SslRecord build() {
+            return new SslRecord(ts, uid, origH, origP, respH, respP, versionCode, cipherCode, curveCode, nextProtocolCode,
+                    resumed, established, ja3, issuer, subject);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.threat.anomalyze.commons.parser.record;
+
+/**
+ * A compact, typed Zeek log record holding only the fields the feature extractors read.
+ * Missing string fields are decoded as empty strings and a missing {@code ts} as {@link Double#NaN}.
+ */
+public sealed interface ZeekRecord
+        permits ConnRecord, DnsRecord, HttpRecord, SslRecord, FilesRecord, NoticeRecord, AuthRecord, SshRecord {
+
+    /**
+     * @return the Zeek log type this record was read from (e.g. "conn", "dns")
+     */
+    String logType();
+
+    /**
+     * @return the event timestamp in epoch seconds
+     */
+    double ts();
+
+    /**
+     * @return the connection UID, or an empty string if unset
+     */
+    String uid();
+
+    /**
+     * @return the originator address ({@code id.orig_h})
+     */
+    String origH();
+
+    /**
+     * @return the originator port ({@code id.orig_p}), or 0 if unset
+     */
+    int origP();
+
+    /**
+     * @return the responder address ({@code id.resp_h})
+     */
+    String respH();
+
+    /**
+     * @return the responder port ({@code id.resp_p}), or 0 if unset
+     */
+    int respP();
+}
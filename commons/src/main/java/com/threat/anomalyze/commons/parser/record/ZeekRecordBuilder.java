@@ -0,0 +1,113 @@
+package com.threat.anomalyze.commons.parser.record;
+
+import java.util.Set;
+
+/**
+ * Mutable, reusable assembler that turns a stream of (field name, value) pairs into a typed
+ * {@link ZeekRecord}. Decoders call {@link #reset()}, then {@link #set(String, FieldValue)} once per
+ * field, then {@link #build()}. Fields a builder does not recognise are ignored, which lets the
+ * decoders skip them without materializing their values. Instances are not thread-safe.
+ */
+public abstract class ZeekRecordBuilder {
+
+    protected double ts;
+    protected String uid;
+    protected String origH;
+    protected int origP;
+    protected String respH;
+    protected int respP;
+
+    // Fields to decode, or null to decode every field the builder knows about
+    private Set<String> projectedFields;
+
+    /**
+     * Returns a new builder for the given Zeek log type.
+     *
+     * @param logType the log type (e.g. "conn", "dns")
+     * @return a builder producing records of that type
+     * @throws IllegalArgumentException if the log type is not supported
+     */
+    public static ZeekRecordBuilder forLogType(String logType) {
+        return forLogType(logType, FieldProjection.ALL);
+    }
+
+    /**
+     * Returns a new builder for the given Zeek log type that only decodes the projected fields.
+     *
+     * @param logType    the log type (e.g. "conn", "dns")
+     * @param projection the fields to decode; record components of other fields keep their defaults
+     * @return a builder producing records of that type
+     * @throws IllegalArgumentException if the log type is not supported
+     */
+    public static ZeekRecordBuilder forLogType(String logType, FieldProjection projection) {
+        ZeekRecordBuilder builder = switch (logType) {
+            case ConnRecord.LOG_TYPE -> new ConnRecord.Builder();
+            case DnsRecord.LOG_TYPE -> new DnsRecord.Builder();
+            case HttpRecord.LOG_TYPE -> new HttpRecord.Builder();
+            case SslRecord.LOG_TYPE -> new SslRecord.Builder();
+            case FilesRecord.LOG_TYPE -> new FilesRecord.Builder();
+            case NoticeRecord.LOG_TYPE -> new NoticeRecord.Builder();
+            case AuthRecord.LOG_TYPE -> new AuthRecord.Builder();
+            case SshRecord.LOG_TYPE -> new SshRecord.Builder();
+            default -> throw new IllegalArgumentException("Unsupported Zeek log type: " + logType);
+        };
+        builder.projectedFields = projection.fieldsFor(logType);
+        return builder;
+    }
+
+    /**
+     * @return true if the field is decoded by this builder's projection; decoders may skip other fields
+     */
+    public final boolean accepts(String field) {
+        return projectedFields == null || projectedFields.contains(field);
+    }
+
+    /**
+     * Clears all fields so the builder can assemble the next record.
+     */
+    public final void reset() {
+        ts = Double.NaN;
+        uid = "";
+        origH = "";
+        origP = 0;
+        respH = "";
+        respP = 0;
+        resetFields();
+    }
+
+    /**
+     * Applies a single field. Unknown fields and fields outside the projection are ignored.
+     *
+     * @param field the Zeek field name (e.g. "id.orig_h")
+     * @param value the field value, only valid for the duration of this call
+     */
+    public final void set(String field, FieldValue value) {
+        if (!accepts(field)) {
+            return;
+        }
+        switch (field) {
+            case "ts" -> ts = value.asDouble(Double.NaN);
+            case "uid" -> uid = value.asText();
+            case "id.orig_h" -> origH = value.asText();
+            case "id.orig_p" -> origP = value.asInt(0);
+            case "id.resp_h" -> respH = value.asText();
+            case "id.resp_p" -> respP = value.asInt(0);
+            default -> setField(field, value);
+        }
+    }
+
+    /**
+     * @return the record assembled from the fields set since the last {@link #reset()}
+     */
+    public abstract ZeekRecord build();
+
+    /**
+     * Clears the log-type specific fields.
+     */
+    protected abstract void resetFields();
+
+    /**
+     * Applies a log-type specific field. Unknown fields must be ignored.
+     */
+    protected abstract void setField(String field, FieldValue value);
+}
@@ -89,6 +89,24 @@ public class WhoisService {
         }
     }
 
+    /**
+     * Returns the domain a WHOIS lookup of the given name is made for, without looking it up.
+     *
+     * @param domain The domain or subdomain.
+     * @return The top private domain, or null if the name gets the default creation date without a lookup
+     *         because it is invalid or has no recognized public suffix.
+     */
+    public static String getRegisteredDomain(String domain) {
+        if ("*".equals(domain) || !isValidDomain(domain)) {
+            return null;
+        }
+        try {
+            return InternetDomainName.from(domain.trim()).topPrivateDomain().toString();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return null;
+        }
+    }
+
     /**
      * Validates the domain format using a regex pattern.
      *
@@ -0,0 +1,93 @@
+package com.threat.anomalyze.commons.util;
+
+import java.io.Serializable;
+
+/**
+ * Number of distinct values in a stream, either counted exactly or estimated in a {@link HyperLogLog}
+ * sketch of fixed size. The exact mode keeps a {@link FrequencyTable} of the values' 64-bit hashes,
+ * so its memory grows with the distinct values; the sketch mode takes {@code 2^precision} bytes
+ * whatever the stream, with a relative standard error of about {@code 1.04 / sqrt(2^precision)} (e.g.
+ * 1.6% at precision 12), and is close to exact below about {@code 2.5 * 2^precision} distinct values.
+ * <p>
+ * Counters of the same mode and precision merge into the distinct count of the union of their streams,
+ * so counts of panes, windows and shards combine without the values. Not thread-safe.
+ */
+public final class DistinctCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Exactly one of the two is set
+    private final FrequencyTable exact;
+    private final HyperLogLog sketch;
+
+    /**
+     * @param precision 0 to count exactly, or the HyperLogLog precision from 4 to 16
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public DistinctCounter(int precision) {
+        if (precision == 0) {
+            exact = new FrequencyTable();
+            sketch = null;
+        } else {
+            exact = null;
+            sketch = new HyperLogLog(precision);
+        }
+    }
+
+    /**
+     * Adds an int or long value.
+     */
+    public void add(long value) {
+        if (exact != null) {
+            exact.add(value);
+        } else {
+            sketch.offerHash(HyperLogLog.hash64(value));
+        }
+    }
+
+    /**
+     * Adds a string value.
+     */
+    public void add(CharSequence value) {
+        long hash = HyperLogLog.hash64(value);
+        if (exact != null) {
+            exact.add(hash);
+        } else {
+            sketch.offerHash(hash);
+        }
+    }
+
+    /**
+     * Folds in the values of another counter, leaving it unchanged.
+     *
+     * @throws IllegalArgumentException if the counters differ in mode or precision
+     */
+    public void merge(DistinctCounter other) {
+        if ((exact == null) != (other.exact == null)) {
+            throw new IllegalArgumentException("Cannot merge an exact and a sketched distinct count");
+        }
+        if (exact != null) {
+            exact.merge(other.exact);
+        } else {
+            sketch.merge(other.sketch);
+        }
+    }
+
+    /**
+     * @return the number of distinct values added, estimated in the sketch mode
+     */
+    public long count() {
+        return exact != null ? exact.distinct() : sketch.estimate();
+    }
+
+    /**
+     * Forgets every value, keeping the counter's memory.
+     */
+    public void clear() {
+        if (exact != null) {
+            exact.clear();
+        } else {
+            sketch.clear();
+        }
+    }
+}
@@ -1,31 +1,48 @@
 package com.threat.anomalyze.commons.util;
 
-import org.apache.commons.math3.stat.Frequency;
-
-import java.util.Iterator;
-import java.util.Map;
-
 /**
  * Utility class containing methods to calculate Shannon entropy.
  */
 public class EntropyUtils {
     /**
-     * Calculates the Shannon entropy of a given frequency distribution.
+     * Calculates the Shannon entropy of the counts in a frequency table.
+     *
+     * @param freq the frequency table containing counts of elements
+     * @return the Shannon entropy in bits, returns 0.0 if fewer than two values were counted
+     */
+    public static double calculateEntropy(FrequencyTable freq) {
+        return freq.entropy();
+    }
+
+    /**
+     * Calculates the Shannon entropy of the counts in an entropy sketch, estimated if the sketch has
+     * switched to its projections.
      *
-     * @param freq the frequency distribution containing counts of elements
-     * @return the Shannon entropy in bits, returns 0.0 if the distribution is empty
+     * @param sketch the sketch containing counts of elements
+     * @return the Shannon entropy in bits, returns 0.0 if fewer than two values were counted
      */
-    public static double calculateEntropy(Frequency freq) {
-        long totalCount = freq.getSumFreq();
+    public static double calculateEntropy(EntropySketch sketch) {
+        return sketch.entropy();
+    }
+
+    /**
+     * Calculates the Shannon entropy of counts indexed by dictionary code, as produced by counting
+     * {@link com.threat.anomalyze.commons.parser.record.FieldDictionary} codes in an array.
+     *
+     * @param counts the number of occurrences of each code
+     * @return the Shannon entropy in bits, returns 0.0 if fewer than two values were counted
+     */
+    public static double calculateEntropy(int[] counts) {
+        long totalCount = 0;
+        for (int count : counts) {
+            totalCount += count;
+        }
         if (totalCount <= 1) {
             return 0.0;
         }
         double entropy = 0.0;
         double log2Denominator = Math.log(2);
-        Iterator<Map.Entry<Comparable<?>, Long>> iterator = freq.entrySetIterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Comparable<?>, Long> entry = iterator.next();
-            long count = entry.getValue();
+        for (int count : counts) {
             if (count > 0) {
                 double probability = (double) count / totalCount;
                 entropy -= probability * (Math.log(probability) / log2Denominator);
@@ -33,4 +50,4 @@ public class EntropyUtils {
         }
         return entropy;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.threat.anomalyze.commons.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Counts of primitive keys in an open-addressing hash table of parallel {@code long} arrays, for
+ * entropy and distinct-count features. Unlike a map of boxed keys, counting a key that is already in
+ * the table allocates nothing, and {@link #clear()} empties the table for reuse without giving up its
+ * arrays.
+ * <p>
+ * Keys are ints, such as ports or {@link com.threat.anomalyze.commons.parser.record.FieldDictionary}
+ * codes, longs, or strings counted by their {@link HyperLogLog#hash64 64-bit hash}. Two distinct strings
+ * share a hash with probability about {@code n^2 / 2^65} for {@code n} distinct strings, i.e. never in
+ * practice for the sizes of a window. Not thread-safe.
+ */
+public final class FrequencyTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // Slot i holds keys[i] when counts[i] > 0 and is free otherwise
+    private long[] keys;
+    private long[] counts;
+    private int distinct;
+    private long total;
+
+    public FrequencyTable() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedDistinct the number of distinct keys to make room for up front
+     */
+    public FrequencyTable(int expectedDistinct) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedDistinct * 3 / 2) - 1) << 1;
+        keys = new long[capacity];
+        counts = new long[capacity];
+    }
+
+    /**
+     * Counts one occurrence of an int or long key.
+     */
+    public void add(long key) {
+        add(key, 1);
+    }
+
+    /**
+     * Counts one occurrence of a string by its hash.
+     */
+    public void add(CharSequence value) {
+        add(HyperLogLog.hash64(value), 1);
+    }
+
+    /**
+     * Counts several occurrences of a key.
+     */
+    public void add(long key, long count) {
+        if (count <= 0) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (counts[slot] > 0) {
+            if (keys[slot] == key) {
+                counts[slot] += count;
+                total += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        total += count;
+        if (++distinct * 3 > keys.length * 2) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Adds the counts of another table, leaving it unchanged.
+     */
+    public void merge(FrequencyTable other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] > 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the occurrences of a key, 0 if it was never counted
+     */
+    public long count(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); counts[slot] > 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Hands every counted key and its count to the consumer, in no particular order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct keys counted
+     */
+    public int distinct() {
+        return distinct;
+    }
+
+    /**
+     * @return the number of occurrences counted across all keys
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * @return the Shannon entropy of the counts in bits, 0.0 if fewer than two occurrences were counted
+     */
+    public double entropy() {
+        if (total <= 1) {
+            return 0.0;
+        }
+        double entropy = 0.0;
+        double log2Denominator = Math.log(2);
+        for (long count : counts) {
+            if (count > 0) {
+                double probability = (double) count / total;
+                entropy -= probability * (Math.log(probability) / log2Denominator);
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * Forgets every count, keeping the table's current capacity.
+     */
+    public void clear() {
+        if (distinct > 0) {
+            Arrays.fill(counts, 0);
+            distinct = 0;
+            total = 0;
+        }
+    }
+
+    /**
+     * Receives the keys of a table with their counts.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long count);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] > 0) {
+                int slot = slot(oldKeys[i], mask);
+                while (counts[slot] > 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    // Small consecutive keys such as ports would cluster under linear probing, so the key is mixed first
+    private static int slot(long key, int mask) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -0,0 +1,133 @@
+package com.threat.anomalyze.commons.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimate of the number of distinct values in a stream, in {@code 2^precision} one-byte
+ * registers whatever the stream's size. The relative standard error is about
+ * {@code 1.04 / sqrt(2^precision)}, e.g. 3.3% at precision 10. Small counts fall back to linear
+ * counting, which is close to exact. Sketches of the same precision can be merged, giving the distinct
+ * count of the union of their streams. Not thread-safe.
+ * <p>
+ * Each step of precision doubles the memory and divides the error by {@code sqrt(2)}: precision 12 takes
+ * 4 KB at 1.6%, precision 14 takes 16 KB at 0.8%.
+ */
+public final class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision the number of index bits, from 4 to 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value.
+     */
+    public void offer(CharSequence value) {
+        offerHash(hash64(value));
+    }
+
+    /**
+     * Adds a value by its 64-bit hash, which must be well mixed, e.g. from {@link #hash64}.
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Rank of the first set bit in the remaining bits; a sentinel bit caps it when they are all zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Folds another sketch into this one.
+     *
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values offered
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    /**
+     * 64-bit hash of a character sequence: FNV-1a over its chars, finished with the MurmurHash3 mix so
+     * every input bit affects the high bits the registers are indexed by.
+     */
+    public static long hash64(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * 64-bit hash of an int or long value, the MurmurHash3 finalizer, so that small consecutive values
+     * such as ports spread over the registers.
+     */
+    public static long hash64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
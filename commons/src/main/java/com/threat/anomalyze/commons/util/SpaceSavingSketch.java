@@ -0,0 +1,174 @@
+package com.threat.anomalyze.commons.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch of the most frequent items in a stream, kept in a fixed number of counters.
+ * When a new item arrives and every counter is taken, it replaces the item with the lowest count and
+ * inherits that count as its possible overestimate. Any item occurring more than {@code n / capacity}
+ * times in a stream of {@code n} items is guaranteed to hold a counter.
+ * <p>
+ * Counters are kept in the Stream-Summary layout: buckets of equal counts in a list sorted by count,
+ * so offering an item costs O(1). Not thread-safe.
+ */
+public final class SpaceSavingSketch<T> {
+
+    private final int capacity;
+    private final Map<T, Counter<T>> counters;
+    // Bucket with the lowest count; buckets are linked in ascending order of count
+    private Bucket<T> minBucket;
+
+    private static final class Counter<T> {
+        T item;
+        long error;
+        Bucket<T> bucket;
+        Counter<T> previous;
+        Counter<T> next;
+
+        Counter(T item) {
+            this.item = item;
+        }
+    }
+
+    private static final class Bucket<T> {
+        final long count;
+        Counter<T> head;
+        Bucket<T> previous;
+        Bucket<T> next;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * @param capacity the number of counters, i.e. the most items tracked at once
+     */
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(Math.min(capacity, 1 << 16) * 4 / 3 + 1);
+    }
+
+    /**
+     * Counts one occurrence of the item.
+     *
+     * @return the item's guaranteed count: the occurrences it has certainly had since it took its counter
+     */
+    public long offer(T item) {
+        Counter<T> counter = counters.get(item);
+        if (counter != null) {
+            increment(counter);
+        } else if (counters.size() < capacity) {
+            counter = new Counter<>(item);
+            counters.put(item, counter);
+            Bucket<T> bucket = minBucket != null && minBucket.count == 1 ? minBucket : insertBucket(1, null, minBucket);
+            attach(counter, bucket);
+        } else {
+            // Take over the counter of an item with the lowest count
+            counter = minBucket.head;
+            counters.remove(counter.item);
+            counter.item = item;
+            counter.error = minBucket.count;
+            counters.put(item, counter);
+            increment(counter);
+        }
+        return counter.bucket.count - counter.error;
+    }
+
+    /**
+     * @return the item's estimated count, an upper bound of its true count; 0 if it holds no counter
+     */
+    public long estimate(T item) {
+        Counter<T> counter = counters.get(item);
+        return counter == null ? 0 : counter.bucket.count;
+    }
+
+    /**
+     * @return the item's guaranteed count, a lower bound of its true count; 0 if it holds no counter
+     */
+    public long guaranteedCount(T item) {
+        Counter<T> counter = counters.get(item);
+        return counter == null ? 0 : counter.bucket.count - counter.error;
+    }
+
+    /**
+     * @return whether every counter is taken, so new items now evict others
+     */
+    public boolean isFull() {
+        return counters.size() == capacity;
+    }
+
+    /**
+     * @return the number of items holding a counter
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    public void clear() {
+        counters.clear();
+        minBucket = null;
+    }
+
+    private void increment(Counter<T> counter) {
+        Bucket<T> bucket = counter.bucket;
+        long count = bucket.count + 1;
+        Bucket<T> target = bucket.next != null && bucket.next.count == count
+                ? bucket.next
+                : insertBucket(count, bucket, bucket.next);
+        detach(counter);
+        attach(counter, target);
+    }
+
+    private Bucket<T> insertBucket(long count, Bucket<T> previous, Bucket<T> next) {
+        Bucket<T> bucket = new Bucket<>(count);
+        bucket.previous = previous;
+        bucket.next = next;
+        if (previous != null) {
+            previous.next = bucket;
+        } else {
+            minBucket = bucket;
+        }
+        if (next != null) {
+            next.previous = bucket;
+        }
+        return bucket;
+    }
+
+    private void attach(Counter<T> counter, Bucket<T> bucket) {
+        counter.bucket = bucket;
+        counter.previous = null;
+        counter.next = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.previous = counter;
+        }
+        bucket.head = counter;
+    }
+
+    private void detach(Counter<T> counter) {
+        Bucket<T> bucket = counter.bucket;
+        if (counter.previous != null) {
+            counter.previous.next = counter.next;
+        } else {
+            bucket.head = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.previous = counter.previous;
+        }
+        if (bucket.head == null) {
+            // Unlink the emptied bucket
+            if (bucket.previous != null) {
+                bucket.previous.next = bucket.next;
+            } else {
+                minBucket = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.previous = bucket.previous;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.threat.anomalyze.commons.util;
+
+import java.io.Serializable;
+
+/**
+ * Count, mean, variance, minimum and maximum of a stream of values in constant memory, updated with
+ * Welford's method. Keeping the mean and the sum of squared deviations from it, rather than the sums of
+ * the values and their squares, keeps the variance accurate for values with a large common offset such
+ * as epoch-second timestamps, where the naive formula cancels away every significant digit.
+ * <p>
+ * Moments of separate parts of a stream merge with Chan et al.'s parallel update into the moments of
+ * the whole, so panes, windows and shards combine without their values. Not thread-safe.
+ */
+public final class StreamingMoments implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long count;
+    private double mean;
+    // Sum of squared deviations from the mean
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Adds a value.
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (count == 1) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    /**
+     * Folds in the moments of another part of the stream, leaving them unchanged.
+     */
+    public void merge(StreamingMoments other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the mean of the values, 0.0 if there are none
+     */
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * @return the bias-corrected sample variance of the values, 0.0 if there are fewer than two
+     */
+    public double variance() {
+        return count > 1 ? m2 / (count - 1) : 0.0;
+    }
+
+    /**
+     * @return the smallest value, NaN if there are none
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * @return the largest value, NaN if there are none
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Forgets every value.
+     */
+    public void clear() {
+        count = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+}
@@ -2,16 +2,24 @@ package com.threat.anomalyze.training.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.threat.anomalyze.commons.features.FeatureAggregator;
+import com.threat.anomalyze.commons.features.IFeatureExtractor;
 import com.threat.anomalyze.commons.parser.LogParser;
+import com.threat.anomalyze.commons.parser.record.FieldProjection;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class ModelTrainingConfig {
 
     @Bean
-    public LogParser logParser(ObjectMapper springObjectMapper) {
-        return new LogParser(springObjectMapper);
+    public LogParser logParser(ObjectMapper springObjectMapper, List<IFeatureExtractor> featureExtractors) {
+        // Only decode the fields the registered extractors read
+        FieldProjection projection = FieldProjection.of(featureExtractors.stream()
+                .map(IFeatureExtractor::requiredFields)
+                .toList());
+        return new LogParser(springObjectMapper, projection);
     }
 
 }
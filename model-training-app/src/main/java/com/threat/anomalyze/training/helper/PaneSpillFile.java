@@ -0,0 +1,105 @@
+package com.threat.anomalyze.training.helper;
+
+import com.threat.anomalyze.commons.parser.RecordCodec;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entries of one open pane moved to a temporary file to free heap. A pane may be spilled several times
+ * while it stays open; each spill appends a batch per log type, and the batches are read back in the
+ * order they were written once the pane's first window closes. The file is only open while a batch is
+ * written or read, so spilling many panes does not hold many file handles.
+ */
+final class PaneSpillFile {
+
+    private final Path path;
+    private int entries;
+    // Bytes of the appends that completed; a failed append is cut off here
+    private long length;
+
+    PaneSpillFile(Path directory) throws IOException {
+        this.path = Files.createTempFile(directory, "pane-", ".spill");
+    }
+
+    /**
+     * Appends entries grouped by log type. If the append fails, the file is truncated back to the appends
+     * that completed, and none of its entries are counted.
+     */
+    void append(Map<String, List<ZeekRecord>> entriesByType) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.position(length);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            int appended = 0;
+            try {
+                for (Map.Entry<String, List<ZeekRecord>> batch : entriesByType.entrySet()) {
+                    out.writeUTF(batch.getKey());
+                    out.writeInt(batch.getValue().size());
+                    for (ZeekRecord entry : batch.getValue()) {
+                        RecordCodec.write(out, entry);
+                    }
+                    appended += batch.getValue().size();
+                }
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                try {
+                    channel.truncate(length);
+                } catch (IOException truncateFailure) {
+                    // The next append still starts at the last good offset, over the partial batch
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+            length = channel.position();
+            entries += appended;
+        }
+    }
+
+    /**
+     * Reads every spilled entry back, grouped by log type in the order they were spilled, and deletes
+     * the file.
+     */
+    Map<String, List<ZeekRecord>> readAndDelete() throws IOException {
+        Map<String, List<ZeekRecord>> entriesByType = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            int read = 0;
+            while (read < entries) {
+                String logType = in.readUTF();
+                int count = in.readInt();
+                List<ZeekRecord> batch = entriesByType.computeIfAbsent(logType, k -> new ArrayList<>());
+                for (int i = 0; i < count; i++) {
+                    batch.add(RecordCodec.read(in));
+                }
+                read += count;
+            }
+        } finally {
+            delete();
+        }
+        return entriesByType;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    Path path() {
+        return path;
+    }
+}
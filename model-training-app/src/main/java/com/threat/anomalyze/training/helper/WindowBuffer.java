@@ -0,0 +1,161 @@
+package com.threat.anomalyze.training.helper;
+
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only buffer holding one log type's entries in a window. Entries are stored in chunks that
+ * double in size, so an append never copies the entries already buffered and costs O(1). Once the
+ * window closes, {@link #seal()} hands the entries to the reader as a read-only list backed by the same
+ * chunks, again without copying.
+ * <p>
+ * With hopping windows, {@link #concat(List)} joins the sealed buffers of a window's panes the same way.
+ * <p>
+ * Not thread-safe: a buffer is only appended to and sealed by the worker of the {@link WindowShard}
+ * owning its window, and the processing queue the sealed window is handed to publishes the entries
+ * to the reader.
+ */
+final class WindowBuffer {
+
+    // Capacity of the first chunk; chunk c holds FIRST_CHUNK << c entries
+    private static final int FIRST_CHUNK_BITS = 4;
+    private static final int FIRST_CHUNK = 1 << FIRST_CHUNK_BITS;
+
+    private ZeekRecord[][] chunks = new ZeekRecord[4][];
+    private ZeekRecord[] current;
+    private int chunkCount;
+    private int positionInChunk;
+    private int size;
+    private boolean sealed;
+
+    /**
+     * Appends an entry.
+     *
+     * @throws IllegalStateException if the buffer has been sealed
+     */
+    void add(ZeekRecord entry) {
+        if (sealed) {
+            throw new IllegalStateException("Window buffer is sealed");
+        }
+        if (current == null || positionInChunk == current.length) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            current = new ZeekRecord[FIRST_CHUNK << chunkCount];
+            chunks[chunkCount++] = current;
+            positionInChunk = 0;
+        }
+        current[positionInChunk++] = entry;
+        size++;
+    }
+
+    /**
+     * Replaces an entry, e.g. to keep a reservoir sample.
+     *
+     * @throws IllegalStateException if the buffer has been sealed
+     */
+    void set(int index, ZeekRecord entry) {
+        if (sealed) {
+            throw new IllegalStateException("Window buffer is sealed");
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int chunk = chunkOf(index);
+        chunks[chunk][index - chunkStart(chunk)] = entry;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Chunk c starts at FIRST_CHUNK * (2^c - 1), so c is the bit length of index / FIRST_CHUNK + 1, less one
+    private static int chunkOf(int index) {
+        return 31 - Integer.numberOfLeadingZeros((index >>> FIRST_CHUNK_BITS) + 1);
+    }
+
+    private static int chunkStart(int chunk) {
+        return ((1 << chunk) - 1) << FIRST_CHUNK_BITS;
+    }
+
+    /**
+     * Stops further appends and returns the entries as a read-only list backed by the buffer.
+     */
+    List<ZeekRecord> seal() {
+        sealed = true;
+        return new SealedView(chunks, size);
+    }
+
+    /**
+     * Joins sealed lists into one read-only list backed by them, without copying their entries.
+     */
+    static List<ZeekRecord> concat(List<List<ZeekRecord>> parts) {
+        return parts.size() == 1 ? parts.get(0) : new ConcatView(parts);
+    }
+
+    /**
+     * Read-only random-access view over sealed chunks.
+     */
+    private static final class SealedView extends AbstractList<ZeekRecord> implements RandomAccess {
+        private final ZeekRecord[][] chunks;
+        private final int size;
+
+        SealedView(ZeekRecord[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        public ZeekRecord get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            int chunk = chunkOf(index);
+            return chunks[chunk][index - chunkStart(chunk)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Read-only random-access view over consecutive lists, such as the sealed buffers of a window's panes.
+     */
+    private static final class ConcatView extends AbstractList<ZeekRecord> implements RandomAccess {
+        private final List<List<ZeekRecord>> parts;
+        // offsets[i] is the index of the first entry of part i; offsets[parts.size()] is the size
+        private final int[] offsets;
+
+        ConcatView(List<List<ZeekRecord>> parts) {
+            this.parts = List.copyOf(parts);
+            this.offsets = new int[this.parts.size() + 1];
+            for (int i = 0; i < this.parts.size(); i++) {
+                offsets[i + 1] = offsets[i] + this.parts.get(i).size();
+            }
+        }
+
+        @Override
+        public ZeekRecord get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            // A window has a handful of panes, so a linear scan beats a binary search here
+            int part = 0;
+            while (offsets[part + 1] <= index) {
+                part++;
+            }
+            return parts.get(part).get(index - offsets[part]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[parts.size()];
+        }
+    }
+}
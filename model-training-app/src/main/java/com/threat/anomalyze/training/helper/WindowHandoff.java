@@ -0,0 +1,696 @@
+package com.threat.anomalyze.training.helper;
+
+import com.threat.anomalyze.commons.features.FeatureAccumulator;
+import com.threat.anomalyze.commons.features.UidJoinIndex;
+import com.threat.anomalyze.commons.parser.RecordCodec;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded handoff of closed windows from the window processor to feature extraction. At most
+ * {@code capacity} windows are held in memory; when extraction falls behind, the overflow policy decides
+ * what happens to the next window:
+ * <ul>
+ *     <li>{@link OverflowPolicy#BLOCK} makes the submitting shard wait, which in turn stalls the parsers
+ *     feeding it, so ingestion slows down to the speed of extraction;</li>
+ *     <li>{@link OverflowPolicy#SHED_OLDEST} drops the oldest queued window to make room;</li>
+ *     <li>{@link OverflowPolicy#SPILL} writes windows to temporary files and reads them back in order
+ *     as extraction catches up.</li>
+ * </ul>
+ * Windows are always taken in the order they were submitted. Depth, shed, spill and stall counters are
+ * exposed for monitoring. Thread-safe; spill files are written and read outside the lock guarding the
+ * queue, so a slow disk holds up neither in-memory submits nor takes. A window is encoded before it is
+ * written, and a spill file whose write fails is retired, so a partial window is never followed by
+ * another one.
+ */
+@Slf4j
+public final class WindowHandoff {
+
+    /**
+     * What to do with a window submitted while the handoff is full.
+     */
+    public enum OverflowPolicy {
+        BLOCK, SHED_OLDEST, SPILL
+    }
+
+    // Windows written per spill file before a new one is started
+    private static final int SPILL_SEGMENT_WINDOWS = 256;
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Path spillDirectory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    // Serialize spill file writes and reads respectively; taken before lock, never while holding it
+    private final ReentrantLock spillWriteLock = new ReentrantLock();
+    private final ReentrantLock spillReadLock = new ReentrantLock();
+
+    // Guarded by lock
+    private final ArrayDeque<ZeekLogWindowProcessorService.WindowData> windows = new ArrayDeque<>();
+    // Spill files, oldest first; only the last one may still be written to
+    private final ArrayDeque<SpillSegment> segments = new ArrayDeque<>();
+    // Windows written to spill files and not yet claimed by a take
+    private int spilledWindows;
+    // Windows being written to spill files; later windows must spill too, to stay behind them
+    private int spillingWindows;
+    private boolean closed;
+    private int maxDepth;
+    private long shedCount;
+    private long spillCount;
+    private long stallNanos;
+
+    // Guarded by spillWriteLock
+    private SpillSegment writing;
+    private volatile Path spillPath;
+
+    public WindowHandoff(int capacity, OverflowPolicy policy, Path spillDirectory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Hands over a closed window, applying the overflow policy if the handoff is full. Windows submitted
+     * after {@link #close()} are discarded.
+     */
+    void submit(ZeekLogWindowProcessorService.WindowData window) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (isFull()) {
+                switch (policy) {
+                    case BLOCK -> {
+                        if (!awaitSpace()) {
+                            return;
+                        }
+                    }
+                    case SHED_OLDEST -> {
+                        windows.poll();
+                        if (Long.bitCount(++shedCount) == 1) {
+                            log.warn("Window extraction is falling behind; {} windows shed so far", shedCount);
+                        }
+                    }
+                    case SPILL -> {
+                        if (spillUnlocked(window)) {
+                            return;
+                        }
+                        if (!awaitSpace()) {
+                            return;
+                        }
+                    }
+                }
+            }
+            windows.add(window);
+            maxDepth = Math.max(maxDepth, windows.size() + spilledWindows);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to {@code maxWindows} windows in submission order, waiting up to the timeout for the first.
+     *
+     * @return the windows taken; empty if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<ZeekLogWindowProcessorService.WindowData> poll(int maxWindows, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        while (true) {
+            List<ZeekLogWindowProcessorService.WindowData> taken;
+            int claimed;
+            lock.lock();
+            try {
+                while (windows.isEmpty() && spilledWindows == 0) {
+                    if (remaining <= 0 || closed) {
+                        return List.of();
+                    }
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+                taken = new ArrayList<>(Math.min(maxWindows, windows.size() + spilledWindows));
+                claimed = takeInto(taken, maxWindows);
+            } finally {
+                lock.unlock();
+            }
+            unspill(taken, claimed);
+            // Empty only if every claimed window was lost to a failed spill file
+            if (!taken.isEmpty()) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Takes every window currently available without waiting.
+     *
+     * @return the number of windows taken
+     */
+    public int drainTo(Collection<? super ZeekLogWindowProcessorService.WindowData> target) {
+        List<ZeekLogWindowProcessorService.WindowData> taken = new ArrayList<>();
+        int claimed;
+        lock.lock();
+        try {
+            claimed = takeInto(taken, Integer.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+        unspill(taken, claimed);
+        target.addAll(taken);
+        return taken.size();
+    }
+
+    /**
+     * @return the number of windows waiting, in memory or spilled
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return windows.size() + spilledWindows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the highest number of windows that have been waiting at once
+     */
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of windows dropped under {@link OverflowPolicy#SHED_OLDEST}
+     */
+    public long getShedCount() {
+        lock.lock();
+        try {
+            return shedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of windows written to spill files
+     */
+    public long getSpillCount() {
+        lock.lock();
+        try {
+            return spillCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time submitters spent waiting for room, in milliseconds
+     */
+    public long getStallMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(stallNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards every waiting window, including spilled ones.
+     */
+    public void clear() {
+        List<SpillSegment> discarded;
+        lock.lock();
+        try {
+            windows.clear();
+            discarded = new ArrayList<>(segments);
+            segments.clear();
+            spilledWindows = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        discarded.forEach(SpillSegment::discard);
+    }
+
+    /**
+     * Discards every waiting window and every window submitted from now on, releasing blocked submitters.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (spillPath != null) {
+            try {
+                Files.deleteIfExists(spillPath);
+            } catch (IOException e) {
+                log.warn("Failed to delete spill directory {}", spillPath, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "WindowHandoff[depth=" + (windows.size() + spilledWindows) + ", maxDepth=" + maxDepth
+                    + ", shed=" + shedCount + ", spilled=" + spillCount
+                    + ", stallMs=" + TimeUnit.NANOSECONDS.toMillis(stallNanos) + "]";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether a new window cannot join the in-memory queue, because it is full or windows ahead were spilled
+    private boolean isFull() {
+        return windows.size() >= capacity || spilledWindows > 0 || spillingWindows > 0;
+    }
+
+    /**
+     * Waits until the in-memory queue has room and nothing is spilled.
+     *
+     * @return false if the handoff was closed or the thread interrupted, and the window must be dropped
+     */
+    private boolean awaitSpace() {
+        long start = System.nanoTime();
+        try {
+            while (isFull() && !closed) {
+                notFull.await();
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting to hand over a window; dropping it");
+            return false;
+        } finally {
+            stallNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Takes in-memory windows and claims spilled ones behind them, up to maxWindows in all. Called with
+     * the lock held; the claimed windows are read by {@link #unspill} once it is released.
+     *
+     * @return the number of spilled windows claimed
+     */
+    private int takeInto(Collection<? super ZeekLogWindowProcessorService.WindowData> target, int maxWindows) {
+        int taken = 0;
+        while (taken < maxWindows && !windows.isEmpty()) {
+            target.add(windows.poll());
+            taken++;
+        }
+        int claimed = Math.min(maxWindows - taken, spilledWindows);
+        spilledWindows -= claimed;
+        if (taken + claimed > 0) {
+            notFull.signalAll();
+        }
+        return claimed;
+    }
+
+    /**
+     * Spills a window, releasing the lock while it is written; called with the lock held.
+     *
+     * @return false if the window could not be written
+     */
+    private boolean spillUnlocked(ZeekLogWindowProcessorService.WindowData window) {
+        spillingWindows++;
+        boolean spilled = false;
+        lock.unlock();
+        try {
+            spilled = spill(window);
+        } finally {
+            lock.lock();
+            spillingWindows--;
+        }
+        if (!spilled) {
+            return false;
+        }
+        if (closed) {
+            // Closed while writing: the window joins the others in being discarded
+            clear();
+            return true;
+        }
+        spilledWindows++;
+        spillCount++;
+        maxDepth = Math.max(maxDepth, windows.size() + spilledWindows);
+        if (Long.bitCount(spillCount) == 1) {
+            log.warn("Window extraction is falling behind; {} windows spilled to {} so far", spillCount, spillPath);
+        }
+        notEmpty.signal();
+        return true;
+    }
+
+    /**
+     * Appends a window to the newest spill file. If the write fails, the file is retired: the windows
+     * written before stay readable, and the next window starts a new file rather than following a
+     * partial one.
+     *
+     * @return false if the window could not be written
+     */
+    private boolean spill(ZeekLogWindowProcessorService.WindowData window) {
+        byte[] record;
+        try {
+            record = SpillSegment.encode(window);
+        } catch (IOException e) {
+            log.error("Failed to encode a window for spilling; waiting for room instead", e);
+            return false;
+        }
+        spillWriteLock.lock();
+        try {
+            if (writing == null || !writing.append(record)) {
+                if (writing != null) {
+                    writing.finishWriting();
+                }
+                SpillSegment segment = new SpillSegment(Files.createTempFile(spillPath(), "windows-", ".spill"));
+                lock.lock();
+                try {
+                    segments.add(segment);
+                } finally {
+                    lock.unlock();
+                }
+                writing = segment;
+                if (!segment.append(record)) {
+                    throw new IOException("Spill file " + segment.path + " refused its first window");
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to spill a window to {}; waiting for room instead", spillPath, e);
+            if (writing != null) {
+                writing.retire();
+                writing = null;
+            }
+            return false;
+        } finally {
+            spillWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Reads claimed spilled windows back, oldest first. Windows of a spill file that cannot be read are
+     * dropped, so fewer windows than claimed may be added.
+     */
+    private void unspill(Collection<? super ZeekLogWindowProcessorService.WindowData> target, int claimed) {
+        if (claimed == 0) {
+            return;
+        }
+        spillReadLock.lock();
+        try {
+            int read = 0;
+            while (read < claimed) {
+                SpillSegment segment;
+                lock.lock();
+                try {
+                    segment = segments.peekFirst();
+                } finally {
+                    lock.unlock();
+                }
+                if (segment == null) {
+                    // Cleared since the windows were claimed
+                    return;
+                }
+                if (segment.isExhausted()) {
+                    lock.lock();
+                    try {
+                        if (segments.peekFirst() == segment) {
+                            segments.pollFirst();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    segment.discard();
+                    continue;
+                }
+                if (!segment.hasUnread()) {
+                    log.error("Spill file {} has fewer windows than were claimed from it", segment.path);
+                    return;
+                }
+                read++;
+                try {
+                    ZeekLogWindowProcessorService.WindowData window = segment.read();
+                    if (window != null) {
+                        target.add(window);
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to read spilled windows from {}; dropping {} of them",
+                            segment.path, segment.unread() + 1, e);
+                }
+            }
+        } finally {
+            spillReadLock.unlock();
+        }
+    }
+
+    private Path spillPath() throws IOException {
+        if (spillPath == null) {
+            if (spillDirectory != null) {
+                Files.createDirectories(spillDirectory);
+            }
+            spillPath = spillDirectory == null
+                    ? Files.createTempDirectory("zeek-window-spill-")
+                    : Files.createTempDirectory(spillDirectory, "zeek-window-spill-");
+        }
+        return spillPath;
+    }
+
+    /**
+     * One spill file, written to until it is full, retired or first read, and then read back from the
+     * start. Its methods synchronize on it, so one thread may append while another reads.
+     */
+    private static final class SpillSegment implements Closeable {
+        final Path path;
+        private DataOutputStream out;
+        private DataInputStream in;
+        // Complete windows appended; a failed append may leave a partial window after them, never read
+        private int written;
+        private int read;
+        // Set once the file cannot be read or was discarded; its remaining windows are dropped
+        private boolean failed;
+
+        SpillSegment(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        }
+
+        /**
+         * Encodes a window in the format {@link #read()} expects, so a failure to encode it leaves no
+         * trace in the file.
+         */
+        static byte[] encode(ZeekLogWindowProcessorService.WindowData window) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(window.windowKey.ordinal());
+            out.writeLong(window.resolution.sizeMs());
+            out.writeLong(window.resolution.slideMs());
+            out.writeBoolean(window.resolution.primary());
+            out.writeUTF(window.ip);
+            out.writeLong(window.windowStart);
+            out.writeInt(window.logEntriesByType.size());
+            for (Map.Entry<String, List<ZeekRecord>> entries : window.logEntriesByType.entrySet()) {
+                out.writeUTF(entries.getKey());
+                out.writeInt(entries.getValue().size());
+                for (ZeekRecord entry : entries.getValue()) {
+                    RecordCodec.write(out, entry);
+                }
+            }
+            out.writeInt(window.sketchFeatures.size());
+            for (Map.Entry<String, Double> feature : window.sketchFeatures.entrySet()) {
+                out.writeUTF(feature.getKey());
+                out.writeDouble(feature.getValue());
+            }
+            writeAccumulators(out, window.accumulators);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        // Accumulators are serialized as one length-prefixed block; -1 stands for none
+        private static void writeAccumulators(DataOutputStream out, List<FeatureAccumulator<?>> accumulators)
+                throws IOException {
+            if (accumulators == null) {
+                out.writeInt(-1);
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(new ArrayList<>(accumulators));
+            }
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        /**
+         * Appends an encoded window.
+         *
+         * @return false if the file no longer takes windows, because it is full, retired or being read
+         */
+        synchronized boolean append(byte[] record) throws IOException {
+            if (out == null || written == SPILL_SEGMENT_WINDOWS) {
+                return false;
+            }
+            out.write(record);
+            written++;
+            return true;
+        }
+
+        /**
+         * Stops appending after a failed write, keeping the windows written before it readable.
+         */
+        synchronized void retire() {
+            try {
+                finishWriting();
+            } catch (IOException e) {
+                log.warn("Failed to close spill file {} after a failed write", path, e);
+            }
+        }
+
+        synchronized boolean hasUnread() {
+            return read < written;
+        }
+
+        synchronized int unread() {
+            return written - read;
+        }
+
+        /**
+         * @return whether no window will be read from the file anymore
+         */
+        synchronized boolean isExhausted() {
+            return out == null && read == written;
+        }
+
+        /**
+         * Reads the next window, retiring the file for writing if it is the first.
+         *
+         * @return the window, or null if it was dropped with the rest of an unreadable file
+         * @throws IOException if the window cannot be read; the rest of the file is dropped
+         */
+        synchronized ZeekLogWindowProcessorService.WindowData read() throws IOException {
+            read++;
+            if (failed) {
+                return null;
+            }
+            try {
+                if (in == null) {
+                    finishWriting();
+                    in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+                }
+                return decode();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        private ZeekLogWindowProcessorService.WindowData decode() throws IOException {
+            WindowKey windowKey = WindowKey.values()[in.readUnsignedByte()];
+            WindowResolution resolution = new WindowResolution(in.readLong(), in.readLong(), in.readBoolean());
+            String ip = in.readUTF();
+            long windowStart = in.readLong();
+            int logTypes = in.readInt();
+            Map<String, List<ZeekRecord>> logEntriesByType = new HashMap<>();
+            for (int t = 0; t < logTypes; t++) {
+                String logType = in.readUTF();
+                int count = in.readInt();
+                List<ZeekRecord> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entries.add(RecordCodec.read(in));
+                }
+                logEntriesByType.put(logType, entries);
+            }
+            int featureCount = in.readInt();
+            Map<String, Double> sketchFeatures = new HashMap<>();
+            for (int f = 0; f < featureCount; f++) {
+                sketchFeatures.put(in.readUTF(), in.readDouble());
+            }
+            List<FeatureAccumulator<?>> accumulators = readAccumulators();
+            return new ZeekLogWindowProcessorService.WindowData(windowKey, resolution, ip, windowStart,
+                    logEntriesByType, UidJoinIndex.of(logEntriesByType), sketchFeatures, accumulators);
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<FeatureAccumulator<?>> readAccumulators() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = in.readNBytes(length);
+            try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (List<FeatureAccumulator<?>>) objects.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot read back spilled feature accumulators", e);
+            }
+        }
+
+        synchronized void finishWriting() throws IOException {
+            if (out != null) {
+                DataOutputStream closing = out;
+                out = null;
+                closing.close();
+            }
+        }
+
+        /**
+         * Closes and deletes the file, dropping any window not yet read.
+         */
+        synchronized void discard() {
+            failed = true;
+            try {
+                close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete spill file {}", path, e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                finishWriting();
+            } finally {
+                if (in != null) {
+                    in.close();
+                    in = null;
+                }
+            }
+        }
+    }
+}
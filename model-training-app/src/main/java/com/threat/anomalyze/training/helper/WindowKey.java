@@ -0,0 +1,85 @@
+package com.threat.anomalyze.training.helper;
+
+import com.threat.anomalyze.commons.features.FeatureAggregator;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+
+/**
+ * How log entries are grouped into windows. Each keying has its own namespace in the
+ * {@link FeatureAggregator}, so features of a host seen as a source never mix with its features as a
+ * destination.
+ */
+public enum WindowKey {
+
+    /**
+     * Profiles clients by originator address ({@code id.orig_h}).
+     */
+    SOURCE_IP(FeatureAggregator.DEFAULT_NAMESPACE) {
+        @Override
+        public String keyOf(ZeekRecord entry) {
+            return entry.origH();
+        }
+    },
+
+    /**
+     * Profiles servers by responder address ({@code id.resp_h}).
+     */
+    DESTINATION_IP("dst") {
+        @Override
+        public String keyOf(ZeekRecord entry) {
+            return entry.respH();
+        }
+    },
+
+    /**
+     * Profiles each originator/responder pair, e.g. {@code 10.0.0.5->10.0.0.9}.
+     */
+    HOST_PAIR("pair") {
+        @Override
+        public String keyOf(ZeekRecord entry) {
+            if (entry.origH().isEmpty() || entry.respH().isEmpty()) {
+                return "";
+            }
+            return entry.origH() + "->" + entry.respH();
+        }
+    },
+
+    /**
+     * Profiles the /24 subnet of IPv4 originators, e.g. {@code 10.0.0.0/24}. IPv6 originators are keyed
+     * by their full address.
+     */
+    SOURCE_SUBNET("src24") {
+        @Override
+        public String keyOf(ZeekRecord entry) {
+            String ip = entry.origH();
+            int lastDot = ip.lastIndexOf('.');
+            if (lastDot < 0 || ip.indexOf(':') >= 0) {
+                return ip;
+            }
+            return ip.substring(0, lastDot) + ".0/24";
+        }
+    };
+
+    /**
+     * Prefix of the keys of the entities that keys beyond the window key limit are folded into, one per
+     * window shard, e.g. {@code other-0}.
+     */
+    public static final String OTHER_KEY = "other";
+
+    private final String namespace;
+
+    WindowKey(String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * @return the key of the window the entry belongs to, or an empty string if the entry has none
+     */
+    public abstract String keyOf(ZeekRecord entry);
+
+    /**
+     * @return the feature namespace of windows grouped this way
+     */
+    public String namespace() {
+        return namespace;
+    }
+}
@@ -0,0 +1,49 @@
+package com.threat.anomalyze.training.helper;
+
+/**
+ * Length and slide of one family of windows. All resolutions are assembled from the same panes, so
+ * minute-level windows for bursts and hour-level windows for low-and-slow activity come from a single
+ * pass over the logs. The primary resolution ({@code zeek.window.size.minutes}) keeps the keying's own
+ * feature namespace; every other resolution gets one of its own, e.g. {@code src@1h}, so it is
+ * exported as a separate feature set.
+ *
+ * @param sizeMs  the window length
+ * @param slideMs how often a new window starts; equal to the length for tumbling windows
+ * @param primary whether this is the resolution of {@code zeek.window.size.minutes}
+ */
+public record WindowResolution(long sizeMs, long slideMs, boolean primary) {
+
+    /**
+     * @return a short name of the window length, e.g. {@code 5m} or {@code 1h}
+     */
+    public String label() {
+        if (sizeMs % 3_600_000 == 0) {
+            return sizeMs / 3_600_000 + "h";
+        }
+        if (sizeMs % 60_000 == 0) {
+            return sizeMs / 60_000 + "m";
+        }
+        return sizeMs / 1000 + "s";
+    }
+
+    /**
+     * @return the feature namespace of windows of this resolution grouped by the given keying
+     */
+    public String namespace(WindowKey windowKey) {
+        return primary ? windowKey.namespace() : windowKey.namespace() + "@" + label();
+    }
+
+    /**
+     * @return the first end of a window of this resolution containing the pane starting at paneStart
+     */
+    long firstWindowEnd(long paneStart) {
+        return Math.floorDiv(paneStart, slideMs) * slideMs + slideMs;
+    }
+
+    /**
+     * @return the last end of a window of this resolution containing the pane starting at paneStart
+     */
+    long lastWindowEnd(long paneStart) {
+        return Math.floorDiv(paneStart, slideMs) * slideMs + sizeMs;
+    }
+}
@@ -0,0 +1,788 @@
+package com.threat.anomalyze.training.helper;
+
+import com.threat.anomalyze.commons.features.FeatureAccumulator;
+import com.threat.anomalyze.commons.features.FeatureConfig;
+import com.threat.anomalyze.commons.features.IncrementalFeatureExtractor;
+import com.threat.anomalyze.commons.features.UidJoinIndex;
+import com.threat.anomalyze.commons.parser.RecordCodec;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.commons.util.HyperLogLog;
+import com.threat.anomalyze.commons.util.SpaceSavingSketch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * One shard of the window store. The shard owns the open windows of the keys hashed to it and a worker
+ * thread that is the only thread ever touching them, so appends, window closes and flushes need no
+ * locks. Other threads talk to the shard through a lock-free inbox; commands are applied in the order
+ * they were enqueued. The inbox holds a bounded number of entries: once it is full, producers wait for
+ * the worker to catch up, so a shard stalled on a full {@link WindowHandoff} stalls the parsers too.
+ * <p>
+ * Windows hop: each spans the window size and a new one starts every slide. An entry is stored once,
+ * in the slide-long pane it falls into, and a closing window is assembled from its panes as views over
+ * their sealed buffers, with a join index combined from the panes' indexes. Overlapping windows share
+ * their entries instead of copying them. When the slide equals the window size, every window is a
+ * single pane and windows tumble.
+ * <p>
+ * Several {@link WindowResolution}s can be windowed from the same panes: a pane is scheduled for every
+ * window of every resolution it falls into and kept until the last of them closes, so an hour-long
+ * window is the union of the minute panes its minute windows were built from. A pane is sealed when
+ * the first window containing it closes, whatever its resolution.
+ * <p>
+ * With a memory budget, the shard tracks the approximate heap of its open panes. Once over budget, it
+ * moves the entries of its largest open panes to temporary files until it is back under three quarters
+ * of the budget, and reads them back when the pane's first window closes, so long windows over large
+ * networks run on a fixed heap. Panes keep accepting entries after being spilled.
+ * <p>
+ * With a key limit, each keying tracks at most that many keys with exact windows. A Space-Saving
+ * sketch follows the heavy hitters among the keys; once the limit is reached, or once the sketch is
+ * full and keys churn through it, as they do during a scan, a new key only gets its own windows after
+ * proving itself a repeat. The long tail is folded into one {@link WindowKey#OTHER_KEY} entity per
+ * keying and shard, which keeps a bounded reservoir sample of the folded entries for the extractors, plus their
+ * count and a HyperLogLog of their distinct keys, so memory and flush time stay bounded during floods.
+ * <p>
+ * With incremental extractors, each pane of an exact key feeds its entries to one
+ * {@link FeatureAccumulator} per extractor as they arrive and keeps the entries themselves only for the
+ * log types other extractors still read. A closing window merges the accumulators of its panes, so open
+ * windows cost memory per distinct value counted rather than per entry. The memory budget only covers
+ * the entries kept; folded panes keep their sample and are extracted from it.
+ */
+@Slf4j
+final class WindowShard {
+
+    // How long a producer sleeps between checks while the inbox is full
+    private static final long INBOX_WAIT_NANOS = 100_000;
+
+    // Entries of each log type sampled per pane of the "other" entity
+    private static final int OTHER_SAMPLE_SIZE = 1024;
+    // HyperLogLog precision for the distinct keys folded into a pane of the "other" entity (1 KB, ~3% error)
+    private static final int OTHER_DISTINCT_PRECISION = 10;
+
+    // Pane length; divides the length and slide of every resolution
+    private final long paneMs;
+    private final WindowResolution[] resolutions;
+    private final Consumer<ZeekLogWindowProcessorService.WindowData> sink;
+    private final AtomicLong lateEntries;
+    private final int inboxCapacity;
+    private final AtomicLong producerStallNanos;
+    // Heap allowed for the entries of open panes; 0 means unlimited
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory;
+    private final AtomicLong spilledPanes;
+    // Keys per keying with exact windows; 0 means unlimited
+    private final int maxKeys;
+    private final AtomicLong foldedEntries;
+    // Key of this shard's "other" entity
+    private final String otherKey;
+    // Extractors whose accumulators panes keep instead of entries; empty if windows keep every entry
+    private final List<IncrementalFeatureExtractor<?>> accumulating;
+    // Log type -> indexes of the accumulating extractors reading it
+    private final Map<String, int[]> accumulatorsByLogType = new HashMap<>();
+    // Log types whose entries panes keep while accumulating, for the other extractors
+    private final Set<String> retainedLogTypes;
+
+    private final Queue<Object> inbox = new ConcurrentLinkedQueue<>();
+    // Entries queued in the inbox and not yet applied
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private final Thread worker;
+    private volatile boolean waiting;
+    private volatile boolean running = true;
+    // Every window ending at or before this event time has been handed over; published by the worker
+    private volatile long handedOverUpTo = Long.MIN_VALUE;
+
+    // Owned by the worker thread
+    // Map of window key to its open panes, sorted by start time
+    private final Map<GroupKey, List<Pane>> connectionPanes = new HashMap<>();
+    // Window end -> keys and resolutions with entries in the window ending then
+    private final NavigableMap<Long, Set<WindowTimer>> windowTimers = new TreeMap<>();
+    // Every window ending at or before this event time has been flushed
+    private long closedUpTo = Long.MIN_VALUE;
+    // Approximate heap held by the entries of open, unsealed panes
+    private long heapBytes;
+    private Path spillPath;
+    private boolean spillFailed;
+    // Heavy hitters and tracked key count per keying, when keys are limited
+    private final Map<WindowKey, KeyGovernor> keyGovernors = new EnumMap<>(WindowKey.class);
+
+    private record Append(GroupKey key, String logType, ZeekRecord entry) {
+    }
+
+    /**
+     * Key of one group of windows, such as a source IP or a host pair, under one keying.
+     */
+    private record GroupKey(WindowKey windowKey, String key) {
+    }
+
+    /**
+     * A key's window of one resolution, registered under its end time.
+     */
+    private record WindowTimer(GroupKey key, WindowResolution resolution) {
+    }
+
+    private record Close(long watermark) {
+    }
+
+    private record FlushAll(CompletableFuture<Integer> done) {
+    }
+
+    /**
+     * Admission state of one keying.
+     */
+    private static final class KeyGovernor {
+        final SpaceSavingSketch<String> heavyHitters;
+        // Keys of this keying with open panes, the "other" entity aside
+        int trackedKeys;
+
+        KeyGovernor(int maxKeys) {
+            this.heavyHitters = new SpaceSavingSketch<>(maxKeys);
+        }
+    }
+
+    /**
+     * What a pane of the "other" entity knows beyond its sampled entries.
+     */
+    private static final class FoldedSummary {
+        final Map<String, Long> entriesByType = new HashMap<>();
+        final HyperLogLog distinctKeys = new HyperLogLog(OTHER_DISTINCT_PRECISION);
+    }
+
+    /**
+     * One slide's worth of a key's entries, shared by every window overlapping it. A pane is sealed
+     * when the first window containing it closes; no entry can reach it after that without being late.
+     */
+    private static class Pane {
+        final long paneStart; // Start time of the pane (aligned to paneMs)
+        Map<String, WindowBuffer> logEntriesByType = new HashMap<>();
+        // Approximate heap of the entries in logEntriesByType, while the pane is open
+        long heapBytes;
+        // Entries moved to disk to stay within the memory budget; null if none
+        PaneSpillFile spill;
+        // Set for panes of the "other" entity, whose entries are a sample of those folded into it
+        FoldedSummary folded;
+        // One per accumulating extractor, fed every entry of the pane; null for folded panes
+        FeatureAccumulator<?>[] accumulators;
+        Map<String, List<ZeekRecord>> sealedEntries;
+        UidJoinIndex joinIndex;
+
+        Pane(long paneStart) {
+            this.paneStart = paneStart;
+        }
+
+        boolean isEmpty() {
+            if (accumulators != null) {
+                return false;
+            }
+            return isSealed() ? sealedEntries.isEmpty() : logEntriesByType.isEmpty() && spill == null;
+        }
+
+        boolean isSealed() {
+            return sealedEntries != null;
+        }
+    }
+
+    WindowShard(int id, long paneMs, WindowResolution[] resolutions,
+                Consumer<ZeekLogWindowProcessorService.WindowData> sink,
+                AtomicLong lateEntries, int inboxCapacity, AtomicLong producerStallNanos,
+                long memoryBudgetBytes, Path spillDirectory, AtomicLong spilledPanes,
+                int maxKeys, AtomicLong foldedEntries,
+                List<IncrementalFeatureExtractor<?>> accumulating, Set<String> retainedLogTypes) {
+        this.paneMs = paneMs;
+        this.resolutions = resolutions;
+        this.sink = sink;
+        this.lateEntries = lateEntries;
+        this.inboxCapacity = inboxCapacity;
+        this.producerStallNanos = producerStallNanos;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        this.spilledPanes = spilledPanes;
+        this.maxKeys = maxKeys;
+        this.foldedEntries = foldedEntries;
+        this.otherKey = WindowKey.OTHER_KEY + "-" + id;
+        this.accumulating = List.copyOf(accumulating);
+        this.retainedLogTypes = Set.copyOf(retainedLogTypes);
+        for (int i = 0; i < this.accumulating.size(); i++) {
+            for (String logType : this.accumulating.get(i).requiredFields().keySet()) {
+                int[] indexes = accumulatorsByLogType.getOrDefault(logType, new int[0]);
+                indexes = Arrays.copyOf(indexes, indexes.length + 1);
+                indexes[indexes.length - 1] = i;
+                accumulatorsByLogType.put(logType, indexes);
+            }
+        }
+        this.worker = new Thread(this::run, "window-shard-" + id);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues an entry for the windows of its key under a keying, waiting while the inbox is full; entries
+     * for a window that has closed by the time the entry is applied are dropped as late.
+     */
+    void append(WindowKey windowKey, String key, String logType, ZeekRecord entry) {
+        if (pendingEntries.get() >= inboxCapacity) {
+            awaitInboxSpace();
+        }
+        pendingEntries.incrementAndGet();
+        send(new Append(new GroupKey(windowKey, key), logType, entry));
+    }
+
+    private void awaitInboxSpace() {
+        long start = System.nanoTime();
+        // Each waiting producer may add one entry past the capacity, which keeps the bound approximate but never deadlocks
+        while (pendingEntries.get() >= inboxCapacity && running) {
+            LockSupport.parkNanos(this, INBOX_WAIT_NANOS);
+        }
+        producerStallNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Queues the closing of every window that ends at or before the watermark.
+     */
+    void close(long watermark) {
+        send(new Close(watermark));
+    }
+
+    /**
+     * Queues the flushing of every open window, after all commands queued before it, and forgets which
+     * windows have closed so the next stream may start at any timestamp.
+     *
+     * @return completes with the number of windows flushed
+     */
+    CompletableFuture<Integer> flushAll() {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        send(new FlushAll(done));
+        return done;
+    }
+
+    /**
+     * @return the event time at or before which every window has been closed and handed over
+     */
+    long handedOverUpTo() {
+        return handedOverUpTo;
+    }
+
+    /**
+     * Stops the worker once it has applied the commands already queued.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void send(Object command) {
+        inbox.offer(command);
+        if (waiting) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Object command = inbox.poll();
+            if (command == null) {
+                if (!running) {
+                    deleteSpillPath();
+                    return;
+                }
+                // Publish waiting before re-checking the inbox, so a concurrent send either is seen here or unparks
+                waiting = true;
+                if (inbox.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+            try {
+                if (command instanceof Append append) {
+                    pendingEntries.decrementAndGet();
+                    appendEntry(append.key(), append.logType(), append.entry());
+                } else if (command instanceof Close close) {
+                    closeWindows(close.watermark());
+                } else if (command instanceof FlushAll flush) {
+                    flush.done().complete(flushAllWindows());
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to apply {} in {}", command, worker.getName(), e);
+                if (command instanceof FlushAll flush) {
+                    flush.done().completeExceptionally(e);
+                }
+            }
+            handedOverUpTo = closedUpTo;
+        }
+    }
+
+    private void appendEntry(GroupKey key, String logType, ZeekRecord entry) {
+        String foldedKey = null;
+        if (!admit(key)) {
+            foldedKey = key.key();
+            key = new GroupKey(key.windowKey(), otherKey);
+        }
+        long entryTime = (long) (entry.ts() * 1000);
+        // Align entry time to the start of its pane; the first window containing the pane ends with it
+        long paneStart = entryTime - (entryTime % paneMs);
+        if (paneStart + paneMs <= closedUpTo) {
+            long count = lateEntries.incrementAndGet();
+            log.debug("Dropping late {} entry for {}: window ending {} has already closed ({} late entries so far)",
+                    logType, key, paneStart + paneMs, count);
+            return;
+        }
+
+        List<Pane> panes = connectionPanes.get(key);
+        if (panes == null) {
+            log.info("Initializing pane list for {}", key);
+            panes = new ArrayList<>();
+            connectionPanes.put(key, panes);
+            if (maxKeys > 0 && foldedKey == null) {
+                keyGovernors.get(key.windowKey()).trackedKeys++;
+            }
+        }
+
+        // Locate or create the pane for this entry
+        int index = findPaneIndex(panes, paneStart);
+        Pane targetPane;
+        if (index >= 0) {
+            targetPane = panes.get(index);
+        } else {
+            // Create and insert a new pane at the correct position, and schedule every window overlapping it
+            targetPane = new Pane(paneStart);
+            panes.add(-index - 1, targetPane);
+            for (WindowResolution resolution : resolutions) {
+                WindowTimer timer = new WindowTimer(key, resolution);
+                for (long windowEnd = resolution.firstWindowEnd(paneStart);
+                     windowEnd <= resolution.lastWindowEnd(paneStart); windowEnd += resolution.slideMs()) {
+                    windowTimers.computeIfAbsent(windowEnd, k -> new HashSet<>()).add(timer);
+                }
+            }
+            log.info("Added new pane for {} at start time {}", key, paneStart);
+        }
+        if (foldedKey != null) {
+            if (!sampleFolded(targetPane, foldedKey, logType, entry)) {
+                return;
+            }
+        } else {
+            if (!accumulating.isEmpty()) {
+                accumulate(targetPane, key.key(), logType, entry);
+                if (!retainedLogTypes.contains(logType)) {
+                    return;
+                }
+            }
+            targetPane.logEntriesByType.computeIfAbsent(logType, k -> new WindowBuffer()).add(entry);
+        }
+        log.debug("Added entry to pane at {} for log type {}", paneStart, logType);
+        if (memoryBudgetBytes > 0) {
+            long entryBytes = RecordCodec.estimateHeapBytes(entry);
+            targetPane.heapBytes += entryBytes;
+            heapBytes += entryBytes;
+            if (heapBytes > memoryBudgetBytes && !spillFailed) {
+                spillLargestPanes();
+            }
+        }
+    }
+
+    /**
+     * Feeds an entry to the pane's accumulators of the extractors reading its log type.
+     */
+    private void accumulate(Pane pane, String key, String logType, ZeekRecord entry) {
+        if (pane.accumulators == null) {
+            pane.accumulators = new FeatureAccumulator<?>[accumulating.size()];
+            for (int i = 0; i < pane.accumulators.length; i++) {
+                pane.accumulators[i] = accumulating.get(i).newAccumulator(key);
+            }
+        }
+        int[] indexes = accumulatorsByLogType.get(logType);
+        if (indexes != null) {
+            for (int i : indexes) {
+                pane.accumulators[i].add(entry);
+            }
+        }
+    }
+
+    /**
+     * Decides whether a key gets exact windows, counting it among the heavy hitters of its keying. Keys
+     * with open panes always do; a new key does while the keying is under its key limit, and, once the
+     * heavy-hitter sketch is full, only if it has certainly been seen before.
+     */
+    private boolean admit(GroupKey key) {
+        if (maxKeys <= 0) {
+            return true;
+        }
+        KeyGovernor governor = keyGovernors.computeIfAbsent(key.windowKey(), k -> new KeyGovernor(maxKeys));
+        boolean saturated = governor.heavyHitters.isFull();
+        long guaranteedCount = governor.heavyHitters.offer(key.key());
+        if (connectionPanes.containsKey(key)) {
+            return true;
+        }
+        return governor.trackedKeys < maxKeys && (!saturated || guaranteedCount > 1);
+    }
+
+    /**
+     * Counts an entry folded into a pane of the "other" entity and keeps it in the pane's reservoir
+     * sample if drawn.
+     *
+     * @return whether the entry was added to the sample, rather than replacing one or being skipped
+     */
+    private boolean sampleFolded(Pane pane, String foldedKey, String logType, ZeekRecord entry) {
+        if (Long.bitCount(foldedEntries.incrementAndGet()) == 1) {
+            log.warn("Window key limit of {} reached; {} entries folded into the \"{}\" entity so far",
+                    maxKeys, foldedEntries.get(), otherKey);
+        }
+        if (pane.folded == null) {
+            pane.folded = new FoldedSummary();
+        }
+        long seen = pane.folded.entriesByType.merge(logType, 1L, Long::sum);
+        pane.folded.distinctKeys.offer(foldedKey);
+        WindowBuffer sample = pane.logEntriesByType.computeIfAbsent(logType, k -> new WindowBuffer());
+        if (sample.size() < OTHER_SAMPLE_SIZE) {
+            sample.add(entry);
+            return true;
+        }
+        long slot = ThreadLocalRandom.current().nextLong(seen);
+        if (slot < OTHER_SAMPLE_SIZE) {
+            sample.set((int) slot, entry);
+        }
+        return false;
+    }
+
+    /**
+     * Spills the largest open panes until the shard is back under three quarters of its budget, so the
+     * next spill is some way off.
+     */
+    private void spillLargestPanes() {
+        List<Pane> candidates = new ArrayList<>();
+        for (List<Pane> panes : connectionPanes.values()) {
+            for (Pane pane : panes) {
+                // The sample of a folded pane is bounded, and replacing its entries needs them on the heap
+                if (!pane.isSealed() && pane.heapBytes > 0 && pane.folded == null) {
+                    candidates.add(pane);
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.heapBytes, a.heapBytes));
+        long target = memoryBudgetBytes / 4 * 3;
+        int spilled = 0;
+        for (Pane pane : candidates) {
+            if (heapBytes <= target) {
+                break;
+            }
+            try {
+                spillPane(pane);
+                spilled++;
+            } catch (IOException e) {
+                log.error("Failed to spill window entries to {}; keeping them on the heap from now on", spillPath, e);
+                spillFailed = true;
+                break;
+            }
+        }
+        log.debug("{} spilled {} panes; {} bytes of open panes left on the heap", worker.getName(), spilled, heapBytes);
+    }
+
+    private void spillPane(Pane pane) throws IOException {
+        if (pane.spill == null) {
+            pane.spill = new PaneSpillFile(spillPath());
+            if (Long.bitCount(spilledPanes.incrementAndGet()) == 1) {
+                log.warn("Open windows exceed the memory budget; {} panes spilled to disk so far", spilledPanes.get());
+            }
+        }
+        Map<String, List<ZeekRecord>> entries = new HashMap<>();
+        pane.logEntriesByType.forEach((logType, buffer) -> entries.put(logType, buffer.seal()));
+        try {
+            pane.spill.append(entries);
+        } catch (IOException e) {
+            // Sealed buffers take no more entries; keep the pane's entries on the heap in new ones
+            Map<String, WindowBuffer> buffers = new HashMap<>();
+            entries.forEach((logType, sealed) -> {
+                WindowBuffer buffer = new WindowBuffer();
+                sealed.forEach(buffer::add);
+                buffers.put(logType, buffer);
+            });
+            pane.logEntriesByType = buffers;
+            throw e;
+        }
+        pane.logEntriesByType = new HashMap<>();
+        heapBytes -= pane.heapBytes;
+        pane.heapBytes = 0;
+    }
+
+    private Path spillPath() throws IOException {
+        if (spillPath == null) {
+            if (spillDirectory != null) {
+                Files.createDirectories(spillDirectory);
+            }
+            spillPath = spillDirectory == null
+                    ? Files.createTempDirectory("zeek-pane-spill-")
+                    : Files.createTempDirectory(spillDirectory, "zeek-pane-spill-");
+        }
+        return spillPath;
+    }
+
+    private void deleteSpillPath() {
+        if (spillPath != null) {
+            try {
+                Files.deleteIfExists(spillPath);
+            } catch (IOException e) {
+                log.warn("Failed to delete spill directory {}", spillPath, e);
+            }
+        }
+    }
+
+    /**
+     * Seals a pane, reading back any entries it spilled ahead of the ones still on the heap. Its entries
+     * no longer count against the budget: they belong to windows that are closing.
+     */
+    private void seal(Pane pane) {
+        if (pane.isSealed()) {
+            return;
+        }
+        Map<String, List<ZeekRecord>> sealed = new HashMap<>();
+        if (pane.spill != null) {
+            try {
+                Map<String, List<ZeekRecord>> spilled = pane.spill.readAndDelete();
+                spilled.forEach((logType, entries) -> {
+                    WindowBuffer buffer = new WindowBuffer();
+                    entries.forEach(buffer::add);
+                    WindowBuffer inMemory = pane.logEntriesByType.remove(logType);
+                    if (inMemory != null) {
+                        inMemory.seal().forEach(buffer::add);
+                    }
+                    sealed.put(logType, buffer.seal());
+                });
+            } catch (IOException e) {
+                log.error("Failed to read back {} spilled entries from {}; they are lost",
+                        pane.spill.entries(), pane.spill.path(), e);
+            }
+            pane.spill = null;
+        }
+        pane.logEntriesByType.forEach((logType, entries) -> sealed.put(logType, entries.seal()));
+        // Shared by every window the pane falls into, so no window may change it
+        pane.sealedEntries = Map.copyOf(sealed);
+        pane.joinIndex = UidJoinIndex.of(pane.sealedEntries);
+        pane.logEntriesByType = Map.of();
+        heapBytes -= pane.heapBytes;
+        pane.heapBytes = 0;
+    }
+
+    /**
+     * Performs a binary search to find the pane starting at paneStart or its insertion point.
+     *
+     * @return Index if found, or negative insertion point if not found
+     */
+    private int findPaneIndex(List<Pane> panes, long paneStart) {
+        int low = 0;
+        int high = panes.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1; // Unsigned shift to avoid overflow
+            long midVal = panes.get(mid).paneStart;
+            if (midVal < paneStart) {
+                low = mid + 1;
+            } else if (midVal > paneStart) {
+                high = mid - 1;
+            } else {
+                return mid; // Exact match found
+            }
+        }
+        return -(low + 1); // Return insertion point if no match
+    }
+
+    /**
+     * Flushes every window that ends at or before the watermark, oldest first, then drops the panes
+     * no open window overlaps anymore. Only the keys registered under those window ends are visited.
+     */
+    private void closeWindows(long watermark) {
+        if (watermark <= closedUpTo) {
+            return;
+        }
+        closedUpTo = watermark;
+        Map<Long, Set<WindowTimer>> due = windowTimers.headMap(watermark, true);
+        if (due.isEmpty()) {
+            return;
+        }
+
+        int closed = 0;
+        Set<GroupKey> touched = new HashSet<>();
+        for (Map.Entry<Long, Set<WindowTimer>> timers : due.entrySet()) {
+            for (WindowTimer timer : timers.getValue()) {
+                closed += submitWindow(timer.key(), timer.resolution(), timers.getKey());
+                touched.add(timer.key());
+            }
+        }
+        due.clear();
+        for (GroupKey key : touched) {
+            evictPanes(key, watermark);
+        }
+        log.info("{} closed {} windows at watermark {}", worker.getName(), closed, watermark);
+    }
+
+    /**
+     * Removes the key's panes whose last window ends at or before the watermark, and the key entry if
+     * no panes remain.
+     */
+    private void evictPanes(GroupKey key, long watermark) {
+        List<Pane> panes = connectionPanes.get(key);
+        if (panes == null) {
+            return;
+        }
+        int i = 0;
+        while (i < panes.size() && lastWindowEnd(panes.get(i).paneStart) <= watermark) {
+            i++;
+        }
+        if (i > 0) {
+            panes.subList(0, i).clear();
+        }
+        if (panes.isEmpty()) {
+            connectionPanes.remove(key);
+            if (maxKeys > 0 && !otherKey.equals(key.key())) {
+                keyGovernors.get(key.windowKey()).trackedKeys--;
+            }
+        }
+    }
+
+    private int flushAllWindows() {
+        int flushed = 0;
+        for (Map.Entry<Long, Set<WindowTimer>> timers : windowTimers.entrySet()) {
+            for (WindowTimer timer : timers.getValue()) {
+                flushed += submitWindow(timer.key(), timer.resolution(), timers.getKey());
+            }
+        }
+        connectionPanes.clear();
+        windowTimers.clear();
+        closedUpTo = Long.MIN_VALUE;
+        heapBytes = 0;
+        keyGovernors.clear();
+        return flushed;
+    }
+
+    /**
+     * @return the end of the last window, of any resolution, containing the pane starting at paneStart
+     */
+    private long lastWindowEnd(long paneStart) {
+        long lastEnd = Long.MIN_VALUE;
+        for (WindowResolution resolution : resolutions) {
+            lastEnd = Math.max(lastEnd, resolution.lastWindowEnd(paneStart));
+        }
+        return lastEnd;
+    }
+
+    /**
+     * Seals the panes of the key's window of the given resolution ending at windowEnd and submits their
+     * entries without copying them.
+     *
+     * @return 1 if a window was submitted, 0 if the key has no entries in it
+     */
+    private int submitWindow(GroupKey key, WindowResolution resolution, long windowEnd) {
+        List<Pane> panes = connectionPanes.get(key);
+        if (panes == null) {
+            return 0;
+        }
+        long windowStart = windowEnd - resolution.sizeMs();
+        int first = findPaneIndex(panes, windowStart);
+        if (first < 0) {
+            first = -first - 1;
+        }
+        List<Pane> windowPanes = new ArrayList<>();
+        for (int i = first; i < panes.size() && panes.get(i).paneStart < windowEnd; i++) {
+            Pane pane = panes.get(i);
+            if (!pane.isEmpty()) {
+                seal(pane);
+                windowPanes.add(pane);
+            }
+        }
+        if (windowPanes.isEmpty()) {
+            return 0;
+        }
+        log.debug("Closing {} window for {} (start: {}, panes: {})", resolution.label(), key, windowStart,
+                windowPanes.size());
+        Map<String, Double> sketchFeatures = foldedFeatures(windowPanes);
+        List<FeatureAccumulator<?>> accumulators = windowAccumulators(key.key(), windowPanes);
+
+        if (windowPanes.size() == 1) {
+            Pane pane = windowPanes.get(0);
+            sink.accept(new ZeekLogWindowProcessorService.WindowData(key.windowKey(), resolution, key.key(),
+                    windowStart, pane.sealedEntries, pane.joinIndex, sketchFeatures, accumulators));
+            return 1;
+        }
+        Map<String, List<List<ZeekRecord>>> partsByType = new HashMap<>();
+        List<UidJoinIndex> joinIndexes = new ArrayList<>(windowPanes.size());
+        for (Pane pane : windowPanes) {
+            pane.sealedEntries.forEach((logType, entries) ->
+                    partsByType.computeIfAbsent(logType, k -> new ArrayList<>()).add(entries));
+            joinIndexes.add(pane.joinIndex);
+        }
+        Map<String, List<ZeekRecord>> logEntries = new HashMap<>();
+        partsByType.forEach((logType, parts) -> logEntries.put(logType, WindowBuffer.concat(parts)));
+        sink.accept(new ZeekLogWindowProcessorService.WindowData(key.windowKey(), resolution, key.key(), windowStart,
+                logEntries, UidJoinIndex.union(joinIndexes), sketchFeatures, accumulators));
+        return 1;
+    }
+
+    /**
+     * Merges the accumulators of a window's panes into accumulators of the whole window. A window of a
+     * single pane gets the pane's own accumulators, which no entry reaches once the pane is sealed.
+     *
+     * @return the window's accumulators, in the order of the accumulating extractors; null if its panes
+     * kept every entry instead
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<FeatureAccumulator<?>> windowAccumulators(String key, List<Pane> windowPanes) {
+        if (windowPanes.get(0).accumulators == null) {
+            return null;
+        }
+        if (windowPanes.size() == 1) {
+            return List.of(windowPanes.get(0).accumulators);
+        }
+        List<FeatureAccumulator<?>> accumulators = new ArrayList<>(accumulating.size());
+        for (int i = 0; i < accumulating.size(); i++) {
+            FeatureAccumulator window = accumulating.get(i).newAccumulator(key);
+            for (Pane pane : windowPanes) {
+                window.merge(pane.accumulators[i]);
+            }
+            accumulators.add(window);
+        }
+        return accumulators;
+    }
+
+    /**
+     * Combines the summaries of a window's folded panes into features of the "other" entity: how many
+     * entries were folded, from how many distinct keys, and what fraction the sampled entries are.
+     *
+     * @return the features; empty unless the window belongs to the "other" entity
+     */
+    private static Map<String, Double> foldedFeatures(List<Pane> windowPanes) {
+        HyperLogLog distinctKeys = new HyperLogLog(OTHER_DISTINCT_PRECISION);
+        long folded = 0;
+        long sampled = 0;
+        for (Pane pane : windowPanes) {
+            if (pane.folded != null) {
+                folded += pane.folded.entriesByType.values().stream().mapToLong(Long::longValue).sum();
+                sampled += pane.sealedEntries.values().stream().mapToLong(List::size).sum();
+                distinctKeys.merge(pane.folded.distinctKeys);
+            }
+        }
+        if (folded == 0) {
+            return Map.of();
+        }
+        return Map.of(
+                FeatureConfig.OTHER_ENTRY_COUNT, (double) folded,
+                FeatureConfig.OTHER_DISTINCT_KEYS, (double) distinctKeys.estimate(),
+                FeatureConfig.OTHER_SAMPLE_RATIO, (double) sampled / folded);
+    }
+}
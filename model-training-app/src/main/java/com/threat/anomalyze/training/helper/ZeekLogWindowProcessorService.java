@@ -1,6 +1,12 @@
 package com.threat.anomalyze.training.helper;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.features.FeatureAccumulator;
+import com.threat.anomalyze.commons.features.FeatureConfig;
+import com.threat.anomalyze.commons.features.IFeatureExtractor;
+import com.threat.anomalyze.commons.features.IncrementalFeatureExtractor;
+import com.threat.anomalyze.commons.features.UidJoinIndex;
+import com.threat.anomalyze.commons.parser.record.ConnRecord;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
 import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -8,21 +14,63 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Service to process Zeek log entries by grouping them into time-based windows per source IP.
- * Each window (bucket) contains log entries for a specific time period, and stale windows are
- * periodically flushed to a processing queue.
+ * Service to process Zeek log entries by grouping them into time-based windows per source IP, or per any
+ * other {@link WindowKey}; several keyings can be windowed from a single pass over the logs.
+ * Each window contains log entries for a specific time period. Windows may overlap: with a slide
+ * shorter than the window size, a new window starts every slide, so an attack straddling a window
+ * boundary still falls wholly into some window. Entries are stored once per slide-sized pane and
+ * shared by the windows overlapping it.
+ * <p>
+ * Coarser {@link WindowResolution}s ({@code zeek.window.resolutions.minutes}), such as 5-minute and
+ * hour-long windows, are assembled from the same panes in the same pass, so low-and-slow activity is
+ * profiled next to bursts without reading the logs again. Each resolution has its own feature set.
+ * <p>
+ * Windows close on event time rather than wall-clock time. Each log type tracks the highest timestamp
+ * it has seen; the watermark is the lowest of these across the log types still producing entries, less
+ * the allowed lateness. A window is flushed to the processing queue exactly once, as soon as the
+ * watermark passes its end, and entries that arrive for a window that has already closed are dropped
+ * as late. Open windows are indexed by their end time, so closing them costs time proportional to the
+ * windows that close rather than to every IP being tracked.
+ * <p>
+ * The open windows are split into {@link WindowShard}s by source IP. Each shard is owned by a single
+ * worker thread and fed through a lock-free queue, so the parser threads never contend on a lock while
+ * entries are bucketed, and closing or flushing windows runs inside each shard.
+ * <p>
+ * Closed windows are handed to feature extraction through a bounded {@link WindowHandoff}. With the
+ * blocking policy, a full handoff stalls the shards, whose bounded inboxes in turn stall the parser
+ * threads, so ingestion runs at the speed of extraction instead of buffering without limit.
+ * <p>
+ * Open windows can be held to a heap budget ({@code zeek.window.memory.mb}), split evenly across the
+ * shards; a shard over its share spills the entries of its largest open panes to disk until their
+ * windows close.
+ * <p>
+ * The number of keys with exact windows can be bounded too ({@code zeek.window.max.keys}): beyond it,
+ * only heavy hitters get their own windows, and the long tail, such as the sources of a scan, is folded
+ * into sampled {@link WindowKey#OTHER_KEY} entities per keying.
+ * <p>
+ * With {@code zeek.window.incremental} (the default), the extractors that implement
+ * {@link IncrementalFeatureExtractor} are fed each entry as it is windowed, and a closing window carries
+ * their merged {@link FeatureAccumulator}s instead of the entries they read, so open windows no longer
+ * hold every record until they close. Each pane is accumulated once, however many hopping windows
+ * overlap it. Conn records are still kept while an extractor joins on them, to build the window's
+ * {@link UidJoinIndex}. Turning it off re-runs every extractor over the concatenated entries of each
+ * window, which costs window size / slide times the extraction CPU with hopping windows.
  */
 @Service
 @Slf4j
@@ -31,11 +79,42 @@ public class ZeekLogWindowProcessorService {
     // Configurable window size (default: 1 minute)
     private final long windowSizeMs;
 
-    // Map of source IP to a sorted list of time window buckets
-    private final ConcurrentMap<String, List<WindowBucket>> connectionWindows = new ConcurrentHashMap<>();
+    // How often a new window starts; equal to the window size for tumbling windows. Also the pane length
+    private final long slideMs;
+
+    // Window lengths built from the same panes, the primary one first
+    private final WindowResolution[] resolutions;
+
+    // How entries are grouped into windows; every keying is fed from the same pass over the logs
+    private final WindowKey[] windowKeys;
+
+    // Open windows, partitioned by window key
+    private final WindowShard[] shards;
 
     @Getter
-    private final BlockingQueue<WindowData> processingQueue = new LinkedBlockingQueue<>();
+    private final WindowHandoff processingQueue;
+
+    // Time parser threads spent waiting for room in a shard's inbox
+    private final AtomicLong parserStallNanos = new AtomicLong();
+
+    // Panes whose entries were moved to disk to keep open windows within the memory budget
+    private final AtomicLong spilledPanes = new AtomicLong();
+
+    // Entries of keys beyond the key limit, folded into the "other" entity
+    private final AtomicLong foldedEntries = new AtomicLong();
+
+    // How far the watermark trails the slowest log type, and how long a log type may stay silent
+    // before it stops holding the watermark back
+    private final long allowedLatenessMs;
+    private final long idleTimeoutMs;
+
+    // Log type -> highest event time seen and when it last advanced
+    private final ConcurrentMap<String, EventClock> eventClocks = new ConcurrentHashMap<>();
+
+    // Highest watermark sent to the shards
+    private final AtomicLong watermark = new AtomicLong(Long.MIN_VALUE);
+
+    private final AtomicLong lateEntries = new AtomicLong();
 
     // Flag to prevent processing after shutdown
     private volatile boolean isShuttingDown = false;
@@ -44,150 +123,359 @@ public class ZeekLogWindowProcessorService {
      * Data structure to hold a completed window's data for downstream processing.
      */
     public static class WindowData {
+        // Resolution of windows built without one, such as those of older callers
+        private static final WindowResolution DEFAULT_RESOLUTION =
+                new WindowResolution(FeatureConfig.WINDOW_SIZE_MS, FeatureConfig.WINDOW_SIZE_MS, true);
+
+        // How the window's entries were grouped; ip holds the key under that keying
+        public final WindowKey windowKey;
+        public final WindowResolution resolution;
         public final String ip;
         public final long windowStart;
-        public final Map<String, List<JsonNode>> logEntriesByType;
+        public final Map<String, List<ZeekRecord>> logEntriesByType;
+        // Conn records of the window by UID, shared by every extractor
+        public final UidJoinIndex joinIndex;
+        // Features computed while windowing rather than by the extractors, e.g. for the folded long tail
+        public final Map<String, Double> sketchFeatures;
+        // Accumulated state of the incremental extractors, which were not given the entries; null if
+        // every extractor reads the entries
+        public final List<FeatureAccumulator<?>> accumulators;
+
+        public WindowData(String ip, long windowStart, Map<String, List<ZeekRecord>> logEntriesByType) {
+            this(WindowKey.SOURCE_IP, ip, windowStart, logEntriesByType);
+        }
+
+        public WindowData(WindowKey windowKey, String ip, long windowStart,
+                          Map<String, List<ZeekRecord>> logEntriesByType) {
+            this(windowKey, ip, windowStart, logEntriesByType, UidJoinIndex.of(logEntriesByType));
+        }
 
-        public WindowData(String ip, long windowStart, Map<String, List<JsonNode>> logEntriesByType) {
+        public WindowData(WindowKey windowKey, String ip, long windowStart,
+                          Map<String, List<ZeekRecord>> logEntriesByType, UidJoinIndex joinIndex) {
+            this(windowKey, ip, windowStart, logEntriesByType, joinIndex, Map.of());
+        }
+
+        public WindowData(WindowKey windowKey, String ip, long windowStart,
+                          Map<String, List<ZeekRecord>> logEntriesByType, UidJoinIndex joinIndex,
+                          Map<String, Double> sketchFeatures) {
+            this(windowKey, DEFAULT_RESOLUTION, ip, windowStart, logEntriesByType, joinIndex, sketchFeatures);
+        }
+
+        public WindowData(WindowKey windowKey, WindowResolution resolution, String ip, long windowStart,
+                          Map<String, List<ZeekRecord>> logEntriesByType, UidJoinIndex joinIndex,
+                          Map<String, Double> sketchFeatures) {
+            this(windowKey, resolution, ip, windowStart, logEntriesByType, joinIndex, sketchFeatures, null);
+        }
+
+        public WindowData(WindowKey windowKey, WindowResolution resolution, String ip, long windowStart,
+                          Map<String, List<ZeekRecord>> logEntriesByType, UidJoinIndex joinIndex,
+                          Map<String, Double> sketchFeatures, List<FeatureAccumulator<?>> accumulators) {
+            this.windowKey = windowKey;
+            this.resolution = resolution;
             this.ip = ip;
             this.windowStart = windowStart;
             this.logEntriesByType = logEntriesByType;
+            this.joinIndex = joinIndex;
+            this.sketchFeatures = sketchFeatures;
+            this.accumulators = accumulators;
         }
     }
 
     /**
-     * Represents a time window bucket containing log entries for various log types.
+     * Highest event time seen in one log type.
      */
-    private static class WindowBucket {
-        final long windowStart; // Start time of the window (aligned to windowSizeMs)
-        final long windowSize;  // Duration of the window in milliseconds
-        final Map<String, List<JsonNode>> logEntriesByType = new ConcurrentHashMap<>();
-
-        WindowBucket(long timestamp, long windowSize) {
-            this.windowSize = windowSize;
-            // Align timestamp to the start of the window
-            this.windowStart = timestamp - (timestamp % windowSize);
-        }
-
-        // Check if a timestamp belongs to this window
-        boolean isInWindow(long timestamp) {
-            return timestamp >= windowStart && timestamp < windowStart + windowSize;
-        }
+    private static class EventClock {
+        final AtomicLong maxEventTime = new AtomicLong(Long.MIN_VALUE);
+        volatile long lastAdvanceMillis = System.currentTimeMillis();
+        // Set for log types read to completion, which are never considered idle
+        volatile boolean expected;
+        volatile boolean completed;
     }
 
-    // Constructor to inject configurable window size
+    // Constructor to inject configurable window size, event-time bounds, shards and handoff
     public ZeekLogWindowProcessorService(
-            @Value("${zeek.window.size.minutes:1}") long windowSizeMinutes) {
+            @Value("${zeek.window.size.minutes:1}") long windowSizeMinutes,
+            @Value("${zeek.window.slide.seconds:0}") long slideSeconds,
+            @Value("${zeek.window.resolutions.minutes:}") long[] resolutionMinutes,
+            @Value("${zeek.window.keys:SOURCE_IP}") WindowKey[] windowKeys,
+            @Value("${zeek.window.allowed.lateness.seconds:10}") long allowedLatenessSeconds,
+            @Value("${zeek.window.idle.timeout.seconds:60}") long idleTimeoutSeconds,
+            @Value("${zeek.window.shards:0}") int shardCount,
+            @Value("${zeek.window.shard.inbox.capacity:65536}") int inboxCapacity,
+            @Value("${zeek.window.queue.capacity:1024}") int queueCapacity,
+            @Value("${zeek.window.queue.policy:BLOCK}") WindowHandoff.OverflowPolicy queuePolicy,
+            @Value("${zeek.window.queue.spill.path:}") String spillPath,
+            @Value("${zeek.window.memory.mb:0}") long memoryBudgetMb,
+            @Value("${zeek.window.memory.spill.path:}") String memorySpillPath,
+            @Value("${zeek.window.max.keys:0}") int maxKeys,
+            @Value("${zeek.window.incremental:true}") boolean incremental,
+            List<IFeatureExtractor> featureExtractors) {
         this.windowSizeMs = TimeUnit.MINUTES.toMillis(windowSizeMinutes);
-        log.info("Initialized with window size: {} ms", windowSizeMs);
+        this.windowKeys = windowKeys.length > 0 ? windowKeys.clone() : new WindowKey[]{WindowKey.SOURCE_IP};
+        this.slideMs = slideSeconds > 0 ? TimeUnit.SECONDS.toMillis(slideSeconds) : windowSizeMs;
+        if (slideMs > windowSizeMs || windowSizeMs % slideMs != 0) {
+            throw new IllegalArgumentException("Window slide of " + slideMs + " ms must divide the window size of "
+                    + windowSizeMs + " ms");
+        }
+        this.resolutions = resolutionsOf(windowSizeMs, slideMs, resolutionMinutes);
+        this.allowedLatenessMs = TimeUnit.SECONDS.toMillis(allowedLatenessSeconds);
+        this.idleTimeoutMs = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        this.processingQueue = new WindowHandoff(queueCapacity, queuePolicy,
+                spillPath.isBlank() ? null : Paths.get(spillPath));
+        this.shards = new WindowShard[shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors()];
+        // Each shard governs an equal share of the budget on its own, so no shard waits on another
+        long shardBudgetBytes = memoryBudgetMb * 1024 * 1024 / shards.length;
+        Path paneSpillDirectory = memorySpillPath.isBlank() ? null : Paths.get(memorySpillPath);
+        // Keys are spread evenly by hash, so each shard admits its share of the limit
+        int shardMaxKeys = maxKeys > 0 ? Math.max(1, maxKeys / shards.length) : 0;
+        // Panes keep the entries of the log types that extractors without accumulators still read, and
+        // the conn records the join index is built from
+        List<IncrementalFeatureExtractor<?>> accumulating = new ArrayList<>();
+        Set<String> retainedLogTypes = new HashSet<>();
+        if (incremental) {
+            for (IFeatureExtractor extractor : featureExtractors) {
+                if (extractor instanceof IncrementalFeatureExtractor<?> incrementalExtractor) {
+                    accumulating.add(incrementalExtractor);
+                } else {
+                    retainedLogTypes.addAll(extractor.requiredFields().keySet());
+                }
+                if (extractor.joinsConn()) {
+                    retainedLogTypes.add(ConnRecord.LOG_TYPE);
+                }
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new WindowShard(i, slideMs, resolutions, processingQueue::submit, lateEntries,
+                    inboxCapacity, parserStallNanos, shardBudgetBytes, paneSpillDirectory, spilledPanes,
+                    shardMaxKeys, foldedEntries, accumulating, retainedLogTypes);
+        }
+        log.info("Initialized with window size: {} ms, slide: {} ms, resolutions: {}, keys: {}, "
+                        + "allowed lateness: {} ms, idle timeout: {} ms, shards: {}, memory budget: {}, key limit: {}, "
+                        + "incremental extractors: {}, queue: {} windows ({})",
+                windowSizeMs, slideMs, getResolutions().stream().map(WindowResolution::label).toList(),
+                Arrays.toString(this.windowKeys), allowedLatenessMs, idleTimeoutMs,
+                shards.length, memoryBudgetMb > 0 ? memoryBudgetMb + " MB" : "unlimited",
+                maxKeys > 0 ? maxKeys : "unlimited", accumulating.size(), queueCapacity, queuePolicy);
+    }
+
+    /**
+     * Builds the primary resolution and the coarser ones, which tumble. Every window length must be a
+     * multiple of the slide, the pane length they are all assembled from.
+     */
+    private static WindowResolution[] resolutionsOf(long windowSizeMs, long slideMs, long[] resolutionMinutes) {
+        List<WindowResolution> resolutions = new ArrayList<>();
+        resolutions.add(new WindowResolution(windowSizeMs, slideMs, true));
+        Arrays.stream(resolutionMinutes).map(TimeUnit.MINUTES::toMillis).sorted().distinct()
+                .filter(sizeMs -> sizeMs != windowSizeMs)
+                .forEach(sizeMs -> {
+                    if (sizeMs <= 0 || sizeMs % slideMs != 0) {
+                        throw new IllegalArgumentException("Window resolution of " + sizeMs
+                                + " ms must be a positive multiple of the window slide of " + slideMs + " ms");
+                    }
+                    resolutions.add(new WindowResolution(sizeMs, sizeMs, false));
+                });
+        return resolutions.toArray(new WindowResolution[0]);
+    }
+
+    /**
+     * @return the window resolutions, the primary one first
+     */
+    public List<WindowResolution> getResolutions() {
+        return List.of(resolutions);
     }
 
     /**
      * Processes a batch of log entries for a given log type by delegating to processSingleEntry.
      *
-     * @param logType   The type of log (e.g., "conn", "dns")
-     * @param jsonNodes List of log entries in JSON format
+     * @param logType The type of log (e.g., "conn", "dns")
+     * @param entries List of parsed log entries
      */
-    public void processLogEntries(String logType, List<JsonNode> jsonNodes) {
+    public void processLogEntries(String logType, List<? extends ZeekRecord> entries) {
         if (isShuttingDown) {
             log.warn("Ignoring batch of {} entries for log type {}: service is shutting down",
-                    jsonNodes.size(), logType);
+                    entries.size(), logType);
             return;
         }
-        log.info("Processing batch of {} log entries for log type {}", jsonNodes.size(), logType);
-        jsonNodes.forEach(entry -> processSingleEntry(logType, entry));
+        log.info("Processing batch of {} log entries for log type {}", entries.size(), logType);
+        entries.forEach(entry -> processSingleEntry(logType, entry));
+    }
+
+    /**
+     * Processes a single log entry as it is streamed from the parser.
+     *
+     * @param logType The type of log (e.g., "conn", "dns")
+     * @param entry   The parsed log entry
+     */
+    public void processLogEntry(String logType, ZeekRecord entry) {
+        processSingleEntry(logType, entry);
     }
 
     /**
-     * Processes a single log entry, placing it into the appropriate time window bucket for its source IP.
+     * Processes a single log entry, handing it under every keying to the shard that owns the windows of
+     * its key. Keyings the entry has no key for, such as a missing responder, skip it.
      *
      * @param logType The type of log
-     * @param entry   The log entry as a JSON node
+     * @param entry   The parsed log entry
      */
-    private void processSingleEntry(String logType, JsonNode entry) {
+    private void processSingleEntry(String logType, ZeekRecord entry) {
         if (isShuttingDown) {
             log.debug("Skipping entry processing: service is shutting down");
             return;
         }
+        if (entry.origH().isEmpty() || Double.isNaN(entry.ts())) {
+            log.error("Invalid log entry format: {}", entry);
+            throw new LogProcessingException("Missing required fields in log entry");
+        }
         try {
-            String sourceIp = entry.get("id.orig_h").asText();
-            long entryTime = (long) (entry.get("ts").asDouble() * 1000);
+            long entryTime = (long) (entry.ts() * 1000);
             log.debug("Processing entry from IP {} at timestamp {} for log type {}",
-                    sourceIp, entryTime, logType);
-
-            // Atomically update or create the bucket list for this IP
-            connectionWindows.compute(sourceIp, (ip, buckets) -> {
-                if (buckets == null) {
-                    log.info("Initializing bucket list for IP: {}", ip);
-                    buckets = new ArrayList<>();
-                    WindowBucket newBucket = createNewBucket(entryTime);
-                    buckets.add(newBucket);
-                    addEntryToBucket(newBucket, logType, entry);
-                    return buckets;
-                }
-
-                // Align entry time to the start of its window
-                long windowStart = entryTime - (entryTime % windowSizeMs);
-
-                // Locate or create the bucket for this window
-                int index = findBucketIndex(buckets, windowStart);
-                WindowBucket targetBucket;
-                if (index >= 0) {
-                    // Existing bucket found
-                    targetBucket = buckets.get(index);
-                } else {
-                    // Create and insert a new bucket at the correct position
-                    int insertionPoint = -index - 1;
-                    targetBucket = new WindowBucket(windowStart, windowSizeMs);
-                    buckets.add(insertionPoint, targetBucket);
-                    log.info("Added new window bucket for IP {} at start time {}", ip, windowStart);
+                    entry.origH(), entryTime, logType);
+            for (WindowKey windowKey : windowKeys) {
+                String key = windowKey.keyOf(entry);
+                if (!key.isEmpty()) {
+                    shardFor(key).append(windowKey, key, logType, entry);
                 }
-
-                // Add the entry to the selected bucket
-                addEntryToBucket(targetBucket, logType, entry);
-                return buckets;
-            });
-        } catch (NullPointerException e) {
-            log.error("Invalid log entry format: {}", entry, e);
-            throw new LogProcessingException("Missing required fields in log entry", e);
+            }
+            advanceEventTime(logType, entryTime);
         } catch (Exception e) {
             log.error("Failed to process log entry: {}", entry, e);
             throw new LogProcessingException("Error processing log entry", e);
         }
     }
 
+    private WindowShard shardFor(String key) {
+        int hash = key.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
     /**
-     * Adds a log entry to a bucket's log type map in a thread-safe manner.
+     * Moves a log type's event time forward. The watermark is only recomputed when the log type enters
+     * a new pane, since windows cannot close in between.
      */
-    private void addEntryToBucket(WindowBucket bucket, String logType, JsonNode entry) {
-        bucket.logEntriesByType.computeIfAbsent(logType, k -> new CopyOnWriteArrayList<>()).add(entry);
-        log.debug("Added entry to bucket at {} for log type {}", bucket.windowStart, logType);
+    private void advanceEventTime(String logType, long entryTime) {
+        EventClock clock = eventClocks.computeIfAbsent(logType, k -> new EventClock());
+        long previous = clock.maxEventTime.getAndAccumulate(entryTime, Math::max);
+        if (entryTime > previous) {
+            clock.lastAdvanceMillis = System.currentTimeMillis();
+            if (previous == Long.MIN_VALUE || entryTime / slideMs != previous / slideMs) {
+                closeWindows(currentWatermark());
+            }
+        }
     }
 
     /**
-     * Performs a binary search to find the bucket matching windowStart or its insertion point.
-     *
-     * @return Index if found, or negative insertion point if not found
+     * Registers log types that are about to be read to completion, such as the files of a batch run.
+     * Until each is marked with {@link #completeLogType(String)}, it holds the watermark back, even
+     * before its first entry and however long it stays idle, so no window closes before every log
+     * type has caught up with it.
      */
-    private int findBucketIndex(List<WindowBucket> buckets, long windowStart) {
-        int low = 0;
-        int high = buckets.size() - 1;
-        while (low <= high) {
-            int mid = (low + high) >>> 1; // Unsigned shift to avoid overflow
-            long midVal = buckets.get(mid).windowStart;
-            if (midVal < windowStart) {
-                low = mid + 1;
-            } else if (midVal > windowStart) {
-                high = mid - 1;
-            } else {
-                return mid; // Exact match found
+    public void expectLogTypes(Collection<String> logTypes) {
+        for (String logType : logTypes) {
+            eventClocks.computeIfAbsent(logType, k -> new EventClock()).expected = true;
+        }
+    }
+
+    /**
+     * Marks a log type as finished, e.g. when its file has been read to the end, so it no longer
+     * holds the watermark back.
+     */
+    public void completeLogType(String logType) {
+        EventClock clock = eventClocks.get(logType);
+        if (clock != null) {
+            clock.completed = true;
+            closeWindows(currentWatermark());
+        }
+    }
+
+    /**
+     * @return the total time parser threads waited for the window shards to catch up, in milliseconds
+     */
+    public long getParserStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(parserStallNanos.get());
+    }
+
+    /**
+     * @return the number of panes whose entries were spilled to disk to stay within the memory budget
+     */
+    public long getSpilledPaneCount() {
+        return spilledPanes.get();
+    }
+
+    /**
+     * @return the number of entries folded into the "other" entity because their key was beyond the key limit
+     */
+    public long getFoldedEntryCount() {
+        return foldedEntries.get();
+    }
+
+    /**
+     * @return the number of entries dropped because their window had already closed
+     */
+    public long getLateEntryCount() {
+        return lateEntries.get();
+    }
+
+    /**
+     * @return the event time at or before which every window has been closed and handed to the
+     *         processing queue by all shards
+     */
+    public long getHandedOverWatermark() {
+        long handedOver = Long.MAX_VALUE;
+        for (WindowShard shard : shards) {
+            handedOver = Math.min(handedOver, shard.handedOverUpTo());
+        }
+        return handedOver;
+    }
+
+    /**
+     * @return the watermark at which the last window, of any resolution, containing an entry with the
+     *         given event time closes
+     */
+    public long closingWatermark(long eventTimeMs) {
+        long paneStart = Math.floorDiv(eventTimeMs, slideMs) * slideMs;
+        long lastEnd = Long.MIN_VALUE;
+        for (WindowResolution resolution : resolutions) {
+            lastEnd = Math.max(lastEnd, resolution.lastWindowEnd(paneStart));
+        }
+        return lastEnd;
+    }
+
+    /**
+     * Computes the watermark: the lowest event time among log types that are still active, less the
+     * allowed lateness. Log types that completed, or that were not expected and stayed idle longer than
+     * the idle timeout, are ignored; if none is active, the highest event time seen is used.
+     */
+    private long currentWatermark() {
+        long now = System.currentTimeMillis();
+        long minActive = Long.MAX_VALUE;
+        long maxSeen = Long.MIN_VALUE;
+        for (EventClock clock : eventClocks.values()) {
+            long eventTime = clock.maxEventTime.get();
+            maxSeen = Math.max(maxSeen, eventTime);
+            if (!clock.completed && (clock.expected || now - clock.lastAdvanceMillis < idleTimeoutMs)) {
+                minActive = Math.min(minActive, eventTime);
             }
         }
-        return -(low + 1); // Return insertion point if no match
+        long eventTime = minActive != Long.MAX_VALUE ? minActive : maxSeen;
+        return eventTime == Long.MIN_VALUE ? Long.MIN_VALUE : eventTime - allowedLatenessMs;
     }
 
     /**
-     * Periodically flushes windows older than the window size to the processing queue.
+     * Tells every shard to close the windows that end at or before the watermark, if it has advanced.
+     */
+    private void closeWindows(long newWatermark) {
+        long previous = watermark.getAndAccumulate(newWatermark, Math::max);
+        if (newWatermark > previous) {
+            log.debug("Watermark advanced to {}", newWatermark);
+            for (WindowShard shard : shards) {
+                shard.close(newWatermark);
+            }
+        }
+    }
+
+    /**
+     * Periodically re-evaluates the watermark so that windows close even when a log type goes quiet
+     * and no new entries advance it.
      */
     @Scheduled(fixedRateString = "${zeek.flush.rate.seconds:30}000")
     public void flushStaleWindows() {
@@ -195,48 +483,27 @@ public class ZeekLogWindowProcessorService {
             log.info("Skipping stale window flush: service is shutting down");
             return;
         }
-        log.info("Starting stale window cleanup");
-        long cutoff = System.currentTimeMillis() - windowSizeMs;
-        connectionWindows.forEach((ip, buckets) -> {
-            connectionWindows.compute(ip, (k, v) -> {
-                if (v == null) return null;
-                int i = 0;
-                // Identify and process all stale buckets
-                while (i < v.size() && v.get(i).windowStart + v.get(i).windowSize < cutoff) {
-                    WindowBucket staleBucket = v.get(i);
-                    if (!staleBucket.logEntriesByType.isEmpty()) {
-                        log.info("Flushing stale window for IP {} (start: {}, log types: {})",
-                                ip, staleBucket.windowStart, staleBucket.logEntriesByType.keySet());
-                        submitWindow(ip, staleBucket);
-                    }
-                    i++;
-                }
-                // Remove processed stale buckets
-                if (i > 0) {
-                    v.subList(0, i).clear();
-                }
-                // Remove the IP entry if no buckets remain
-                return v.isEmpty() ? null : v;
-            });
-        });
-        log.info("Completed stale window cleanup");
+        closeWindows(currentWatermark());
     }
 
     /**
-     * Flushes all current windows to the processing queue, typically before shutdown.
+     * Flushes all current windows to the processing queue at the end of a stream, typically after a
+     * batch of logs has been read or before shutdown. Waits until every entry handed over so far has
+     * been bucketed and flushed. Event-time tracking starts over, so the next stream may begin at any
+     * timestamp.
      */
     public void flushAllWindows() {
         log.info("Flushing all current windows");
-        connectionWindows.forEach((ip, buckets) -> {
-            connectionWindows.compute(ip, (k, v) -> {
-                if (v != null) {
-                    v.forEach(bucket -> submitWindow(ip, bucket));
-                    v.clear();
-                }
-                return null; // Clear the IP entry after flushing
-            });
-        });
-        log.info("All windows flushed. Queue size: {}", processingQueue.size());
+        eventClocks.clear();
+        watermark.set(Long.MIN_VALUE);
+        CompletableFuture<?>[] flushes = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            flushes[i] = shards[i].flushAll();
+        }
+        CompletableFuture.allOf(flushes).join();
+        log.info("All windows flushed. Queue: {}, late entries dropped: {}, parser stall: {} ms, panes spilled: {}, "
+                        + "entries folded: {}",
+                processingQueue, lateEntries.get(), getParserStallMillis(), spilledPanes.get(), foldedEntries.get());
     }
 
     /**
@@ -246,45 +513,24 @@ public class ZeekLogWindowProcessorService {
     public void shutdown() {
         log.info("Shutting down window processor. Cleaning up resources.");
         isShuttingDown = true;
-        flushAllWindows(); // Ensure all data is processed before clearing
-        processingQueue.clear();
-        connectionWindows.clear();
-        log.info("Shutdown complete. Queue size: {}, IP windows: {}",
-                processingQueue.size(), connectionWindows.size());
-    }
-
-    /**
-     * Creates a new window bucket aligned to the given timestamp.
-     */
-    private WindowBucket createNewBucket(long timestamp) {
-        WindowBucket bucket = new WindowBucket(timestamp, windowSizeMs);
-        log.debug("Created new window bucket starting at {}", bucket.windowStart);
-        return bucket;
-    }
-
-    /**
-     * Submits a window bucket's data to the processing queue with a copy of its entries.
-     */
-    private void submitWindow(String ip, WindowBucket bucket) {
-        Map<String, List<JsonNode>> logEntriesCopy = new HashMap<>();
-        bucket.logEntriesByType.forEach((logType, entries) -> {
-            logEntriesCopy.put(logType, List.copyOf(entries)); // Immutable copy for thread safety
-        });
-        WindowData windowData = new WindowData(ip, bucket.windowStart, logEntriesCopy);
-        if (processingQueue.offer(windowData)) {
-            log.info("Submitted window for IP {} with log types {} (start: {})",
-                    ip, logEntriesCopy.keySet(), bucket.windowStart);
-        } else {
-            log.error("Failed to submit window for IP {}: processing queue is full", ip);
+        processingQueue.close(); // Nothing extracts windows anymore; release shards blocked on it
+        flushAllWindows();
+        for (WindowShard shard : shards) {
+            shard.stop();
         }
+        log.info("Shutdown complete. Queue size: {}", processingQueue.size());
     }
 
     /**
      * Custom exception for log processing failures.
      */
     public static class LogProcessingException extends RuntimeException {
+        public LogProcessingException(String message) {
+            super(message);
+        }
+
         public LogProcessingException(String message, Throwable cause) {
             super(message, cause);
         }
     }
-}
\ No newline at end of file
+}
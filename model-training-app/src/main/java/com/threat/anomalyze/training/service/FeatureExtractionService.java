@@ -1,22 +1,35 @@
 package com.threat.anomalyze.training.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.threat.anomalyze.commons.features.FeatureAccumulator;
 import com.threat.anomalyze.commons.features.FeatureAggregator;
 import com.threat.anomalyze.commons.features.IFeatureExtractor;
+import com.threat.anomalyze.commons.features.IncrementalFeatureExtractor;
 import com.threat.anomalyze.commons.parser.LogParser;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.training.helper.WindowHandoff;
+import com.threat.anomalyze.training.helper.WindowKey;
+import com.threat.anomalyze.training.helper.WindowResolution;
 import com.threat.anomalyze.training.helper.ZeekLogWindowProcessorService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Service to extract features from Zeek log files for anomaly detection.
@@ -25,7 +38,25 @@ import java.util.concurrent.Executors;
 @Slf4j
 public class FeatureExtractionService {
 
-    private static final List<String> LOG_TYPES = List.of("conn", "http", "dns", "ssl", "files", "notice", "auth", "ssh");
+    static final List<String> LOG_TYPES = List.of("conn", "http", "dns", "ssl", "files", "notice", "auth", "ssh");
+
+    // Threads used to parse a single large log file in newline-aligned chunks
+    private static final int PARSER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Closed windows taken from the window processor per extraction batch, and how long to wait for one
+    private static final int EXTRACTION_BATCH_WINDOWS = 256;
+    private static final long EXTRACTION_POLL_MS = 200;
+
+    // Heap each log type may use to buffer lines while sorting by timestamp before spilling to disk
+    @Value("${zeek.sort.memory.mb:128}")
+    private long sortMemoryMb;
+
+    // Directory of the binary record cache reused by later runs; empty disables caching
+    @Value("${zeek.cache.path:zeek-record-cache}")
+    private String cachePath;
+
+    // System.nanoTime() before which every window handed over has been extracted, while extractWhile runs
+    private final AtomicLong extractedThroughNanos = new AtomicLong(System.nanoTime());
 
     @Autowired
     private LogParser logParser;
@@ -49,13 +80,133 @@ public class FeatureExtractionService {
     public Map<String, Map<Long, Map<String, Double>>> retrieveFeatures(String logPath) throws Exception {
         featureAggregator.clear();
 
-        processLogFilesInParallel(logPath);
-        List<ZeekLogWindowProcessorService.WindowData> processedWindows = flushAndCollectWindows(logPath);
-        extractFeaturesFromWindows(processedWindows);
+        zeekLogWindowProcessorService.expectLogTypes(LOG_TYPES);
+        int windows = extractWhile(() -> {
+            processLogFilesInParallel(logPath);
+            zeekLogWindowProcessorService.flushAllWindows();
+        });
+        if (windows == 0) {
+            log.warn("No processed windows available from logs at {}.", logPath);
+        }
 
         return featureAggregator.getFeatureStore();
     }
 
+    /**
+     * Returns the features of the last extraction for windows grouped by the given key, such as
+     * destination IP, if that keying is configured in {@code zeek.window.keys}. {@link #retrieveFeatures}
+     * returns those of {@link WindowKey#SOURCE_IP}.
+     *
+     * @return A map of features: Key → Window Start → Feature Name → Value.
+     */
+    public Map<String, Map<Long, Map<String, Double>>> getFeatures(WindowKey windowKey) {
+        return featureAggregator.getFeatureStore(windowKey.namespace());
+    }
+
+    /**
+     * Returns the features of the last extraction for windows of one resolution, such as the hour-long
+     * windows of {@code zeek.window.resolutions.minutes}, grouped by the given key.
+     *
+     * @return A map of features: Key → Window Start → Feature Name → Value.
+     */
+    public Map<String, Map<Long, Map<String, Double>>> getFeatures(WindowKey windowKey, WindowResolution resolution) {
+        return featureAggregator.getFeatureStore(resolution.namespace(windowKey));
+    }
+
+    /**
+     * @return the window resolutions features are extracted at, the primary one first
+     */
+    public List<WindowResolution> getResolutions() {
+        return zeekLogWindowProcessorService.getResolutions();
+    }
+
+    /**
+     * Feeds log entries to the window processor, e.g. by parsing files or following live logs.
+     */
+    @FunctionalInterface
+    public interface WindowProducer {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the producer on the calling thread while the windows it closes are extracted on other
+     * threads as they arrive. Because extraction keeps draining the bounded window handoff, a full
+     * handoff slows the producer down instead of blocking it for good. Returns once the producer has
+     * finished and every window handed over by then has been extracted. A failed extraction batch
+     * does not stop the draining, so the producer is never blocked by it, but fails the call once the
+     * producer has finished.
+     *
+     * @param producer feeds entries to the window processor
+     * @return the number of windows extracted
+     * @throws Exception if the producer fails, or the first extraction failure if a batch failed
+     */
+    public int extractWhile(WindowProducer producer) throws Exception {
+        extractedThroughNanos.set(System.nanoTime());
+        AtomicBoolean producing = new AtomicBoolean(true);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService extractionExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ExecutorService drainer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> extraction = drainer.submit(() -> drainWindows(producing, failure, extractionExecutor));
+            try {
+                producer.run();
+            } finally {
+                producing.set(false);
+            }
+            int windows = extraction.get();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return windows;
+        } finally {
+            drainer.shutdownNow();
+            extractionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Tells when extraction last caught up with the window handoff during {@link #extractWhile}: every
+     * window handed over before the returned {@link System#nanoTime()} has been extracted. It stops
+     * moving once an extraction batch has failed.
+     *
+     * @return a {@link System#nanoTime()} value
+     */
+    public long getExtractedThroughNanos() {
+        return extractedThroughNanos.get();
+    }
+
+    private int drainWindows(AtomicBoolean producing, AtomicReference<RuntimeException> failure,
+                             ExecutorService executor) throws InterruptedException {
+        WindowHandoff handoff = zeekLogWindowProcessorService.getProcessingQueue();
+        int windows = 0;
+        while (true) {
+            // Read before polling: once the producer has finished, an empty poll means nothing is left
+            boolean finished = !producing.get();
+            long polledAt = System.nanoTime();
+            List<ZeekLogWindowProcessorService.WindowData> batch =
+                    handoff.poll(EXTRACTION_BATCH_WINDOWS, EXTRACTION_POLL_MS, TimeUnit.MILLISECONDS);
+            if (batch.isEmpty()) {
+                // Every earlier batch is done and nothing handed over before the poll is left
+                if (failure.get() == null) {
+                    extractedThroughNanos.set(polledAt);
+                }
+                if (finished) {
+                    log.info("Extracted features from {} windows. Window handoff: {}", windows, handoff);
+                    return windows;
+                }
+                continue;
+            }
+            try {
+                extractFeaturesFromWindows(batch, executor);
+                windows += batch.size();
+            } catch (RuntimeException e) {
+                // Keep draining, or a full handoff would block the producer forever; extractWhile rethrows
+                log.error("Feature extraction failed for a batch of {} windows", batch.size(), e);
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
     private void processLogFilesInParallel(String logPath) {
         ExecutorService executor = Executors.newFixedThreadPool(LOG_TYPES.size());
         try {
@@ -69,53 +220,81 @@ public class FeatureExtractionService {
     }
 
     private void processLogType(String logPath, String logType) {
-        String logFilePath = Paths.get(logPath, logType + "_sorted.log").toString();
-        if (Files.exists(Paths.get(logFilePath))) {
-            try {
-                List<JsonNode> logs = logParser.parseLogFile(logFilePath);
-                log.info("Parsed {} {} log entries from {}.", logs.size(), logType, logFilePath);
-                zeekLogWindowProcessorService.processLogEntries(logType, logs);
-            } catch (Exception e) {
-                log.error("Failed to process log type {}: {}", logType, e.getMessage(), e);
+        Path sortedFile = Paths.get(logPath, logType + "_sorted.log");
+        Consumer<ZeekRecord> consumer = entry -> zeekLogWindowProcessorService.processLogEntry(logType, entry);
+        try {
+            if (Files.exists(sortedFile)) {
+                long count = streamCached(List.of(sortedFile), logType, records ->
+                        logParser.streamLogFileParallel(sortedFile.toString(), logType, PARSER_PARALLELISM, records),
+                        consumer);
+                log.info("Parsed {} {} log entries from {}.", count, logType, sortedFile);
+                return;
+            }
+
+            // No pre-sorted file: sort Zeek's raw log and rotated segments (plain or gzipped) on the fly
+            List<Path> segments = logParser.findLogSegments(logPath, logType);
+            if (segments.isEmpty()) {
+                log.info("Log file not found: {}. Skipping.", sortedFile);
+                return;
             }
-        } else {
-            log.info("Log file not found: {}. Skipping.", logFilePath);
+            long count = streamCached(segments, logType, records ->
+                    logParser.streamLogFilesSorted(segments, logType, sortMemoryMb * 1024 * 1024, records),
+                    consumer);
+            log.info("Sorted and parsed {} {} log entries from {} files in {}.", count, logType, segments.size(), logPath);
+        } catch (Exception e) {
+            log.error("Failed to process log type {}: {}", logType, e.getMessage(), e);
+        } finally {
+            zeekLogWindowProcessorService.completeLogType(logType);
         }
     }
 
-    private List<ZeekLogWindowProcessorService.WindowData> flushAndCollectWindows(String logPath) {
-        zeekLogWindowProcessorService.flushAllWindows();
-        List<ZeekLogWindowProcessorService.WindowData> processedWindows = new ArrayList<>();
-        zeekLogWindowProcessorService.getProcessingQueue().drainTo(processedWindows);
-
-        if (processedWindows.isEmpty()) {
-            log.warn("No processed windows available from logs at {}.", logPath);
+    private long streamCached(List<Path> files, String logType, LogParser.RecordSource source,
+                              Consumer<ZeekRecord> consumer) throws IOException {
+        if (cachePath.isBlank()) {
+            return source.stream(consumer);
         }
-        return processedWindows;
+        return logParser.streamLogFilesCached(files, logType, Paths.get(cachePath), source, consumer);
     }
 
-    private void extractFeaturesFromWindows(List<ZeekLogWindowProcessorService.WindowData> processedWindows) {
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        try {
-            List<CompletableFuture<Void>> futures = processedWindows.stream()
-                    .map(windowData -> CompletableFuture.runAsync(() -> {
-                        String ip = windowData.ip;
-                        long windowStart = windowData.windowStart;
-                        Map<String, List<JsonNode>> logEntriesByType = windowData.logEntriesByType;
+    private void extractFeaturesFromWindows(List<ZeekLogWindowProcessorService.WindowData> processedWindows,
+                                            ExecutorService executor) {
+        List<CompletableFuture<Void>> futures = processedWindows.stream()
+                .map(windowData -> CompletableFuture.runAsync(() -> {
+                    String ip = windowData.ip;
+                    long windowStart = windowData.windowStart;
+                    Map<String, List<ZeekRecord>> logEntriesByType = windowData.logEntriesByType;
+                    WindowResolution resolution = windowData.resolution;
+                    featureAggregator.inWindow(resolution.namespace(windowData.windowKey), resolution.sizeMs(), () -> {
+                        // Incremental extractors already folded the window's entries into its accumulators
+                        boolean accumulated = windowData.accumulators != null;
                         for (IFeatureExtractor extractor : featureExtractors) {
+                            if (accumulated && extractor instanceof IncrementalFeatureExtractor) {
+                                continue;
+                            }
                             try {
-                                extractor.extractFeatures(ip, windowStart, logEntriesByType);
+                                extractor.extractFeatures(ip, windowStart, logEntriesByType, windowData.joinIndex);
                             } catch (Exception e) {
-                                log.error("Failed to extract features for IP: {} in window: {}", ip, windowStart, e);
+                                log.error("Failed to extract features for {} {} in {} window: {}",
+                                        windowData.windowKey, ip, resolution.label(), windowStart, e);
                                 throw new RuntimeException(e);
                             }
                         }
-                    }, executor))
-                    .toList();
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        } finally {
-            executor.shutdown();
-        }
-        log.info("Completed feature extraction for {} windows.", processedWindows.size());
+                        if (accumulated) {
+                            for (FeatureAccumulator<?> accumulator : windowData.accumulators) {
+                                Map<String, Double> features = accumulator.features(resolution.sizeMs() / 1000.0,
+                                        windowData.joinIndex);
+                                if (!features.isEmpty()) {
+                                    featureAggregator.addFeatures(ip, windowStart, features);
+                                }
+                            }
+                        }
+                        if (!windowData.sketchFeatures.isEmpty()) {
+                            featureAggregator.addFeatures(ip, windowStart, windowData.sketchFeatures);
+                        }
+                    });
+                }, executor))
+                .toList();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        log.debug("Completed feature extraction for {} windows.", processedWindows.size());
     }
 }
\ No newline at end of file
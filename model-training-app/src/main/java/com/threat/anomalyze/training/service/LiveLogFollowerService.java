@@ -0,0 +1,267 @@
+package com.threat.anomalyze.training.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.threat.anomalyze.commons.parser.LogParser;
+import com.threat.anomalyze.commons.parser.ZeekLogTail;
+import com.threat.anomalyze.commons.parser.record.ZeekRecord;
+import com.threat.anomalyze.training.helper.ZeekLogWindowProcessorService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a live Zeek log directory and feeds new entries to the window processor as Zeek writes them.
+ * Every log type's current file (e.g. {@code conn.log}) is tailed incrementally; a {@link WatchService}
+ * wakes the follower as soon as a file changes, with a periodic poll as a fallback for file systems
+ * that do not report changes. Rotations are followed, and the byte offset reached in each file is
+ * checkpointed so a restart resumes where the previous run stopped, finishing a file rotated in between
+ * first. Offsets are only checkpointed once every window containing the entries read up to them has
+ * been extracted, so a restart re-reads the entries of windows that were still open or queued.
+ */
+@Service
+@Slf4j
+public class LiveLogFollowerService {
+
+    // Entries handed to the window processor per call
+    private static final int BATCH_SIZE = 1000;
+
+    @Value("${zeek.follow.path:${zeek.log.path}}")
+    private String followPath;
+
+    @Value("${zeek.follow.checkpoint.file:zeek-follow-offsets.json}")
+    private String checkpointFile;
+
+    @Value("${zeek.follow.poll.ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${zeek.follow.flush.seconds:5}")
+    private long flushIntervalSeconds;
+
+    @Autowired
+    private LogParser logParser;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ZeekLogWindowProcessorService zeekLogWindowProcessorService;
+
+    @Autowired
+    private FeatureExtractionService featureExtractionService;
+
+    private volatile boolean running;
+
+    // Owned by the follower thread
+    // Positions read so far, oldest first, waiting for their windows to be extracted
+    private final Deque<PendingCheckpoint> pendingCheckpoints = new ArrayDeque<>();
+    // Highest event time read so far
+    private long maxEventTimeMs;
+
+    /**
+     * Byte offset reached in one log file, persisted between runs.
+     */
+    public record Checkpoint(String fileId, long offset) {
+    }
+
+    /**
+     * Positions reached in every log, saved once the windows of the entries read up to them are extracted.
+     */
+    private static final class PendingCheckpoint {
+        private final Map<String, Checkpoint> checkpoints;
+        // Watermark at which the last window containing any of those entries closes
+        private final long closingWatermark;
+        // System.nanoTime() once all those windows had been handed over, or null while some are open
+        private Long handedOverAt;
+
+        PendingCheckpoint(Map<String, Checkpoint> checkpoints, long closingWatermark) {
+            this.checkpoints = checkpoints;
+            this.closingWatermark = closingWatermark;
+        }
+    }
+
+    /**
+     * Follows the log directory until {@link #stop()} is called or the thread is interrupted. Closed
+     * windows are extracted on other threads while the logs are being followed.
+     *
+     * @throws Exception if the directory cannot be watched or extracting a window failed
+     */
+    public void follow() throws Exception {
+        pendingCheckpoints.clear();
+        maxEventTimeMs = Long.MIN_VALUE;
+        featureExtractionService.extractWhile(this::followLogs);
+        // Every window handed over has been extracted by now
+        commitCheckpoints();
+    }
+
+    private void followLogs() throws IOException {
+        Path directory = Paths.get(followPath);
+        Map<String, Checkpoint> checkpoints = loadCheckpoints();
+        Map<String, ZeekLogTail> tails = new LinkedHashMap<>();
+        for (String logType : FeatureExtractionService.LOG_TYPES) {
+            Checkpoint checkpoint = checkpoints.getOrDefault(logType, new Checkpoint(null, 0));
+            tails.put(logType, logParser.tail(directory.resolve(logType + ".log"), logType,
+                    checkpoint.fileId(), checkpoint.offset()));
+        }
+
+        running = true;
+        log.info("Following Zeek logs in {} (checkpoints: {})", directory, checkpointFile);
+        long lastFlush = System.currentTimeMillis();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (running) {
+                long count = pollTails(tails);
+                if (count > 0) {
+                    addPendingCheckpoint(tails);
+                }
+                commitCheckpoints();
+
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= TimeUnit.SECONDS.toMillis(flushIntervalSeconds)) {
+                    zeekLogWindowProcessorService.flushStaleWindows();
+                    lastFlush = now;
+                }
+
+                WatchKey key = watchService.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents(); // Any change is handled by polling every tail
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Follower interrupted");
+        } finally {
+            for (ZeekLogTail tail : tails.values()) {
+                tail.close();
+            }
+            log.info("Stopped following Zeek logs in {}", directory);
+        }
+    }
+
+    /**
+     * Stops {@link #follow()} after its current poll.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    private long pollTails(Map<String, ZeekLogTail> tails) {
+        long total = 0;
+        for (Map.Entry<String, ZeekLogTail> tail : tails.entrySet()) {
+            String logType = tail.getKey();
+            List<ZeekRecord> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                total += tail.getValue().poll(entry -> {
+                    maxEventTimeMs = Math.max(maxEventTimeMs, (long) (entry.ts() * 1000));
+                    batch.add(entry);
+                    if (batch.size() == BATCH_SIZE) {
+                        zeekLogWindowProcessorService.processLogEntries(logType, batch);
+                        batch.clear();
+                    }
+                });
+            } catch (IOException e) {
+                log.error("Failed to read new {} log entries from {}: {}", logType, tail.getValue().path(), e.getMessage(), e);
+            }
+            if (!batch.isEmpty()) {
+                zeekLogWindowProcessorService.processLogEntries(logType, batch);
+            }
+        }
+        return total;
+    }
+
+    private Map<String, Checkpoint> loadCheckpoints() {
+        Path path = Paths.get(checkpointFile);
+        if (!Files.exists(path)) {
+            return Map.of();
+        }
+        try {
+            Map<String, Checkpoint> checkpoints = objectMapper.readValue(path.toFile(), new TypeReference<>() {
+            });
+            log.info("Resuming from checkpoints in {}: {}", path, checkpoints);
+            return checkpoints;
+        } catch (IOException e) {
+            log.error("Failed to read checkpoints from {}; reading logs from the start", path, e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Queues the positions the tails have reached, to be saved once the windows of the entries read up to
+     * them are extracted. Queued positions still waiting on the same windows are superseded.
+     */
+    private void addPendingCheckpoint(Map<String, ZeekLogTail> tails) {
+        Map<String, Checkpoint> checkpoints = new HashMap<>();
+        tails.forEach((logType, tail) -> {
+            if (tail.fileId() != null) {
+                checkpoints.put(logType, new Checkpoint(tail.fileId(), tail.offset()));
+            }
+        });
+        long closingWatermark = zeekLogWindowProcessorService.closingWatermark(maxEventTimeMs);
+        PendingCheckpoint last = pendingCheckpoints.peekLast();
+        if (last != null && last.handedOverAt == null && last.closingWatermark == closingWatermark) {
+            pendingCheckpoints.pollLast();
+        }
+        pendingCheckpoints.add(new PendingCheckpoint(checkpoints, closingWatermark));
+    }
+
+    /**
+     * Saves the latest queued positions whose windows have all been extracted: they were closed and handed
+     * over, and extraction has since caught up with the window handoff.
+     */
+    private void commitCheckpoints() {
+        long handedOverWatermark = zeekLogWindowProcessorService.getHandedOverWatermark();
+        long extractedThrough = featureExtractionService.getExtractedThroughNanos();
+        Map<String, Checkpoint> committed = null;
+        PendingCheckpoint pending;
+        while ((pending = pendingCheckpoints.peek()) != null) {
+            if (pending.handedOverAt == null) {
+                if (handedOverWatermark < pending.closingWatermark) {
+                    break;
+                }
+                pending.handedOverAt = System.nanoTime();
+            }
+            if (extractedThrough - pending.handedOverAt < 0) {
+                break;
+            }
+            committed = pendingCheckpoints.poll().checkpoints;
+        }
+        if (committed != null) {
+            saveCheckpoints(committed);
+        }
+    }
+
+    private void saveCheckpoints(Map<String, Checkpoint> checkpoints) {
+        // Write to a temporary file first so a crash never leaves a partial checkpoint behind
+        Path path = Paths.get(checkpointFile).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), checkpoints);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save checkpoints to {}", path, e);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.threat.anomalyze.training.service;
 import com.threat.anomalyze.commons.features.FeatureAggregator;
 import com.threat.anomalyze.commons.util.ZeekTimestampConverter;
 import com.threat.anomalyze.training.helper.CsvExportService;
+import com.threat.anomalyze.training.helper.WindowKey;
+import com.threat.anomalyze.training.helper.WindowResolution;
 import com.threat.anomalyze.training.util.MathCalculationsUtil;
 import com.threat.anomalyze.training.util.ScatterPlotUtils;
 import lombok.extern.slf4j.Slf4j;
@@ -113,6 +115,17 @@ public class ZeroDayTrainingService implements ModelTrainingService {
             Path path = Paths.get(TRAINING_FEATURE_CSV_PATH);
             csvExportService.exportToCsv(path, trainingFeatures);
             log.info("Features exported to {}", TRAINING_FEATURE_CSV_PATH);
+
+            // Coarser resolutions come from the same pass; each is exported as its own feature set
+            for (WindowResolution resolution : featureExtractionService.getResolutions()) {
+                if (!resolution.primary()) {
+                    Path resolutionPath = Paths.get(
+                            TRAINING_FEATURE_CSV_PATH.replace(".csv", "_" + resolution.label() + ".csv"));
+                    csvExportService.exportToCsv(resolutionPath,
+                            featureExtractionService.getFeatures(WindowKey.SOURCE_IP, resolution));
+                    log.info("{} features exported to {}", resolution.label(), resolutionPath);
+                }
+            }
         } catch (IOException e) {
             log.error("Failed to parse log file or export CSV: {}", e.getMessage(), e);
             throw new TrainingException("Error during data preprocessing", e);
@@ -1,8 +1,10 @@
 package com.threat.anomalyze.training.starter;
 
+import com.threat.anomalyze.training.service.LiveLogFollowerService;
 import com.threat.anomalyze.training.service.ZeroDayTrainingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
@@ -17,14 +19,23 @@ public class ModelTrainingStarter implements CommandLineRunner {
     @Autowired
     ZeroDayTrainingService zeroDayTrainingService;
 
+    @Autowired
+    LiveLogFollowerService liveLogFollowerService;
+
+    // Follow a live Zeek log directory instead of training on a fixed set of logs
+    @Value("${zeek.follow.enabled:false}")
+    private boolean followEnabled;
 
     @Override
     public void run(String... args) throws Exception {
         try {
-            zeroDayTrainingService.startTraining();
-
+            if (followEnabled) {
+                liveLogFollowerService.follow();
+            } else {
+                zeroDayTrainingService.startTraining();
+            }
         } catch (Exception e) {
-            log.error("Failed to start training", e);
+            log.error("Failed to start {}", followEnabled ? "following logs" : "training", e);
         } finally {
             log.info("Exiting the application...");
             SpringApplication.exit(context, () -> 0);